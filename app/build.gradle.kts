@@ -311,6 +311,52 @@ tasks.withType<Test>().configureEach {
     jvmArgs("--add-opens", "java.base/java.lang=ALL-UNNAMED")
 }
 
+// The JMH benchmarks in src/benchmark are kept out of the unit tests: they have their own
+// dependencies and are only compiled for the "benchmark" task. They build against the app
+// classes on the OSS debug unit test classpath, which also has the mockable android.jar.
+val benchmarkImplementation = configurations.dependencyScope("benchmarkImplementation")
+val benchmarkAnnotationProcessor = configurations.dependencyScope("benchmarkAnnotationProcessor")
+val benchmarkClasspath = configurations.resolvable("benchmarkClasspath") {
+    extendsFrom(benchmarkImplementation.get())
+    attributes { attribute(Usage.USAGE_ATTRIBUTE, objects.named(Usage.JAVA_RUNTIME)) }
+}
+val benchmarkProcessorPath = configurations.resolvable("benchmarkProcessorPath") {
+    extendsFrom(benchmarkAnnotationProcessor.get())
+    attributes { attribute(Usage.USAGE_ATTRIBUTE, objects.named(Usage.JAVA_RUNTIME)) }
+}
+val benchmarkAppClasspath = files({ tasks.named<Test>("testOssDebugUnitTest").get().classpath })
+
+val compileBenchmarkJava = tasks.register<JavaCompile>("compileBenchmarkJava") {
+    source("src/benchmark/java")
+    classpath = benchmarkAppClasspath + files(benchmarkClasspath)
+    options.annotationProcessorPath = files(benchmarkProcessorPath)
+    destinationDirectory.set(layout.buildDirectory.dir("intermediates/benchmark/classes"))
+}
+
+// Run the terminal data path microbenchmarks in src/benchmark on the local JVM. Results are
+// in MB/s; "gc.alloc.rate.norm" is the bytes allocated per input byte. Narrow the run with
+// e.g. -Pbenchmark.include=RelayBenchmark
+tasks.register<JavaExec>("benchmark") {
+    group = "verification"
+    description = "Runs the JMH benchmarks for the terminal data path."
+
+    classpath(compileBenchmarkJava, benchmarkAppClasspath, benchmarkClasspath)
+    mainClass.set("org.openjdk.jmh.Main")
+
+    val include = providers.gradleProperty("benchmark.include").orElse("org.connectbot.benchmark")
+    val results = layout.buildDirectory.file("reports/benchmark/results.json")
+    outputs.file(results)
+    outputs.upToDateWhen { false }
+    argumentProviders.add(
+        CommandLineArgumentProvider {
+            listOf(include.get(), "-prof", "gc", "-rf", "json", "-rff", results.get().asFile.path)
+        },
+    )
+    doFirst {
+        results.get().asFile.parentFile.mkdirs()
+    }
+}
+
 // Generate filtered export schema from Room schema
 // Only includes tables needed for export/import (profiles, hosts, port_forwards)
 val generateExportSchema by tasks.registering {
@@ -464,4 +510,7 @@ dependencies {
     testCompileOnly(libs.conscrypt.openjdk.uber)
     testRuntimeOnly(libs.conscrypt.android)
     testImplementation(libs.conscrypt.openjdk.uber)
+
+    "benchmarkImplementation"(libs.jmh.core)
+    "benchmarkAnnotationProcessor"(libs.jmh.generator.annprocess)
 }
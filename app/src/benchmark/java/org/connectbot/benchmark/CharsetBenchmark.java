@@ -0,0 +1,173 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.apache.harmony.niochar.charset.additional.IBM437;
+import org.connectbot.service.SingleByteTranscoder;
+import org.connectbot.service.Utf8Passthrough;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the conversions {@code Relay} can use to turn host output into UTF-8 for the
+ * terminal emulator: the UTF-8 passthrough and the CP437 lookup table against the
+ * {@link CharsetDecoder} round trip they replace.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(Corpus.SIZE)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CharsetBenchmark {
+  /** UTF-8 host output. */
+  @State(Scope.Thread)
+  public static class Utf8Input extends Conversion {
+    @Param({"ASCII_LOG", "ANSI_COLOR", "CJK"})
+    public Corpus corpus;
+
+    @Setup
+    public void setUp() {
+      init(corpus, StandardCharsets.UTF_8);
+    }
+  }
+
+  /** CP437 host output, decoded with the vendored {@link IBM437} charset. */
+  @State(Scope.Thread)
+  public static class Cp437Input extends Conversion {
+    @Setup
+    public void setUp() {
+      init(Corpus.CP437, new IBM437("IBM437", new String[] {"IBM437", "CP437"}));
+    }
+  }
+
+  @Benchmark
+  public long utf8Passthrough(Utf8Input state) {
+    return state.passthrough();
+  }
+
+  @Benchmark
+  public long utf8Decoder(Utf8Input state) {
+    return state.decode();
+  }
+
+  @Benchmark
+  public long cp437Transcoder(Cp437Input state) {
+    return state.transcode();
+  }
+
+  @Benchmark
+  public long cp437Decoder(Cp437Input state) {
+    return state.decode();
+  }
+
+  /** Buffers for one conversion, reused across invocations as {@code Relay} reuses its own. */
+  public abstract static class Conversion {
+    private byte[] input;
+    private CharsetDecoder decoder;
+    private SingleByteTranscoder transcoder;
+    private final CharsetEncoder encoder = newEncoder();
+    private final CharBuffer chars = CharBuffer.allocate(Corpus.CHUNK_SIZE);
+    private final ByteBuffer dest = ByteBuffer.allocate(Corpus.CHUNK_SIZE * 3);
+    private final byte[] transcoded = new byte[Corpus.CHUNK_SIZE * SingleByteTranscoder.MAX_BYTES_PER_CHAR];
+    private long written;
+    private final Utf8Passthrough.Sink sink = (buffer, offset, length) -> written += length;
+
+    void init(Corpus corpus, Charset charset) {
+      input = corpus.bytes();
+      decoder =
+          charset
+              .newDecoder()
+              .onMalformedInput(CodingErrorAction.REPLACE)
+              .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      transcoder = SingleByteTranscoder.Companion.forCharset(charset);
+    }
+
+    long passthrough() {
+      written = 0;
+      for (int offset = 0; offset < input.length; ) {
+        int end = Math.min(offset + Corpus.CHUNK_SIZE, input.length);
+        // An incomplete trailing sequence is left for the next read, as in Relay.
+        offset += Utf8Passthrough.INSTANCE.forward(input, offset, end, end == input.length, sink);
+      }
+      return written;
+    }
+
+    long transcode() {
+      long total = 0;
+      for (int offset = 0; offset < input.length; offset += Corpus.CHUNK_SIZE) {
+        int length = Math.min(Corpus.CHUNK_SIZE, input.length - offset);
+        total += transcoder.transcode(input, offset, length, transcoded, 0);
+      }
+      return total;
+    }
+
+    /** The decode and re-encode loop {@code Relay} falls back to for other charsets. */
+    long decode() {
+      decoder.reset();
+      encoder.reset();
+      chars.clear();
+      dest.clear();
+      long total = 0;
+
+      ByteBuffer source = ByteBuffer.wrap(input);
+      while (true) {
+        boolean endOfInput = input.length - source.position() <= Corpus.CHUNK_SIZE;
+        source.limit(Math.min(source.position() + Corpus.CHUNK_SIZE, input.length));
+
+        CoderResult result = decoder.decode(source, chars, endOfInput);
+        chars.flip();
+        encoder.encode(chars, dest, endOfInput);
+        total += dest.position();
+        dest.clear();
+        chars.compact();
+
+        if (endOfInput && result.isUnderflow()) {
+          encoder.flush(dest);
+          return total + dest.position();
+        }
+      }
+    }
+
+    private static CharsetEncoder newEncoder() {
+      return StandardCharsets.UTF_8
+          .newEncoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Host output used as benchmark input. Each corpus is generated from a fixed seed and is
+ * exactly {@link #SIZE} bytes, so benchmarks can declare one operation per input byte and
+ * report throughput in bytes per microsecond, which is MB/s.
+ */
+public enum Corpus {
+  /** Timestamped log lines, as from {@code tail -f}. */
+  ASCII_LOG("UTF-8") {
+    @Override
+    void generate(Random random, ByteArrayOutputStream out) {
+      String[] levels = {"INFO ", "DEBUG", "WARN ", "ERROR"};
+      String line =
+          String.format(
+              "2026-03-%02dT%02d:%02d:%02d.%03dZ %s [worker-%d] request id=%08x completed in %d ms\r\n",
+              1 + random.nextInt(28),
+              random.nextInt(24),
+              random.nextInt(60),
+              random.nextInt(60),
+              random.nextInt(1000),
+              levels[random.nextInt(levels.length)],
+              random.nextInt(16),
+              random.nextInt(),
+              random.nextInt(5000));
+      write(out, line);
+    }
+  },
+
+  /** Short words each wrapped in 256-colour SGR sequences and cursor moves, like htop. */
+  ANSI_COLOR("UTF-8") {
+    @Override
+    void generate(Random random, ByteArrayOutputStream out) {
+      if (random.nextInt(20) == 0) {
+        write(out, "\u001b[" + (1 + random.nextInt(50)) + ";" + (1 + random.nextInt(132)) + "H");
+      }
+      write(out, "\u001b[38;5;" + random.nextInt(256) + "m");
+      if (random.nextBoolean()) {
+        write(out, "\u001b[48;5;" + random.nextInt(256) + ";1m");
+      }
+      for (int i = 1 + random.nextInt(8); i > 0; i--) {
+        out.write('a' + random.nextInt(26));
+      }
+      write(out, "\u001b[0m ");
+    }
+  },
+
+  /** Chinese, Japanese and Korean text with some ASCII punctuation and line breaks. */
+  CJK("UTF-8") {
+    @Override
+    void generate(Random random, ByteArrayOutputStream out) {
+      StringBuilder line = new StringBuilder();
+      for (int i = 10 + random.nextInt(30); i > 0; i--) {
+        switch (random.nextInt(4)) {
+          case 0:
+            line.append((char) (0x3041 + random.nextInt(0x56)));
+            break;
+          case 1:
+            line.append((char) (0xAC00 + random.nextInt(0x2BA4)));
+            break;
+          default:
+            line.append((char) (0x4E00 + random.nextInt(0x5200)));
+            break;
+        }
+        if (random.nextInt(12) == 0) {
+          line.append(random.nextBoolean() ? ", " : " ");
+        }
+      }
+      write(out, line.append("\r\n").toString());
+    }
+  },
+
+  /** Telnet data with escaped 0xFF bytes and option negotiation between short lines. */
+  TELNET_IAC("ISO-8859-1") {
+    @Override
+    void generate(Random random, ByteArrayOutputStream out) {
+      for (int i = random.nextInt(40); i > 0; i--) {
+        if (random.nextInt(16) == 0) {
+          out.write(IAC);
+          out.write(IAC);
+        } else {
+          out.write(0x20 + random.nextInt(0x5F));
+        }
+      }
+      switch (random.nextInt(6)) {
+        case 0:
+          out.write(IAC);
+          out.write(241); // NOP
+          break;
+        case 1:
+          out.write(new byte[] {(byte) IAC, (byte) 251, 1}, 0, 3); // WILL ECHO
+          break;
+        case 2:
+          out.write(new byte[] {(byte) IAC, (byte) 253, 31}, 0, 3); // DO NAWS
+          break;
+        case 3:
+          out.write(new byte[] {(byte) IAC, (byte) 250, 24, 1, (byte) IAC, (byte) 240}, 0, 6); // SB TTYPE SEND
+          break;
+        case 4:
+          out.write(new byte[] {(byte) IAC, (byte) 239}, 0, 2); // EOR
+          break;
+        default:
+          write(out, "\r\n");
+          break;
+      }
+    }
+  },
+
+  /** CP437 box drawing and shading with colour changes, as on a BBS. */
+  CP437("CP437") {
+    @Override
+    void generate(Random random, ByteArrayOutputStream out) {
+      if (random.nextInt(8) == 0) {
+        write(out, "\u001b[1;3" + random.nextInt(8) + "m");
+      }
+      for (int i = 1 + random.nextInt(16); i > 0; i--) {
+        out.write(random.nextInt(4) == 0 ? 0x20 + random.nextInt(0x5F) : 0xB0 + random.nextInt(0x30));
+      }
+      if (random.nextInt(10) == 0) {
+        write(out, "\r\n");
+      }
+    }
+  };
+
+  /** Size of every corpus in bytes. */
+  public static final int SIZE = 1 << 20;
+
+  /** Bytes handed over per transport read. */
+  public static final int CHUNK_SIZE = 16 * 1024;
+
+  private static final int IAC = 0xFF;
+
+  /** Charset a session showing this corpus would use. */
+  public final String charset;
+
+  private byte[] bytes;
+
+  Corpus(String charset) {
+    this.charset = charset;
+  }
+
+  abstract void generate(Random random, ByteArrayOutputStream out);
+
+  /** @return the corpus bytes; callers must not modify them */
+  public synchronized byte[] bytes() {
+    if (bytes == null) {
+      Random random = new Random(0xC0FFEE + ordinal());
+      ByteArrayOutputStream out = new ByteArrayOutputStream(SIZE + 1024);
+      while (out.size() < SIZE) {
+        generate(random, out);
+      }
+      bytes = Arrays.copyOf(out.toByteArray(), SIZE);
+    }
+    return bytes;
+  }
+
+  private static void write(ByteArrayOutputStream out, String text) {
+    byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+    out.write(encoded, 0, encoded.length);
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.benchmark;
+
+import android.net.Uri;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import kotlin.coroutines.EmptyCoroutineContext;
+import kotlinx.coroutines.BuildersKt;
+import kotlinx.coroutines.Dispatchers;
+import org.connectbot.data.entity.Host;
+import org.connectbot.di.CoroutineDispatchers;
+import org.connectbot.service.Relay;
+import org.connectbot.service.RelayStatistics;
+import org.connectbot.transport.AbsTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs whole {@link Relay} sessions over a transport that serves a {@link Corpus} in
+ * {@link Corpus#CHUNK_SIZE} reads, covering the reader stage, the byte ring and the charset
+ * conversion up to the point where the terminal emulator would be called.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(Corpus.SIZE)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RelayBenchmark {
+  @Param({"ASCII_LOG", "ANSI_COLOR", "CJK", "CP437"})
+  public Corpus corpus;
+
+  private final CorpusTransport transport = new CorpusTransport();
+  private Relay relay;
+  private long written;
+
+  @Setup
+  public void setUp() {
+    transport.input = corpus.bytes();
+    CoroutineDispatchers dispatchers =
+        new CoroutineDispatchers(Dispatchers.getDefault(), Dispatchers.getIO(), Dispatchers.getDefault());
+    relay =
+        new Relay(
+            (buffer, offset, length) -> written += length,
+            transport,
+            dispatchers,
+            corpus.charset,
+            new RelayStatistics());
+  }
+
+  @Benchmark
+  public long relay() throws Exception {
+    transport.position = 0;
+    written = 0;
+    BuildersKt.runBlocking(EmptyCoroutineContext.INSTANCE, (scope, continuation) -> relay.start(continuation));
+    return written;
+  }
+
+  /** Serves {@link #input} and then reports end of stream. */
+  private static final class CorpusTransport extends AbsTransport {
+    byte[] input;
+    int position;
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      if (position == input.length) {
+        return -1;
+      }
+      int n = Math.min(Math.min(length, Corpus.CHUNK_SIZE), input.length - position);
+      System.arraycopy(input, position, buffer, offset, n);
+      position += n;
+      return n;
+    }
+
+    @Override
+    public void connect() {}
+
+    @Override
+    public void write(byte[] buffer) {}
+
+    @Override
+    public void write(int c) {}
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+
+    @Override
+    public void setDimensions(int columns, int rows, int width, int height) {}
+
+    @Override
+    public boolean isConnected() {
+      return true;
+    }
+
+    @Override
+    public boolean isSessionOpen() {
+      return true;
+    }
+
+    @Override
+    public int getDefaultPort() {
+      return 0;
+    }
+
+    @Override
+    public String getDefaultNickname(String username, String hostname, int port) {
+      return "benchmark";
+    }
+
+    @Override
+    public void getSelectionArgs(Uri uri, Map<String, String> selection) {}
+
+    @Override
+    public Host createHost(Uri uri) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean usesNetwork() {
+      return false;
+    }
+
+    @Override
+    public String getLocalIpAddress() {
+      return null;
+    }
+  }
+}
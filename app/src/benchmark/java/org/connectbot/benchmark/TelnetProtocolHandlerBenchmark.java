@@ -0,0 +1,98 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.benchmark;
+
+import de.mud.telnet.TelnetProtocolHandler;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Feeds a {@link Corpus} to {@link TelnetProtocolHandler} one transport read at a time and
+ * drains it with {@code negotiate}, the way {@code Telnet.read} does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(Corpus.SIZE)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TelnetProtocolHandlerBenchmark {
+  @Param({"TELNET_IAC", "ASCII_LOG", "ANSI_COLOR"})
+  public Corpus corpus;
+
+  private final byte[] buffer = new byte[Corpus.CHUNK_SIZE];
+  private TelnetProtocolHandler handler;
+  private byte[] input;
+
+  @Setup
+  public void setUp() {
+    input = corpus.bytes();
+    handler =
+        new TelnetProtocolHandler() {
+          @Override
+          protected String getTerminalType() {
+            return "xterm-256color";
+          }
+
+          @Override
+          protected int[] getWindowSize() {
+            return new int[] {80, 24};
+          }
+
+          @Override
+          protected void setLocalEcho(boolean echo) {}
+
+          @Override
+          protected void notifyEndOfRecord() {}
+
+          @Override
+          protected void write(byte[] b) {}
+
+          @Override
+          protected String getCharsetName() {
+            return "UTF-8";
+          }
+        };
+  }
+
+  @Benchmark
+  public long negotiate() throws IOException {
+    long data = 0;
+    for (int offset = 0; offset < input.length; offset += Corpus.CHUNK_SIZE) {
+      handler.inputfeed(input, offset, Math.min(Corpus.CHUNK_SIZE, input.length - offset));
+      int n;
+      while ((n = handler.negotiate(buffer, 0, buffer.length)) >= 0) {
+        data += n;
+      }
+    }
+    return data;
+  }
+}
@@ -27,6 +27,7 @@ package de.mud.telnet;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * This is a telnet protocol handler. The handler needs implementations
@@ -45,8 +46,21 @@ public abstract class TelnetProtocolHandler {
   /** debug level */
   private final static int debug = 0;
 
-  /** temporary buffer for data-telnetstuff-data transformation */
-  private byte[] tempbuf = new byte[0];
+  /**
+   * Ring buffer holding bytes passed to inputfeed() that negotiate() has not
+   * consumed yet. The capacity is always a power of two and only grows when a
+   * single feed would not fit.
+   */
+  private byte[] ring = new byte[INITIAL_RING_SIZE];
+  /** index of the first unconsumed byte in the ring */
+  private int ringHead = 0;
+  /** number of unconsumed bytes in the ring */
+  private int ringCount = 0;
+
+  private final static int INITIAL_RING_SIZE = 8192;
+
+  /** reply buffer for IAC WILL/WONT/DO/DONT &lt;option&gt; */
+  private final byte[] sendbuf = new byte[3];
 
   /** the data sent on pressing <RETURN>  \n */
   private byte[] crlf = new byte[2];
@@ -98,6 +112,23 @@ public abstract class TelnetProtocolHandler {
    */
   protected abstract String getCharsetName();
 
+  /**
+   * Whether to accept MCCP2 compression (option 86) from the remote host.
+   * A handler that returns true must check {@link #takeCompressionStart()}
+   * after every call to negotiate() and inflate the stream from then on.
+   * @return true to answer IAC WILL COMPRESS2 with IAC DO COMPRESS2
+   */
+  protected boolean isCompressionSupported() {
+    return false;
+  }
+
+  /**
+   * Called from negotiate() when the remote host answers the IAC DO
+   * TIMING-MARK sent by {@link #sendTimingMark()}.
+   */
+  protected void notifyTimingMark() {
+  }
+
   /**
    * Send one byte to the remote host.
    * @param b the byte to be sent
@@ -115,6 +146,8 @@ public abstract class TelnetProtocolHandler {
    */
   public void reset() {
     neg_state = 0;
+    compressionStarted = false;
+    timingMarkPending = false;
     receivedDX = new byte[256];
     sentDX = new byte[256];
     receivedWX = new byte[256];
@@ -143,8 +176,9 @@ public abstract class TelnetProtocolHandler {
   /** What IAC SB <xx> we are handling right now */
   private byte current_sb;
 
-  /** current SB negotiation buffer */
-  private byte[] sbbuf;
+  /** current SB negotiation buffer, of which sblen bytes are in use */
+  private byte[] sbbuf = new byte[64];
+  private int sblen;
 
   /** IAC - init sequence for telnet negotiation. */
   private final static byte IAC  = (byte)255;
@@ -176,6 +210,16 @@ public abstract class TelnetProtocolHandler {
   private final static byte TELOPT_TTYPE  = (byte)24;  /* terminal type */
   /** Telnet option: CHARSET */
   private final static byte TELOPT_CHARSET= (byte)42;  /* charset */
+  /** Telnet option: MCCP2 */
+  private final static byte TELOPT_COMPRESS2= (byte)86;  /* compression */
+  /** Telnet option: Timing Mark */
+  private final static byte TELOPT_TM     = (byte)6;  /* timing mark */
+
+  /** set once the remote host has started MCCP2 compression */
+  private boolean compressionStarted = false;
+
+  /** set while an IAC DO TIMING-MARK of ours is unanswered */
+  private volatile boolean timingMarkPending = false;
 
   private final static byte[] IACWILL  = { IAC, WILL };
   private final static byte[] IACWONT  = { IAC, WONT };
@@ -213,6 +257,18 @@ public abstract class TelnetProtocolHandler {
     write(b);
   }
 
+  /**
+   * Send IAC DO TIMING-MARK (RFC 860). The remote host answers with WILL or
+   * WONT once it has processed everything sent before it, which is reported
+   * through {@link #notifyTimingMark()}.
+   */
+  public void sendTimingMark()
+    throws IOException {
+    timingMarkPending = true;
+    // not sendbuf: negotiate() may be using it on the reading thread
+    write(new byte[] { IAC, DO, TELOPT_TM });
+  }
+
   /**
    * Helper Method to convert ArrayList<Bytes> to Byte[] array.
    * @param byteArray
@@ -439,35 +495,53 @@ public abstract class TelnetProtocolHandler {
   public int negotiate(byte nbuf[], int offset)
   throws IOException
   {
-    int count = tempbuf.length;
-    byte[] buf = tempbuf;
-    byte sendbuf[] = new byte[3];
+    return negotiate(nbuf, offset, nbuf.length - offset);
+  }
+
+  /**
+   * Handle telnet protocol negotiation, putting out at most
+   * <code>length</code> bytes of data.
+   * @see #negotiate(byte[], int)
+   */
+  public int negotiate(byte nbuf[], int offset, int length)
+  throws IOException
+  {
     byte b,reply;
-    int boffset = 0, noffset = offset;
+    int noffset = offset;
+    int end = offset + length;
     boolean dobreak = false;
 
-    if (count == 0) 	// buffer is empty.
+    if (ringCount == 0) 	// buffer is empty.
       return -1;
 
-    while(!dobreak && (boffset < count) && (noffset < nbuf.length)) {
-      b=buf[boffset++];
-      // of course, byte is a signed entity (-128 -> 127)
-      // but apparently the SGI Netscape 3.0 doesn't seem
-      // to care and provides happily values up to 255
-      if (b>=128)
-        b=(byte)(b-256);
+    while(!dobreak && (ringCount > 0) && (noffset < end)) {
+      if (neg_state == STATE_DATA) {
+        // Fast path: copy everything up to the next IAC straight to nbuf.
+        int runEnd = ringHead + Math.min(Math.min(ringCount, ring.length - ringHead), end - noffset);
+        int stop = ringHead;
+        while (stop < runEnd && ring[stop] != IAC)
+          stop++;
+        int n = stop - ringHead;
+        if (n > 0) {
+          System.arraycopy(ring, ringHead, nbuf, noffset, n);
+          noffset += n;
+          consume(n);
+        }
+        if (stop < runEnd) {
+          consume(1);
+          neg_state = STATE_IAC;
+          dobreak = true; // leave the loop so we can sync.
+        }
+        continue;
+      }
+
+      b=ring[ringHead];
+      consume(1);
       if(debug > 2) {
         Byte B = b;
         System.err.print("byte: " + B.intValue()+ " ");
       }
       switch (neg_state) {
-      case STATE_DATA:
-        if (b==IAC) {
-          neg_state = STATE_IAC;
-	  dobreak = true; // leave the loop so we can sync.
-        } else
-          nbuf[noffset++]=b;
-        break;
       case STATE_IAC:
         switch (b) {
         case IAC:
@@ -508,6 +582,13 @@ public abstract class TelnetProtocolHandler {
         }
         break;
       case STATE_IACWILL:
+        if (b == TELOPT_TM && timingMarkPending) {
+          // the answer to our own timing mark, which needs no reply
+          timingMarkPending = false;
+          notifyTimingMark();
+          neg_state = STATE_DATA;
+          break;
+        }
         switch(b) {
         case TELOPT_ECHO:
           if(debug > 2) System.err.println("ECHO");
@@ -526,6 +607,10 @@ public abstract class TelnetProtocolHandler {
           if(debug > 2) System.err.println("BINARY");
           reply = DO;
           break;
+        case TELOPT_COMPRESS2:
+          if(debug > 2) System.err.println("COMPRESS2");
+          reply = isCompressionSupported() ? DO : DONT;
+          break;
         default:
           if(debug > 2) System.err.println("<UNKNOWN,"+b+">");
           reply = DONT;
@@ -543,6 +628,13 @@ public abstract class TelnetProtocolHandler {
         neg_state = STATE_DATA;
         break;
       case STATE_IACWONT:
+        if (b == TELOPT_TM && timingMarkPending) {
+          // the answer to our own timing mark, which needs no reply
+          timingMarkPending = false;
+          notifyTimingMark();
+          neg_state = STATE_DATA;
+          break;
+        }
         switch(b) {
         case TELOPT_ECHO:
           if(debug > 2) System.err.println("ECHO");
@@ -683,7 +775,7 @@ public abstract class TelnetProtocolHandler {
       case STATE_IACSBIAC:
         if(debug > 2) System.err.println(""+b+" ");
         if (b == IAC) {
-	  sbbuf = new byte[0];
+          sblen = 0;
           current_sb = b;
           neg_state = STATE_IACSBDATA;
         } else {
@@ -699,7 +791,7 @@ public abstract class TelnetProtocolHandler {
           break;
         default:
           current_sb = b;
-	  sbbuf = new byte[0];
+          sblen = 0;
           neg_state = STATE_IACSBDATA;
           break;
         }
@@ -711,10 +803,7 @@ public abstract class TelnetProtocolHandler {
           neg_state = STATE_IACSBDATAIAC;
           break;
         default:
-	  byte[] xsb = new byte[sbbuf.length+1];
-          System.arraycopy(sbbuf,0,xsb,0,sbbuf.length);
-	  sbbuf = xsb;
-          sbbuf[sbbuf.length-1] = b;
+          appendSb(b);
           break;
         }
         break;
@@ -723,18 +812,24 @@ public abstract class TelnetProtocolHandler {
         switch (b) {
         case IAC:
           neg_state = STATE_IACSBDATA;
-	  byte[] xsb = new byte[sbbuf.length+1];
-          System.arraycopy(sbbuf,0,xsb,0,sbbuf.length);
-	  sbbuf = xsb;
-          sbbuf[sbbuf.length-1] = IAC;
+          appendSb(IAC);
           break;
         case SE:
-          handle_sb(current_sb,sbbuf);
+          if (current_sb == TELOPT_COMPRESS2 && sentDX[TELOPT_COMPRESS2+128] == DO) {
+            // Everything after this is compressed; stop here and let the
+            // caller take the rest of the input.
+            compressionStarted = true;
+            current_sb = 0;
+            neg_state = STATE_DATA;
+            dobreak = true;
+            break;
+          }
+          handle_sb(current_sb,Arrays.copyOf(sbbuf,sblen));
           current_sb = 0;
           neg_state = STATE_DATA;
           break;
         case SB:
-          handle_sb(current_sb,sbbuf);
+          handle_sb(current_sb,Arrays.copyOf(sbbuf,sblen));
           neg_state = STATE_IACSB;
           break;
         default:
@@ -749,18 +844,75 @@ public abstract class TelnetProtocolHandler {
         break;
       }
     }
-    // shrink tempbuf to new processed size.
-    byte[] xb = new byte[count-boffset];
-    System.arraycopy(tempbuf,boffset,xb,0,count-boffset);
-    tempbuf = xb;
     return noffset - offset;
   }
 
+  /**
+   * Check whether the remote host has started MCCP2 compression since the
+   * last call. When it has, all input still buffered is compressed and must
+   * be removed with {@link #takeInput(byte[], int, int)}.
+   * @return true once for each IAC SB COMPRESS2 IAC SE received
+   */
+  public boolean takeCompressionStart() {
+    boolean started = compressionStarted;
+    compressionStarted = false;
+    return started;
+  }
+
+  /** @return number of bytes fed but not yet processed by negotiate() */
+  public int available() {
+    return ringCount;
+  }
+
+  /**
+   * Remove buffered input without processing it.
+   * @return number of bytes copied to dest
+   */
+  public int takeInput(byte[] dest, int offset, int length) {
+    int n = Math.min(length, ringCount);
+    int first = Math.min(n, ring.length - ringHead);
+    System.arraycopy(ring, ringHead, dest, offset, first);
+    System.arraycopy(ring, 0, dest, offset + first, n - first);
+    if (n > 0)
+      consume(n);
+    return n;
+  }
+
+  /** Drop n bytes from the front of the ring. */
+  private void consume(int n) {
+    ringCount -= n;
+    // Restart at the front once empty so runs stay contiguous.
+    ringHead = ringCount == 0 ? 0 : (ringHead + n) & (ring.length - 1);
+  }
+
+  private void appendSb(byte b) {
+    if (sblen == sbbuf.length)
+      sbbuf = Arrays.copyOf(sbbuf, sbbuf.length * 2);
+    sbbuf[sblen++] = b;
+  }
+
   public void inputfeed(byte[] b, int offset, int len) {
-    byte[] xb = new byte[tempbuf.length+len];
+    if (ringCount + len > ring.length) {
+      int size = ring.length;
+      while (size < ringCount + len)
+        size *= 2;
+      byte[] xb = new byte[size];
+      copyOut(xb);
+      ring = xb;
+      ringHead = 0;
+    }
+
+    int tail = (ringHead + ringCount) & (ring.length - 1);
+    int first = Math.min(len, ring.length - tail);
+    System.arraycopy(b, offset, ring, tail, first);
+    System.arraycopy(b, offset + first, ring, 0, len - first);
+    ringCount += len;
+  }
 
-    System.arraycopy(tempbuf,0,xb,0,tempbuf.length);
-    System.arraycopy(b,offset,xb,tempbuf.length,len);
-    tempbuf = xb;
+  /** Copy the unconsumed bytes, oldest first, to the start of dest. */
+  private void copyOut(byte[] dest) {
+    int first = Math.min(ringCount, ring.length - ringHead);
+    System.arraycopy(ring, ringHead, dest, 0, first);
+    System.arraycopy(ring, 0, dest, first, ringCount - first);
   }
 }
@@ -69,6 +69,9 @@ data class PortForward(
     @Transient
     private var identifier: Any? = null
 
+    @Transient
+    private var rateLimit: Long = 0
+
     /**
      * Get a human-readable description of this port forward (Java interop helper).
      */
@@ -87,7 +90,7 @@ data class PortForward(
     }
 
     /**
-     * Get the identifier object (DynamicPortForwarder or LocalPortForwarder).
+     * Get the identifier object (the PortForwarder for local and dynamic forwards).
      */
     fun getIdentifier(): Any? = identifier
 
@@ -98,6 +101,19 @@ data class PortForward(
         identifier = value
     }
 
+    /**
+     * Most bytes per second this forward may carry each way, or 0 for no limit. Applies to
+     * local and dynamic forwards.
+     */
+    fun getRateLimit(): Long = rateLimit
+
+    /**
+     * Set the rate limit (Java interop helper).
+     */
+    fun setRateLimit(value: Long) {
+        rateLimit = value
+    }
+
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
         if (javaClass != other?.javaClass) return false
@@ -114,6 +130,7 @@ data class PortForward(
         if (destPort != other.destPort) return false
         if (enabled != other.enabled) return false
         if (identifier != other.identifier) return false
+        if (rateLimit != other.rateLimit) return false
 
         return true
     }
@@ -129,6 +146,7 @@ data class PortForward(
         result = 31 * result + destPort
         result = 31 * result + enabled.hashCode()
         result = 31 * result + (identifier?.hashCode() ?: 0)
+        result = 31 * result + rateLimit.hashCode()
         return result
     }
 }
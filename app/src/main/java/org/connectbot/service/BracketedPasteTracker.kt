@@ -0,0 +1,108 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+/**
+ * Follows DEC private mode 2004 (bracketed paste) in the host output given to the terminal
+ * emulator, so a paste can be wrapped in `ESC [ 200 ~` / `ESC [ 201 ~` only when the remote
+ * application asked for it. Sequences may be split across calls to [scan].
+ */
+internal class BracketedPasteTracker {
+    @Volatile
+    var enabled = false
+        private set
+
+    private var state = GROUND
+    private var parameter = 0
+    private var matched = false
+
+    fun reset() {
+        enabled = false
+        state = GROUND
+    }
+
+    fun scan(buffer: ByteArray, offset: Int, length: Int) {
+        var i = offset
+        val end = offset + length
+        while (i < end) {
+            if (state == GROUND) {
+                // Nearly all output is outside escape sequences; skip to the next ESC.
+                while (i < end && buffer[i] != ESC) i++
+                if (i == end) return
+            }
+            step(buffer[i].toInt())
+            i++
+        }
+    }
+
+    private fun step(b: Int) {
+        state = when (state) {
+            GROUND -> if (b == ESC.toInt()) ESCAPE else GROUND
+
+            ESCAPE -> when (b) {
+                '['.code -> CSI
+                'c'.code -> {
+                    // RIS resets every mode.
+                    enabled = false
+                    GROUND
+                }
+                ESC.toInt() -> ESCAPE
+                else -> GROUND
+            }
+
+            CSI -> if (b == '?'.code) {
+                parameter = 0
+                matched = false
+                PRIVATE_MODE
+            } else {
+                GROUND
+            }
+
+            else -> when (b) {
+                in '0'.code..'9'.code -> {
+                    if (parameter < MAX_PARAMETER) parameter = parameter * 10 + (b - '0'.code)
+                    PRIVATE_MODE
+                }
+                ';'.code -> {
+                    matched = matched || parameter == BRACKETED_PASTE_MODE
+                    parameter = 0
+                    PRIVATE_MODE
+                }
+                'h'.code, 'l'.code -> {
+                    if (matched || parameter == BRACKETED_PASTE_MODE) {
+                        enabled = b == 'h'.code
+                    }
+                    GROUND
+                }
+                ESC.toInt() -> ESCAPE
+                else -> GROUND
+            }
+        }
+    }
+
+    private companion object {
+        const val ESC: Byte = 0x1b
+        const val BRACKETED_PASTE_MODE = 2004
+        const val MAX_PARAMETER = 100_000
+
+        const val GROUND = 0
+        const val ESCAPE = 1
+        const val CSI = 2
+        const val PRIVATE_MODE = 3
+    }
+}
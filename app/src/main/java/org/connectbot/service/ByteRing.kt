@@ -0,0 +1,166 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import kotlinx.coroutines.channels.Channel
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Bounded single-producer/single-consumer byte ring used by [Relay] to hand bytes from
+ * the transport reader to the terminal emulator.
+ *
+ * The copy paths are lock-free: only the producer advances the write position and only
+ * the consumer advances the read position. Waiting is done by suspending on conflated
+ * signal channels. The producer stops once occupancy reaches [highWatermark] and
+ * resumes when the consumer has drained it to [lowWatermark], so backpressure reaches
+ * the transport in explicit steps rather than a byte at a time.
+ */
+internal class ByteRing(
+    capacity: Int,
+    val highWatermark: Int = capacity * 3 / 4,
+    val lowWatermark: Int = capacity / 4,
+) {
+    private val buffer: ByteArray
+    private val mask: Int
+
+    private val writePosition = AtomicLong()
+    private val readPosition = AtomicLong()
+
+    private val dataAvailable = Channel<Unit>(Channel.CONFLATED)
+    private val spaceAvailable = Channel<Unit>(Channel.CONFLATED)
+
+    @Volatile
+    private var producerWaiting = false
+
+    @Volatile
+    private var closed = false
+
+    init {
+        require(capacity > 0 && (capacity and (capacity - 1)) == 0) { "capacity must be a power of two" }
+        require(lowWatermark in 0 until highWatermark && highWatermark <= capacity) { "invalid watermarks" }
+        buffer = ByteArray(capacity)
+        mask = capacity - 1
+    }
+
+    val capacity: Int
+        get() = buffer.size
+
+    /** Number of bytes waiting for the consumer. */
+    val size: Int
+        get() = (writePosition.get() - readPosition.get()).toInt()
+
+    /**
+     * Producer side: copy as many bytes as currently fit without waiting.
+     *
+     * @return the number of bytes copied
+     */
+    fun offer(src: ByteArray, offset: Int, length: Int): Int {
+        val write = writePosition.get()
+        val free = buffer.size - (write - readPosition.get()).toInt()
+        val count = minOf(free, length)
+        if (count <= 0) return 0
+
+        val start = (write and mask.toLong()).toInt()
+        val firstPart = minOf(count, buffer.size - start)
+        System.arraycopy(src, offset, buffer, start, firstPart)
+        if (firstPart < count) {
+            System.arraycopy(src, offset + firstPart, buffer, 0, count - firstPart)
+        }
+
+        writePosition.lazySet(write + count)
+        dataAvailable.trySend(Unit)
+        return count
+    }
+
+    /**
+     * Producer side: copy all of [length] bytes, suspending while the ring is above its
+     * high watermark until the consumer drains it to the low watermark.
+     *
+     * @return the number of times the producer had to wait
+     */
+    suspend fun write(src: ByteArray, offset: Int, length: Int): Int {
+        var written = 0
+        var stalls = 0
+        while (written < length) {
+            if (size >= highWatermark) {
+                stalls++
+                awaitDrain()
+            }
+            written += offer(src, offset + written, length - written)
+        }
+        return stalls
+    }
+
+    private suspend fun awaitDrain() {
+        producerWaiting = true
+        try {
+            while (size > lowWatermark) {
+                spaceAvailable.receive()
+            }
+        } finally {
+            producerWaiting = false
+        }
+    }
+
+    /**
+     * Consumer side: copy up to [length] bytes without waiting.
+     *
+     * @return the number of bytes copied
+     */
+    fun poll(dest: ByteArray, offset: Int, length: Int): Int {
+        val read = readPosition.get()
+        val available = (writePosition.get() - read).toInt()
+        val count = minOf(available, length)
+        if (count <= 0) return 0
+
+        val start = (read and mask.toLong()).toInt()
+        val firstPart = minOf(count, buffer.size - start)
+        System.arraycopy(buffer, start, dest, offset, firstPart)
+        if (firstPart < count) {
+            System.arraycopy(buffer, 0, dest, offset + firstPart, count - firstPart)
+        }
+
+        readPosition.set(read + count)
+        if (producerWaiting && available - count <= lowWatermark) {
+            spaceAvailable.trySend(Unit)
+        }
+        return count
+    }
+
+    /**
+     * Consumer side: copy up to [length] bytes, suspending until some are available.
+     *
+     * @return the number of bytes copied, or -1 once the ring is closed and empty
+     */
+    suspend fun read(dest: ByteArray, offset: Int, length: Int): Int {
+        while (true) {
+            val count = poll(dest, offset, length)
+            if (count > 0) return count
+            if (closed && size == 0) return -1
+            dataAvailable.receive()
+        }
+    }
+
+    /**
+     * Producer side: signal that no more bytes will be written.
+     */
+    fun close() {
+        closed = true
+        dataAvailable.trySend(Unit)
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import android.net.NetworkCapabilities
+
+/**
+ * Whether an SSH connection should use zlib compression, when the user has left that to us.
+ *
+ * Compression trades CPU at both ends for fewer bytes. Mobile data is usually metered, so
+ * it is always worth it there. Elsewhere it goes by the last session to the same host:
+ * compress if that link was slow to answer, and not if it was seen carrying a lot of data
+ * quickly, which it could only do if it was fast.
+ */
+object CompressionPolicy {
+    data class Decision(val compress: Boolean, val reason: String)
+
+    /** Peak throughput that shows a link is fast enough not to bother. */
+    const val FAST_LINK_BYTES_PER_SECOND = 1024L * 1024L
+
+    /** Round trips at least this slow make compression worth it. */
+    const val SLOW_ROUND_TRIP_MILLIS = 250L
+
+    fun decide(networkType: Int, history: LinkHistory.Entry?): Decision {
+        if (networkType == NetworkCapabilities.TRANSPORT_CELLULAR) {
+            return Decision(true, "mobile data")
+        }
+        if (history == null) {
+            return Decision(false, "no earlier session")
+        }
+        if (history.peakInboundBytesPerSecond >= FAST_LINK_BYTES_PER_SECOND) {
+            return Decision(false, "fast last time")
+        }
+        val roundTrip = history.roundTripMillis ?: return Decision(false, "no round trip measured")
+        if (roundTrip >= SLOW_ROUND_TRIP_MILLIS) {
+            return Decision(true, "$roundTrip ms round trip last time")
+        }
+        return Decision(false, "$roundTrip ms round trip last time")
+    }
+}
@@ -92,6 +92,10 @@ class ConnectivityMonitor(
 
         override fun onLinkPropertiesChanged(network: Network, linkProperties: LinkProperties) {
             Timber.i("Link properties changed for network: $network")
+            if (network == defaultNetwork) {
+                // Addresses or DNS servers may have changed
+                terminalManager.onDefaultNetworkChanged()
+            }
             updateNetworkInfo(network, linkProperties)
         }
 
@@ -106,6 +110,7 @@ class ConnectivityMonitor(
         override fun onAvailable(network: Network) {
             Timber.i("Default network available: $network")
             defaultNetwork = network
+            terminalManager.onDefaultNetworkChanged()
             updateNetworkInfo(network)
         }
 
@@ -114,6 +119,7 @@ class ConnectivityMonitor(
             if (defaultNetwork == network) {
                 defaultNetwork = null
                 currentNetworkInfo = null
+                terminalManager.onDefaultNetworkChanged()
             }
         }
     }
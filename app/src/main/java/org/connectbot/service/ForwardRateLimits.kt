@@ -0,0 +1,41 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import android.content.SharedPreferences
+import androidx.core.content.edit
+
+/**
+ * The rate limit chosen for each saved port forward, in bytes per second. Forwards without
+ * one are unlimited.
+ */
+class ForwardRateLimits(private val prefs: SharedPreferences) {
+    fun get(portForwardId: Long): Long = prefs.getLong(key(portForwardId), 0L)
+
+    fun set(portForwardId: Long, bytesPerSecond: Long) {
+        prefs.edit {
+            if (bytesPerSecond > 0) {
+                putLong(key(portForwardId), bytesPerSecond)
+            } else {
+                remove(key(portForwardId))
+            }
+        }
+    }
+
+    private fun key(portForwardId: Long) = "portForward.$portForwardId.rateLimit"
+}
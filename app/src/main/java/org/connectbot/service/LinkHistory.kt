@@ -0,0 +1,63 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import android.content.SharedPreferences
+import androidx.core.content.edit
+
+/**
+ * How the last session to each saved host went, for decisions made before the next one
+ * connects. Kept in its own preferences file, apart from the user's settings.
+ */
+class LinkHistory(private val prefs: SharedPreferences) {
+    /**
+     * @property roundTripMillis last round trip measured, or null if none was
+     * @property peakInboundBytesPerSecond most the link was seen to carry from the server
+     */
+    data class Entry(val roundTripMillis: Long?, val peakInboundBytesPerSecond: Long)
+
+    fun get(hostId: Long): Entry? {
+        if (!prefs.contains(peakKey(hostId))) {
+            return null
+        }
+        val roundTrip = prefs.getLong(roundTripKey(hostId), -1L)
+        return Entry(
+            roundTripMillis = roundTrip.takeIf { it >= 0 },
+            peakInboundBytesPerSecond = prefs.getLong(peakKey(hostId), 0L),
+        )
+    }
+
+    /** Remember how a session to [hostId] went. Sessions that measured nothing are ignored. */
+    fun record(hostId: Long, roundTripMillis: Long?, peakInboundBytesPerSecond: Long) {
+        if (hostId < 0 || (roundTripMillis == null && peakInboundBytesPerSecond == 0L)) {
+            return
+        }
+        prefs.edit {
+            putLong(roundTripKey(hostId), roundTripMillis ?: -1L)
+            putLong(peakKey(hostId), peakInboundBytesPerSecond)
+        }
+    }
+
+    private fun roundTripKey(hostId: Long) = "$hostId.roundTrip"
+
+    private fun peakKey(hostId: Long) = "$hostId.peakInbound"
+
+    companion object {
+        const val PREFS_NAME = "link_history"
+    }
+}
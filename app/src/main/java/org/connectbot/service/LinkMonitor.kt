@@ -0,0 +1,165 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.collectLatest
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runInterruptible
+import kotlin.coroutines.CoroutineContext
+import kotlin.coroutines.EmptyCoroutineContext
+
+/**
+ * How a bridge's connection is doing.
+ *
+ * @property roundTripMillis time the server last took to answer a keepalive, or null if unknown
+ * @property inboundBytesPerSecond bytes per second read from the server over the last sample
+ * @property outboundBytesPerSecond bytes per second sent to the server over the last sample
+ * @property inboundReadsPerSecond reads per second the relay made from the transport over
+ * the last sample; with [inboundBytesPerRead], shows how well the read buffer fits the traffic
+ */
+data class LinkQuality(
+    val roundTripMillis: Long? = null,
+    val inboundBytesPerSecond: Long = 0,
+    val outboundBytesPerSecond: Long = 0,
+    val inboundReadsPerSecond: Long = 0,
+) {
+    /** Average bytes per relay read over the last sample. */
+    val inboundBytesPerRead: Long
+        get() = if (inboundReadsPerSecond > 0) inboundBytesPerSecond / inboundReadsPerSecond else 0
+}
+
+/**
+ * Measures [LinkQuality] for one session until cancelled.
+ *
+ * Throughput is worked out every [sampleIntervalMillis] from the running counts
+ * [inboundBytes], [inboundReads] and [outboundBytes]. Every [roundTripIntervalMillis] [roundTrip] is run on
+ * [roundTripContext] to time a request the server must answer; it blocks, so it gets its own
+ * coroutine and a slow answer does not hold up the throughput samples. Each round trip is
+ * also passed to [onRoundTrip].
+ *
+ * All of that is only while [quality] is being collected, such as while the console shows
+ * it. Otherwise throughput is not sampled and round trips, which predictive echo and the
+ * link history still want now and then, are stretched to [idleRoundTripIntervalMillis].
+ */
+internal class LinkMonitor(
+    private val roundTrip: () -> Long?,
+    private val inboundBytes: () -> Long,
+    private val outboundBytes: () -> Long,
+    private val inboundReads: () -> Long = { 0L },
+    private val onRoundTrip: (Long) -> Unit = {},
+    private val clock: () -> Long = { System.nanoTime() / 1_000_000 },
+    private val roundTripContext: CoroutineContext = EmptyCoroutineContext,
+    private val sampleIntervalMillis: Long = DEFAULT_SAMPLE_INTERVAL_MILLIS,
+    private val roundTripIntervalMillis: Long = DEFAULT_ROUND_TRIP_INTERVAL_MILLIS,
+    private val idleRoundTripIntervalMillis: Long = DEFAULT_IDLE_ROUND_TRIP_INTERVAL_MILLIS,
+) {
+    private val _quality = MutableStateFlow(LinkQuality())
+    val quality: StateFlow<LinkQuality> = _quality.asStateFlow()
+
+    private val watched: Flow<Boolean> = _quality.subscriptionCount.map { it > 0 }.distinctUntilChanged()
+
+    /** Highest [LinkQuality.inboundBytesPerSecond] seen since the last [reset]. */
+    @Volatile
+    var peakInboundBytesPerSecond = 0L
+        private set
+
+    /** Forget the last session's measurements. */
+    fun reset() {
+        _quality.value = LinkQuality()
+        peakInboundBytesPerSecond = 0L
+    }
+
+    /** Measure until cancelled. */
+    suspend fun run() {
+        coroutineScope {
+            launch { measureRoundTrips() }
+            measureThroughput()
+        }
+    }
+
+    private suspend fun measureRoundTrips() {
+        watched.collectLatest { watched ->
+            val interval = if (watched) roundTripIntervalMillis else idleRoundTripIntervalMillis
+            if (!watched) {
+                // Measured just now while watched, or nobody has looked yet.
+                delay(interval)
+            }
+            while (true) {
+                val millis = runInterruptible(roundTripContext) { roundTrip() }
+                if (millis != null) {
+                    _quality.update { it.copy(roundTripMillis = millis) }
+                    onRoundTrip(millis)
+                }
+                delay(interval)
+            }
+        }
+    }
+
+    private suspend fun measureThroughput() {
+        watched.collectLatest { watched ->
+            if (watched) {
+                sampleThroughput()
+            }
+        }
+    }
+
+    private suspend fun sampleThroughput() {
+        var lastTime = clock()
+        var lastIn = inboundBytes()
+        var lastReads = inboundReads()
+        var lastOut = outboundBytes()
+        while (true) {
+            delay(sampleIntervalMillis)
+            val now = clock()
+            val bytesIn = inboundBytes()
+            val reads = inboundReads()
+            val bytesOut = outboundBytes()
+            val elapsed = now - lastTime
+            if (elapsed > 0) {
+                val inbound = (bytesIn - lastIn) * 1000 / elapsed
+                peakInboundBytesPerSecond = maxOf(peakInboundBytesPerSecond, inbound)
+                _quality.update {
+                    it.copy(
+                        inboundBytesPerSecond = inbound,
+                        outboundBytesPerSecond = (bytesOut - lastOut) * 1000 / elapsed,
+                        inboundReadsPerSecond = (reads - lastReads) * 1000 / elapsed,
+                    )
+                }
+            }
+            lastTime = now
+            lastIn = bytesIn
+            lastReads = reads
+            lastOut = bytesOut
+        }
+    }
+
+    companion object {
+        const val DEFAULT_SAMPLE_INTERVAL_MILLIS = 2_000L
+        const val DEFAULT_ROUND_TRIP_INTERVAL_MILLIS = 30_000L
+        const val DEFAULT_IDLE_ROUND_TRIP_INTERVAL_MILLIS = 300_000L
+    }
+}
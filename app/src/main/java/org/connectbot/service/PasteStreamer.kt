@@ -0,0 +1,109 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import kotlinx.coroutines.channels.Channel
+import java.nio.ByteBuffer
+import java.nio.CharBuffer
+import java.nio.charset.Charset
+import java.nio.charset.CodingErrorAction
+
+/**
+ * Sends pasted text to a [TransportWriter] in fixed-size chunks.
+ *
+ * Chunks come from a small pool and only return to it once the writer has taken their
+ * bytes, so at most `window` chunks are queued at a time. A large paste is therefore
+ * encoded as fast as the transport drains it instead of being copied up front, and
+ * cancelling the calling coroutine stops it between chunks.
+ */
+internal class PasteStreamer(
+    private val writer: TransportWriter,
+    chunkSize: Int = DEFAULT_CHUNK_SIZE,
+    window: Int = DEFAULT_WINDOW,
+) {
+    private val freeChunks = Channel<ByteArray>(window)
+
+    init {
+        repeat(window) { freeChunks.trySend(ByteArray(chunkSize)) }
+    }
+
+    /**
+     * Encode [text] with [charset] and queue it for the transport, suspending while the
+     * pool is empty. When [bracketed] is set the whole stream is wrapped in bracketed-paste
+     * markers, keystrokes are held by the writer until the end marker is sent, and the
+     * end marker is still sent if the paste is cancelled.
+     *
+     * @param onProgress called after each chunk with the characters queued so far and the total
+     */
+    suspend fun stream(
+        text: CharSequence,
+        charset: Charset,
+        bracketed: Boolean,
+        onProgress: (sent: Int, total: Int) -> Unit = { _, _ -> },
+    ) {
+        // Do not let the pasted text end the paste early.
+        val body = if (bracketed && text.contains(PASTE_END)) text.toString().replace(PASTE_END, "") else text
+
+        val encoder = charset.newEncoder().apply {
+            onMalformedInput(CodingErrorAction.REPLACE)
+            onUnmappableCharacter(CodingErrorAction.REPLACE)
+        }
+        val input = CharBuffer.wrap(body)
+
+        if (bracketed) {
+            writer.beginPaste(PASTE_START_BYTES)
+        }
+        try {
+            var encoded = false
+            var flushed = false
+            while (!flushed) {
+                val chunk = freeChunks.receive()
+                val output = ByteBuffer.wrap(chunk)
+
+                if (!encoded) {
+                    encoded = encoder.encode(input, output, true).isUnderflow
+                }
+                if (encoded) {
+                    flushed = encoder.flush(output).isUnderflow
+                }
+
+                if (output.position() > 0) {
+                    writer.sendBulk(chunk, output.position()) { freeChunks.trySend(chunk) }
+                } else {
+                    freeChunks.trySend(chunk)
+                }
+                onProgress(input.position(), input.limit())
+            }
+        } finally {
+            if (bracketed) {
+                writer.endPaste(PASTE_END_BYTES)
+            }
+            writer.flush()
+        }
+    }
+
+    private companion object {
+        const val DEFAULT_CHUNK_SIZE = 4096
+        const val DEFAULT_WINDOW = 4
+
+        const val PASTE_START = "\u001b[200~"
+        const val PASTE_END = "\u001b[201~"
+        val PASTE_START_BYTES = PASTE_START.toByteArray(Charsets.US_ASCII)
+        val PASTE_END_BYTES = PASTE_END.toByteArray(Charsets.US_ASCII)
+    }
+}
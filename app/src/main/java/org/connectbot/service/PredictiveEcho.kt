@@ -0,0 +1,405 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import java.io.ByteArrayOutputStream
+
+/**
+ * Speculative local echo for slow links, after the manner of Mosh.
+ *
+ * Keyboard input goes through [onInput] on its way to the server. Printable ASCII and the
+ * left and right arrow keys are taken as predictions of what the server will echo. Everything
+ * the server sends passes through [write] on its way to [display]. The predictions still on
+ * screen are rolled back first. The server output is then checked against the oldest
+ * predictions: an exact echo confirms them, and anything else throws them all away.
+ *
+ * Predictions are drawn underlined, and only while [active]. That is decided from how long
+ * the server takes to echo, which is measured all the time, with some hysteresis so it
+ * does not flap. Predictions are also only drawn once the server has echoed something
+ * since the last Enter, control key or misprediction. Nothing typed at a password prompt,
+ * where the server echoes nothing, is ever shown.
+ *
+ * Rolling back assumes the predictions stayed on the cursor's row, which holds for typing
+ * at a shell prompt. The server's own output is always written as sent, so a bad guess
+ * lasts only until it replies.
+ *
+ * Output arrives in chunks that can end partway through an escape sequence or a UTF-8
+ * character, so the server's output is followed through an [OutputState], and predictions
+ * are only drawn or rolled back between sequences. The underline the server has set is
+ * followed too, so a prediction never turns it off.
+ */
+internal class PredictiveEcho(
+    private val display: Utf8Passthrough.Sink,
+    private val clock: () -> Long = { System.nanoTime() / 1_000_000 },
+    private val activateAboveMillis: Long = DEFAULT_ACTIVATE_ABOVE_MILLIS,
+    private val deactivateBelowMillis: Long = DEFAULT_DEACTIVATE_BELOW_MILLIS,
+) : Utf8Passthrough.Sink {
+    private enum class Kind { CHAR, LEFT, RIGHT }
+
+    private class Prediction(val kind: Kind, val value: Byte, val sentAt: Long) {
+        var shown = false
+    }
+
+    /** Predictions not yet answered by the server, oldest first. */
+    private val pending = ArrayDeque<Prediction>()
+
+    /** Whether the server has echoed a prediction since the last reset of expectations. */
+    private var confirmed = false
+
+    /** Set by input that cannot be predicted; expectations are dropped at the next output. */
+    private var unpredictable = false
+
+    private val scratch = ByteArrayOutputStream()
+
+    private val output = OutputState()
+
+    /** Whether to predict at all; when false, output passes straight through. */
+    @Volatile
+    var enabled = false
+        set(value) {
+            field = value
+            if (!value) {
+                reset()
+            }
+        }
+
+    /** Whether predictions are drawn, because the server is slow to echo. */
+    @get:Synchronized
+    var active = false
+        private set
+
+    /** Smoothed time the server takes to echo a keystroke, or -1 before the first echo. */
+    @get:Synchronized
+    var echoMillis = -1L
+        private set
+
+    /** Forget everything, such as when the session is reconnected. */
+    @Synchronized
+    fun reset() {
+        rollBack()
+        pending.clear()
+        confirmed = false
+        unpredictable = false
+        output.reset()
+    }
+
+    /**
+     * Count a keepalive round trip as an echo, so predictions come on over a slow link
+     * before the first keystroke is answered, and go off once it recovers even if nobody types.
+     */
+    @Synchronized
+    fun onRoundTrip(millis: Long) {
+        if (enabled) {
+            recordEcho(millis)
+        }
+    }
+
+    /** Note keyboard [data] about to be sent to the server, and draw what it predicts. */
+    @Synchronized
+    fun onInput(data: ByteArray) {
+        if (!enabled) {
+            return
+        }
+
+        val now = clock()
+        expireUnanswered(now)
+
+        var i = 0
+        while (i < data.size) {
+            val kind = when {
+                arrowAt(data, i, 'D') -> Kind.LEFT
+                arrowAt(data, i, 'C') -> Kind.RIGHT
+                data[i].toInt() in PRINTABLE -> Kind.CHAR
+                else -> null
+            }
+            if (kind == null) {
+                // Enter, backspace, control keys and everything else: no telling what comes back.
+                unpredictable = true
+                return
+            }
+            if (!unpredictable && pending.size < MAX_PENDING) {
+                pending.addLast(Prediction(kind, data[i], now))
+            }
+            i += if (kind == Kind.CHAR) 1 else ARROW_LENGTH
+        }
+        drawPredictions()
+    }
+
+    /** Pass server output on to [display], reconciling it with what was predicted. */
+    @Synchronized
+    override fun write(buffer: ByteArray, offset: Int, length: Int) {
+        if (enabled) {
+            output.follow(buffer, offset, length)
+        }
+        if (pending.isEmpty() && !unpredictable) {
+            display.write(buffer, offset, length)
+            return
+        }
+
+        rollBack()
+        if (unpredictable) {
+            forgetPredictions()
+            unpredictable = false
+        } else {
+            reconcile(buffer, offset, length)
+        }
+
+        display.write(buffer, offset, length)
+        drawPredictions()
+    }
+
+    private fun reconcile(buffer: ByteArray, offset: Int, length: Int) {
+        val now = clock()
+        var i = 0
+        while (i < length && pending.isNotEmpty()) {
+            val head = pending.first()
+            if (head.kind != Kind.CHAR) {
+                // Whatever the server sends is how it answers a cursor movement.
+                pending.removeFirst()
+                return
+            }
+            if (buffer[offset + i] != head.value) {
+                forgetPredictions()
+                return
+            }
+            pending.removeFirst()
+            confirmed = true
+            recordEcho(now - head.sentAt)
+            i++
+        }
+    }
+
+    private fun recordEcho(millis: Long) {
+        echoMillis = if (echoMillis < 0) millis else (echoMillis * 7 + millis) / 8
+        if (!active && echoMillis >= activateAboveMillis) {
+            active = true
+        } else if (active && echoMillis < deactivateBelowMillis) {
+            active = false
+        }
+    }
+
+    /** A prediction the server has ignored for this long was wrong, such as at a password prompt. */
+    private fun expireUnanswered(now: Long) {
+        val oldest = pending.firstOrNull() ?: return
+        val patience = maxOf(MIN_PATIENCE_MILLIS, echoMillis * 4)
+        if (now - oldest.sentAt > patience) {
+            rollBack()
+            forgetPredictions()
+        }
+    }
+
+    private fun forgetPredictions() {
+        pending.clear()
+        confirmed = false
+    }
+
+    private fun drawPredictions() {
+        if (!enabled || !active || !confirmed || !output.atBoundary) {
+            return
+        }
+        scratch.reset()
+        for (prediction in pending) {
+            if (prediction.shown) {
+                continue
+            }
+            when (prediction.kind) {
+                Kind.CHAR -> {
+                    scratch.write(UNDERLINE_ON)
+                    scratch.write(prediction.value.toInt())
+                    if (!output.underlined) {
+                        scratch.write(UNDERLINE_OFF)
+                    }
+                }
+                Kind.LEFT -> scratch.write(CURSOR_LEFT)
+                Kind.RIGHT -> scratch.write(CURSOR_RIGHT)
+            }
+            prediction.shown = true
+        }
+        flushScratch()
+    }
+
+    /**
+     * Undo everything drawn, newest first, leaving the cursor where the server left it.
+     * Predictions are only drawn at a boundary and rolled back before any more output is
+     * displayed, so this always lands between sequences too.
+     */
+    private fun rollBack() {
+        scratch.reset()
+        for (prediction in pending.asReversed()) {
+            if (!prediction.shown) {
+                continue
+            }
+            when (prediction.kind) {
+                Kind.CHAR -> {
+                    scratch.write(CURSOR_LEFT)
+                    scratch.write(ERASE_CHARACTER)
+                }
+                Kind.LEFT -> scratch.write(CURSOR_RIGHT)
+                Kind.RIGHT -> scratch.write(CURSOR_LEFT)
+            }
+            prediction.shown = false
+        }
+        flushScratch()
+    }
+
+    private fun flushScratch() {
+        if (scratch.size() > 0) {
+            display.write(scratch.toByteArray(), 0, scratch.size())
+        }
+    }
+
+    /**
+     * Where the server's output stands between escape sequences and UTF-8 characters, and
+     * whether it has turned underline on.
+     */
+    private class OutputState {
+        private var state = GROUND
+        private var continuationBytes = 0
+        private val parameters = StringBuilder()
+        private var plainSgr = true
+
+        var underlined = false
+            private set
+
+        /** Whether bytes of our own can be written without landing inside the server's. */
+        val atBoundary: Boolean
+            get() = state == GROUND && continuationBytes == 0
+
+        fun reset() {
+            state = GROUND
+            continuationBytes = 0
+            underlined = false
+        }
+
+        fun follow(buffer: ByteArray, offset: Int, length: Int) {
+            for (i in offset until offset + length) {
+                step(buffer[i].toInt() and 0xff)
+            }
+        }
+
+        private fun step(b: Int) {
+            if (b == ESC) {
+                // Also how ST (ESC \) ends an OSC or other string.
+                state = ESCAPE
+                continuationBytes = 0
+                return
+            }
+            if (b == CAN || b == SUB) {
+                state = GROUND
+                return
+            }
+            when (state) {
+                GROUND -> when {
+                    b in 0x80..0xbf -> if (continuationBytes > 0) continuationBytes--
+                    b in 0xc0..0xdf -> continuationBytes = 1
+                    b in 0xe0..0xef -> continuationBytes = 2
+                    b in 0xf0..0xf7 -> continuationBytes = 3
+                    else -> continuationBytes = 0
+                }
+                ESCAPE -> state = when (b) {
+                    '['.code -> {
+                        parameters.setLength(0)
+                        plainSgr = true
+                        CSI
+                    }
+                    ']'.code -> OSC
+                    'P'.code, 'X'.code, '^'.code, '_'.code -> STRING
+                    in 0x20..0x2f -> ESCAPE_INTERMEDIATE
+                    else -> GROUND
+                }
+                ESCAPE_INTERMEDIATE -> if (b !in 0x20..0x2f) state = GROUND
+                CSI -> when (b) {
+                    in 0x30..0x3b -> if (parameters.length < MAX_PARAMETERS) parameters.append(b.toChar())
+                    in 0x3c..0x3f, in 0x20..0x2f -> plainSgr = false
+                    in 0x40..0x7e -> {
+                        if (b == 'm'.code && plainSgr) {
+                            followSgr(parameters.toString())
+                        }
+                        state = GROUND
+                    }
+                }
+                OSC -> if (b == BEL) state = GROUND
+                // Other strings only end at ST, which the ESC check above handles.
+            }
+        }
+
+        private fun followSgr(parameters: String) {
+            val codes = parameters.split(';')
+            var i = 0
+            while (i < codes.size) {
+                val parts = codes[i].split(':')
+                when (parts[0].toIntOrNull() ?: 0) {
+                    0, 24 -> underlined = false
+                    4 -> underlined = parts.getOrNull(1)?.toIntOrNull() != 0
+                    21 -> underlined = true
+                    // Skip the colour that follows, so "38;5;4" is not read as underline.
+                    38, 48, 58 -> if (parts.size == 1) {
+                        i += when (codes.getOrNull(i + 1)) {
+                            "5" -> 2
+                            "2" -> 4
+                            else -> 0
+                        }
+                    }
+                }
+                i++
+            }
+        }
+
+        private companion object {
+            const val GROUND = 0
+            const val ESCAPE = 1
+            const val ESCAPE_INTERMEDIATE = 2
+            const val CSI = 3
+            const val OSC = 4
+            const val STRING = 5
+
+            const val BEL = 0x07
+            const val CAN = 0x18
+            const val SUB = 0x1a
+            const val ESC = 0x1b
+
+            const val MAX_PARAMETERS = 256
+        }
+    }
+
+    companion object {
+        /** Echoes slower than this turn predictions on. */
+        const val DEFAULT_ACTIVATE_ABOVE_MILLIS = 250L
+
+        /** Echoes faster than this turn them off again. */
+        const val DEFAULT_DEACTIVATE_BELOW_MILLIS = 120L
+
+        private const val MIN_PATIENCE_MILLIS = 2000L
+        private const val MAX_PENDING = 64
+        private const val ARROW_LENGTH = 3
+
+        private val PRINTABLE = 0x20..0x7e
+
+        private val UNDERLINE_ON = "\u001b[4m".toByteArray()
+        private val UNDERLINE_OFF = "\u001b[24m".toByteArray()
+        private val CURSOR_LEFT = "\u001b[D".toByteArray()
+        private val CURSOR_RIGHT = "\u001b[C".toByteArray()
+        private val ERASE_CHARACTER = "\u001b[X".toByteArray()
+
+        /** Arrow keys are sent as ESC [ x, or ESC O x in application cursor mode. */
+        private fun arrowAt(data: ByteArray, index: Int, final: Char): Boolean = index + ARROW_LENGTH <= data.size &&
+            data[index] == 0x1b.toByte() &&
+            (data[index + 1] == '['.code.toByte() || data[index + 1] == 'O'.code.toByte()) &&
+            data[index + 2] == final.code.toByte()
+    }
+}
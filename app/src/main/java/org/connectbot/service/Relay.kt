@@ -17,7 +17,11 @@
 
 package org.connectbot.service
 
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.currentCoroutineContext
 import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import org.apache.harmony.niochar.charset.additional.IBM437
 import org.connectbot.di.CoroutineDispatchers
@@ -34,28 +38,65 @@ import java.nio.charset.StandardCharsets
 
 /**
  * Coroutine-based relay that handles incoming data from the transport to the terminal buffer.
- * Handles charset decoding and East Asian character width calculations.
+ * Handles charset decoding and East Asian character width calculations. UTF-8 sessions
+ * skip the decoder entirely and are only validated by [Utf8Passthrough]; single-byte
+ * charsets are mapped straight to UTF-8 by [SingleByteTranscoder].
+ *
+ * A bridge's output goes to its [PredictiveEcho], which passes it on to the terminal
+ * emulator. The internal constructor sends the converted output to any
+ * [Utf8Passthrough.Sink] instead, so the relay can run without a [TerminalBridge].
  *
  * @author Kenny Root
  */
-class Relay(
-    private val bridge: TerminalBridge,
+class Relay internal constructor(
+    private val output: Utf8Passthrough.Sink,
     private val transport: AbsTransport,
     private val dispatchers: CoroutineDispatchers,
     encoding: String,
+    private val statistics: RelayStatistics,
 ) {
 
+    constructor(
+        bridge: TerminalBridge,
+        transport: AbsTransport,
+        dispatchers: CoroutineDispatchers,
+        encoding: String,
+        statistics: RelayStatistics = RelayStatistics(),
+    ) : this(
+        bridge.predictiveEcho,
+        transport,
+        dispatchers,
+        encoding,
+        statistics,
+    )
+
     private var currentCharset: Charset? = null
     private var decoder: CharsetDecoder? = null
 
+    /**
+     * Whether the session charset is already UTF-8, in which case incoming bytes are
+     * validated and forwarded directly instead of being decoded and re-encoded.
+     */
+    private var passthrough = false
+
+    /**
+     * Lookup table for single-byte charsets such as CP437 or ISO-8859-1, used instead of
+     * the decoder when available.
+     */
+    private var transcoder: SingleByteTranscoder? = null
+
     private val encoder: CharsetEncoder = StandardCharsets.UTF_8.newEncoder().apply {
         onMalformedInput(CodingErrorAction.REPLACE)
         onUnmappableCharacter(CodingErrorAction.REPLACE)
     }
 
-    private val sourceBuffer = ByteBuffer.allocate(BUFFER_SIZE)
-    private val charBuffer = CharBuffer.allocate(BUFFER_SIZE)
-    private val destBuffer = ByteBuffer.allocate(BUFFER_SIZE)
+    private val bufferSizer = ReadBufferSizer(MIN_BUFFER_SIZE, MAX_BUFFER_SIZE)
+
+    private var sourceBuffer = ByteBuffer.allocate(MIN_BUFFER_SIZE)
+    private val charBuffer = CharBuffer.allocate(MIN_BUFFER_SIZE)
+    private val destBuffer = ByteBuffer.allocate(MIN_BUFFER_SIZE)
+
+    private var transcodeBuffer = ByteArray(MIN_BUFFER_SIZE * SingleByteTranscoder.MAX_BYTES_PER_CHAR)
 
     init {
         setCharset(encoding)
@@ -70,7 +111,7 @@ class Relay(
         Timber.d("changing charset to $encoding")
 
         val charset = if (encoding == "CP437") {
-            IBM437("IBM437", arrayOf("IBM437", "CP437"))
+            CP437
         } else {
             Charset.forName(encoding)
         }
@@ -86,6 +127,8 @@ class Relay(
 
         currentCharset = charset
         decoder = newCd
+        passthrough = charset == StandardCharsets.UTF_8
+        transcoder = if (passthrough) null else SingleByteTranscoder.forCharset(charset)
     }
 
     /**
@@ -98,8 +141,74 @@ class Relay(
     /**
      * Start relaying data from transport to terminal buffer.
      * This is a suspend function that runs on IO dispatcher.
+     *
+     * Reading from the transport and feeding the terminal emulator run as two stages
+     * joined by a [ByteRing], so a slow emulator does not stop the socket from being
+     * read until the ring fills past its high watermark.
+     *
+     * The reader is not a child of this call: a read blocked in the transport cannot be
+     * cancelled, and waiting for it would keep this from returning after the emulator
+     * stage has ended until the socket sees more data or closes.
      */
     suspend fun start() = withContext(dispatchers.io) {
+        val ring = ByteRing(RING_CAPACITY)
+        statistics.recordRingCapacity(ring.capacity)
+
+        val reader = CoroutineScope(coroutineContext + Job()).launch { readTransport(ring) }
+
+        try {
+            relayToEmulator(ring)
+        } finally {
+            reader.cancel()
+            val stats = statistics.snapshot()
+            Timber.d(
+                "Relay finished: ${stats.totalReads} reads, ${stats.totalBytes} bytes, " +
+                    "buffer ${stats.bufferSize} bytes, ${stats.ringStalls} ring stalls",
+            )
+        }
+    }
+
+    /**
+     * Reader stage: pull bytes from the transport into [ring] until end of input.
+     */
+    private suspend fun readTransport(ring: ByteRing) {
+        var readBuffer = ByteBuffer.allocate(bufferSizer.size)
+        statistics.recordBufferSize(readBuffer.capacity())
+
+        try {
+            while (currentCoroutineContext().isActive) {
+                if (readBuffer.capacity() != bufferSizer.size) {
+                    readBuffer = ByteBuffer.allocate(bufferSizer.size)
+                    statistics.recordBufferSize(readBuffer.capacity())
+                    Timber.d("Relay read buffer is now ${readBuffer.capacity()} bytes")
+                }
+
+                readBuffer.clear()
+                val length = readBuffer.remaining()
+                val bytesRead = transport.read(readBuffer.array(), 0, length)
+                if (readBuffer.advanceAfterRead(bytesRead, length)) {
+                    break
+                }
+
+                statistics.recordRead(bytesRead)
+                bufferSizer.onRead(bytesRead, length)
+
+                if (bytesRead > 0) {
+                    val stalls = ring.write(readBuffer.array(), 0, bytesRead)
+                    statistics.recordRingOccupancy(ring.size, stalls)
+                }
+            }
+        } catch (e: IOException) {
+            Timber.e(e, "Problem while reading incoming data in relay")
+        } finally {
+            ring.close()
+        }
+    }
+
+    /**
+     * Emulator stage: drain [ring], convert to UTF-8 and write to the terminal emulator.
+     */
+    private suspend fun relayToEmulator(ring: ByteRing) {
         decoder?.reset()
         encoder.reset()
         sourceBuffer.clear()
@@ -109,19 +218,63 @@ class Relay(
         var endOfInput = false
 
         try {
-            while (isActive && !endOfInput) {
+            while (currentCoroutineContext().isActive && !endOfInput) {
                 val currentDecoder = decoder ?: continue
 
+                if (sourceBuffer.capacity() != bufferSizer.size) {
+                    resizeSourceBuffer(bufferSizer.size)
+                }
+
                 val offset = sourceBuffer.position()
                 val length = sourceBuffer.remaining()
 
                 val bytesRead = if (length > 0) {
-                    transport.read(sourceBuffer.array(), offset, length)
+                    ring.read(sourceBuffer.array(), offset, length)
                 } else {
                     0
                 }
 
                 endOfInput = sourceBuffer.advanceAfterRead(bytesRead, length)
+                statistics.recordRingOccupancy(ring.size)
+
+                if (passthrough) {
+                    val consumed = Utf8Passthrough.forward(
+                        sourceBuffer.array(),
+                        0,
+                        sourceBuffer.position(),
+                        endOfInput,
+                        output,
+                    )
+                    if (endOfInput) {
+                        return
+                    }
+
+                    // Carry an incomplete trailing sequence over to the next read.
+                    sourceBuffer.flip()
+                    sourceBuffer.position(consumed)
+                    sourceBuffer.compact()
+                    continue
+                }
+
+                val currentTranscoder = transcoder
+                if (currentTranscoder != null) {
+                    val written = currentTranscoder.transcode(
+                        sourceBuffer.array(),
+                        0,
+                        sourceBuffer.position(),
+                        transcodeBuffer,
+                        0,
+                    )
+                    if (written > 0) {
+                        output.write(transcodeBuffer, 0, written)
+                    }
+                    if (endOfInput) {
+                        return
+                    }
+
+                    sourceBuffer.clear()
+                    continue
+                }
 
                 sourceBuffer.flip()
 
@@ -134,7 +287,7 @@ class Relay(
                     destBuffer.flip()
 
                     if (destBuffer.hasRemaining()) {
-                        bridge.terminalEmulator.writeInput(destBuffer.array(), 0, destBuffer.limit())
+                        output.write(destBuffer.array(), 0, destBuffer.limit())
                     }
                     destBuffer.clear()
                     charBuffer.compact()
@@ -145,7 +298,7 @@ class Relay(
                                 val flushResult = encoder.flush(destBuffer)
                                 destBuffer.flip()
                                 if (destBuffer.hasRemaining()) {
-                                    bridge.terminalEmulator.writeInput(
+                                    output.write(
                                         destBuffer.array(),
                                         0,
                                         destBuffer.limit(),
@@ -155,7 +308,7 @@ class Relay(
 
                                 if (flushResult.isUnderflow) break
                             }
-                            return@withContext
+                            return
                         }
 
                         // Need more data to continue decoding
@@ -176,9 +329,71 @@ class Relay(
         }
     }
 
+    /**
+     * Replace the source buffer with one of [size] bytes, keeping any bytes carried over
+     * from the previous read.
+     */
+    private fun resizeSourceBuffer(size: Int) {
+        val resized = ByteBuffer.allocate(size)
+        sourceBuffer.flip()
+        resized.put(sourceBuffer)
+        sourceBuffer = resized
+
+        if (transcodeBuffer.size < size * SingleByteTranscoder.MAX_BYTES_PER_CHAR) {
+            transcodeBuffer = ByteArray(size * SingleByteTranscoder.MAX_BYTES_PER_CHAR)
+        }
+    }
+
     companion object {
         private const val TAG = "CB.Relay"
-        private const val BUFFER_SIZE = 4096
+        private const val MIN_BUFFER_SIZE = 4096
+        private const val MAX_BUFFER_SIZE = 64 * 1024
+        private const val RING_CAPACITY = 256 * 1024
+
+        /** Shared instance so switching to CP437 does not build a new charset each time. */
+        private val CP437: Charset = IBM437("IBM437", arrayOf("IBM437", "CP437"))
+    }
+}
+
+/**
+ * Picks the relay read size. The size doubles toward [maxSize] while reads keep filling
+ * the buffer, as they do under bulk output, and halves back toward [minSize] once reads
+ * stay small, as they do in an interactive session.
+ */
+internal class ReadBufferSizer(
+    private val minSize: Int,
+    private val maxSize: Int,
+) {
+    @Volatile
+    var size: Int = minSize
+        private set
+
+    private var fullReads = 0
+    private var smallReads = 0
+
+    fun onRead(bytesRead: Int, requestedLength: Int) {
+        if (requestedLength > 0 && bytesRead >= requestedLength) {
+            smallReads = 0
+            if (++fullReads >= GROW_AFTER_FULL_READS && size < maxSize) {
+                size = minOf(size * 2, maxSize)
+                fullReads = 0
+            }
+        } else if (bytesRead < size / SMALL_READ_DIVISOR) {
+            fullReads = 0
+            if (++smallReads >= SHRINK_AFTER_SMALL_READS && size > minSize) {
+                size = maxOf(size / 2, minSize)
+                smallReads = 0
+            }
+        } else {
+            fullReads = 0
+            smallReads = 0
+        }
+    }
+
+    private companion object {
+        const val GROW_AFTER_FULL_READS = 2
+        const val SHRINK_AFTER_SMALL_READS = 8
+        const val SMALL_READ_DIVISOR = 16
     }
 }
 
@@ -0,0 +1,97 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Per-bridge counters for the reads performed by [Relay] and the occupancy of its
+ * [ByteRing]. Updated from the relay coroutines and read from anywhere; rates over time
+ * are left to the reader, such as [LinkMonitor], so any number of them can sample it.
+ */
+class RelayStatistics {
+    private val totalReads = AtomicLong()
+    private val totalBytes = AtomicLong()
+    private val bufferSize = AtomicInteger()
+    private val ringCapacity = AtomicInteger()
+    private val ringOccupancy = AtomicInteger()
+    private val peakRingOccupancy = AtomicInteger()
+    private val ringStalls = AtomicLong()
+
+    /**
+     * A point-in-time view of the relay counters.
+     *
+     * @property bytesPerRead average bytes per read so far
+     * @property ringOccupancy bytes read from the transport but not yet given to the emulator
+     * @property peakRingOccupancy highest [ringOccupancy] seen so far
+     * @property ringStalls times the transport reader waited for the emulator to catch up
+     */
+    data class Snapshot(
+        val totalReads: Long,
+        val totalBytes: Long,
+        val bufferSize: Int,
+        val ringCapacity: Int,
+        val ringOccupancy: Int,
+        val peakRingOccupancy: Int,
+        val ringStalls: Long,
+    ) {
+        val bytesPerRead: Double
+            get() = if (totalReads > 0) totalBytes.toDouble() / totalReads else 0.0
+    }
+
+    /** Bytes read from the transport so far. */
+    val bytesRead: Long
+        get() = totalBytes.get()
+
+    /** Reads from the transport so far. */
+    val reads: Long
+        get() = totalReads.get()
+
+    fun recordRead(bytes: Int) {
+        totalReads.incrementAndGet()
+        totalBytes.addAndGet(bytes.toLong())
+    }
+
+    fun recordBufferSize(size: Int) {
+        bufferSize.set(size)
+    }
+
+    fun recordRingCapacity(capacity: Int) {
+        ringCapacity.set(capacity)
+    }
+
+    fun recordRingOccupancy(occupancy: Int, stalls: Int = 0) {
+        ringOccupancy.set(occupancy)
+        peakRingOccupancy.accumulateAndGet(occupancy) { peak, current -> maxOf(peak, current) }
+        if (stalls > 0) {
+            ringStalls.addAndGet(stalls.toLong())
+        }
+    }
+
+    /** Take a snapshot of the counters. Taking one changes nothing. */
+    fun snapshot(): Snapshot = Snapshot(
+        totalReads = totalReads.get(),
+        totalBytes = totalBytes.get(),
+        bufferSize = bufferSize.get(),
+        ringCapacity = ringCapacity.get(),
+        ringOccupancy = ringOccupancy.get(),
+        peakRingOccupancy = peakRingOccupancy.get(),
+        ringStalls = ringStalls.get(),
+    )
+}
@@ -0,0 +1,136 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import java.nio.ByteBuffer
+import java.nio.CharBuffer
+import java.nio.charset.Charset
+import java.nio.charset.CodingErrorAction
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Transcodes a single-byte charset such as CP437, ISO-8859-x or windows-125x to UTF-8
+ * through a precomputed 256-entry lookup table.
+ *
+ * Each table entry is built by running the charset's own decoder and a UTF-8 encoder
+ * over that byte, so the output matches the [java.nio.charset.CharsetDecoder] path.
+ */
+internal class SingleByteTranscoder private constructor(
+    private val table: ByteArray,
+    private val lengths: ByteArray,
+) {
+    /**
+     * Transcode `src[offset until offset + length]` into [dest] starting at [destOffset].
+     * [dest] must have room for [MAX_BYTES_PER_CHAR] bytes per input byte.
+     *
+     * @return the number of bytes written to [dest]
+     */
+    fun transcode(src: ByteArray, offset: Int, length: Int, dest: ByteArray, destOffset: Int): Int {
+        var d = destOffset
+        for (i in offset until offset + length) {
+            val b = src[i].toInt() and 0xFF
+            val base = b shl 2
+            when (lengths[b].toInt()) {
+                1 -> dest[d++] = table[base]
+
+                2 -> {
+                    dest[d++] = table[base]
+                    dest[d++] = table[base + 1]
+                }
+
+                else -> {
+                    dest[d++] = table[base]
+                    dest[d++] = table[base + 1]
+                    dest[d++] = table[base + 2]
+                }
+            }
+        }
+        return d - destOffset
+    }
+
+    companion object {
+        /** Longest UTF-8 encoding of a single BMP character. */
+        const val MAX_BYTES_PER_CHAR = 3
+
+        private val cache = ConcurrentHashMap<String, SingleByteTranscoder?>()
+
+        /**
+         * Get the cached transcoder for [charset], building it on first use.
+         *
+         * @return the transcoder, or null if [charset] is not a stateless single-byte charset
+         */
+        fun forCharset(charset: Charset): SingleByteTranscoder? = cache.computeIfAbsent(charset.name()) { build(charset) }
+
+        private fun build(charset: Charset): SingleByteTranscoder? {
+            if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1.0f) {
+                return null
+            }
+
+            val decoder = charset.newDecoder().apply {
+                onMalformedInput(CodingErrorAction.REPLACE)
+                onUnmappableCharacter(CodingErrorAction.REPLACE)
+            }
+            if (decoder.maxCharsPerByte() != 1.0f) {
+                return null
+            }
+
+            val encoder = StandardCharsets.UTF_8.newEncoder().apply {
+                onMalformedInput(CodingErrorAction.REPLACE)
+                onUnmappableCharacter(CodingErrorAction.REPLACE)
+            }
+
+            val table = ByteArray(256 * 4)
+            val lengths = ByteArray(256)
+            val input = ByteBuffer.allocate(1)
+            val chars = CharBuffer.allocate(2)
+            val output = ByteBuffer.allocate(4)
+
+            for (b in 0 until 256) {
+                input.clear()
+                input.put(b.toByte())
+                input.flip()
+                chars.clear()
+                decoder.reset()
+                decoder.decode(input, chars, true)
+                decoder.flush(chars)
+                chars.flip()
+
+                // A surrogate could pair with the next byte's char on the decoder path.
+                if (chars.remaining() != 1 || Character.isSurrogate(chars.get(0))) {
+                    return null
+                }
+
+                output.clear()
+                encoder.reset()
+                encoder.encode(chars, output, true)
+                encoder.flush(output)
+                output.flip()
+
+                val length = output.remaining()
+                if (length !in 1..MAX_BYTES_PER_CHAR) {
+                    return null
+                }
+                output.get(table, b shl 2, length)
+                lengths[b] = length.toByte()
+            }
+
+            return SingleByteTranscoder(table, lengths)
+        }
+    }
+}
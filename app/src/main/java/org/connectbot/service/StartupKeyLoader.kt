@@ -17,6 +17,10 @@
 
 package org.connectbot.service
 
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
 import org.connectbot.data.entity.Pubkey
 import java.security.KeyPair
 
@@ -55,3 +59,27 @@ fun classifyStartupKey(
         StartupKeyLoadOutcome.Failed(pubkey, e.message ?: "Unknown error loading key")
     }
 }
+
+/**
+ * Classify [pubkeys] with [classifyStartupKey], decoding up to [parallelism] keys at once on
+ * [dispatcher]. Decoding is CPU-bound (and older keys pay for an iterated KDF), so with many
+ * startup keys this is much quicker than one after another.
+ *
+ * @return one outcome per key, in the same order as [pubkeys]
+ */
+suspend fun classifyStartupKeys(
+    pubkeys: List<Pubkey>,
+    dispatcher: CoroutineDispatcher,
+    parallelism: Int = defaultStartupKeyParallelism(),
+    convert: (Pubkey, String?) -> KeyPair?,
+): List<StartupKeyLoadOutcome> {
+    val pool = dispatcher.limitedParallelism(parallelism.coerceAtLeast(1))
+    return coroutineScope {
+        pubkeys.map { pubkey -> async(pool) { classifyStartupKey(pubkey, convert) } }.awaitAll()
+    }
+}
+
+/**
+ * Leave a core free for the UI while startup keys are decoded.
+ */
+fun defaultStartupKeyParallelism(): Int = (Runtime.getRuntime().availableProcessors() - 1).coerceIn(1, 4)
@@ -29,7 +29,7 @@ import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.cancel
-import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.cancelChildren
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.MutableSharedFlow
 import kotlinx.coroutines.flow.MutableStateFlow
@@ -43,6 +43,9 @@ import kotlinx.coroutines.flow.filterNotNull
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.runInterruptible
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import org.connectbot.R
 import org.connectbot.data.entity.Host
 import org.connectbot.data.entity.PortForward
@@ -127,13 +130,16 @@ internal class AuthBannerQueue {
 class TerminalBridge {
     private val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
 
-    private sealed class TransportOperation {
-        data class WriteData(val data: ByteArray) : TransportOperation()
-        data class SetDimensions(val columns: Int, val rows: Int, val width: Int, val height: Int) : TransportOperation()
-        data object Flush : TransportOperation()
-    }
+    private val transportWriter = TransportWriter({ transport })
+    private val pasteStreamer = PasteStreamer(transportWriter)
+    private val pasteJobs = SupervisorJob(scope.coroutineContext[Job])
+    private val pasteLock = Mutex()
 
-    private val transportOperations = Channel<TransportOperation>(Channel.UNLIMITED)
+    /**
+     * Whether the remote application has turned on bracketed paste, followed in exactly
+     * the bytes the emulator is given, since the emulator does not expose its modes.
+     */
+    internal val bracketedPaste = BracketedPasteTracker()
 
     var color: IntArray = IntArray(0)
 
@@ -161,6 +167,36 @@ class TerminalBridge {
 
     private var relay: Relay? = null
 
+    /**
+     * Read and buffer counters for the relay, kept across reconnects of this bridge. Rates
+     * over time are in [linkQuality].
+     */
+    val relayStatistics = RelayStatistics()
+
+    /** Local echo of keystrokes while the server is slow to echo them. */
+    internal val predictiveEcho = PredictiveEcho(
+        Utf8Passthrough.Sink { buffer, offset, length ->
+            bracketedPaste.scan(buffer, offset, length)
+            terminalEmulator.writeInput(buffer, offset, length)
+        },
+    )
+
+    private val linkMonitor by lazy {
+        LinkMonitor(
+            roundTrip = { transport?.measureRoundTripMillis() },
+            inboundBytes = { relayStatistics.bytesRead },
+            outboundBytes = { transportWriter.bytesWritten },
+            inboundReads = { relayStatistics.reads },
+            onRoundTrip = predictiveEcho::onRoundTrip,
+            roundTripContext = dispatchers.io,
+        )
+    }
+    private var linkMonitorJob: Job? = null
+
+    /** Round-trip time and throughput of the open session. */
+    val linkQuality: StateFlow<LinkQuality>
+        get() = linkMonitor.quality
+
     private val emulation: String?
     private val scrollback: Int
     private val encoding: String
@@ -202,6 +238,11 @@ class TerminalBridge {
     private val _progressState = MutableStateFlow<ProgressInfo?>(null)
     val progressState: StateFlow<ProgressInfo?> = _progressState.asStateFlow()
 
+    // Progress of a paste being streamed to the host, null when no paste is running
+    data class PasteProgress(val sent: Int, val total: Int)
+    private val _pasteProgress = MutableStateFlow<PasteProgress?>(null)
+    val pasteProgress: StateFlow<PasteProgress?> = _pasteProgress.asStateFlow()
+
     var disconnected = false
         private set
     var connecting = false
@@ -311,7 +352,8 @@ class TerminalBridge {
             defaultForeground = Color(defaultFgColor),
             defaultBackground = Color(defaultBgColor),
             onKeyboardInput = { data ->
-                transportOperations.trySend(TransportOperation.WriteData(data))
+                predictiveEcho.onInput(data)
+                transportWriter.sendInteractive(data)
             },
             onBell = {
                 scope.launch {
@@ -320,9 +362,7 @@ class TerminalBridge {
                 manager.sendActivityNotification(host)
             },
             onResize = {
-                transportOperations.trySend(
-                    TransportOperation.SetDimensions(it.columns, it.rows, 0, 0),
-                )
+                transportWriter.setDimensions(it.columns, it.rows, 0, 0)
             },
             onClipboardCopy = { text ->
                 // OSC 52 clipboard support - copy remote text to local clipboard
@@ -350,6 +390,8 @@ class TerminalBridge {
         }
         keyListener = TerminalKeyListener(TerminalEmulatorKeyDispatcher(terminalEmulator), stickyModifierSetting)
 
+        predictiveEcho.enabled = manager.prefs.getBoolean(PreferenceConstants.PREDICTIVE_ECHO, false)
+
         // Start the transport operation processor to serialize all writes
         startTransportOperationProcessor()
 
@@ -359,36 +401,11 @@ class TerminalBridge {
 
     /**
      * Processes transport operations serially to maintain strict ordering.
-     * This ensures keyboard input and other writes happen in the correct order.
+     * Queued writes are coalesced into batches; see [TransportWriter].
      */
     private fun startTransportOperationProcessor() {
         scope.launch(dispatchers.io) {
-            for (operation in transportOperations) {
-                try {
-                    when (operation) {
-                        is TransportOperation.WriteData -> {
-                            transport?.write(operation.data)
-                        }
-
-                        is TransportOperation.SetDimensions -> {
-                            transport?.setDimensions(
-                                operation.columns,
-                                operation.rows,
-                                operation.width,
-                                operation.height,
-                            )
-                        }
-
-                        is TransportOperation.Flush -> {
-                            transport?.flush()
-                        }
-                    }
-                } catch (e: IOException) {
-                    Timber.e(e, "Error processing transport operation")
-                } catch (e: Exception) {
-                    Timber.e(e, "Unexpected error processing transport operation")
-                }
-            }
+            transportWriter.run()
         }
     }
 
@@ -502,7 +519,7 @@ class TerminalBridge {
 
         // TODO make this more abstract so we don't litter on AbsTransport
         if (newTransport is SSH) {
-            newTransport.setCompression(host.compression)
+            newTransport.setCompression(manager.chooseCompression(host))
             host.useAuthAgent?.let { newTransport.setUseAuthAgent(it) }
         }
         newTransport.setEmulation(emulation)
@@ -514,6 +531,7 @@ class TerminalBridge {
                 if (newTransport.canForwardPorts()) {
                     try {
                         for (portForward in manager.hostRepository.getPortForwardsForHost(host.id)) {
+                            portForward.setRateLimit(manager.forwardRateLimits.get(portForward.id))
                             newTransport.addPortForward(portForward)
                         }
                     } catch (e: Exception) {
@@ -588,35 +606,72 @@ class TerminalBridge {
 
     /**
      * Inject a specific string into this terminal. Used for post-login strings
-     * and pasting clipboard.
+     * and text typed into the text input dialog, so it is sent in order with
+     * keystrokes; clipboard contents go through [paste].
      */
     fun injectString(string: String?) {
         if (string == null || string.isEmpty()) {
             return
         }
 
-        transportOperations.trySend(
-            TransportOperation.WriteData(string.toByteArray(charset(encoding))),
-        )
+        transportWriter.sendInteractive(string.toByteArray(charset(encoding)))
+    }
+
+    /**
+     * Paste [text] into the session. The text is encoded and sent in chunks as fast as
+     * the transport takes them, wrapped in bracketed-paste markers if the remote
+     * application enabled them. Progress is published on [pasteProgress] until the
+     * paste finishes or [cancelPaste] is called. A paste started while another is
+     * running is sent after it.
+     */
+    fun paste(text: String) {
+        if (text.isEmpty()) {
+            return
+        }
+
+        scope.launch(dispatchers.io + pasteJobs) {
+            pasteLock.withLock {
+                try {
+                    pasteStreamer.stream(text, charset(encoding), bracketedPaste.enabled) { sent, total ->
+                        _pasteProgress.value = PasteProgress(sent, total)
+                    }
+                } finally {
+                    _pasteProgress.value = null
+                }
+            }
+        }
     }
 
     /**
-     * Enqueue a single byte for transport write. Goes through the same serialized
-     * channel as [injectString] so keyboard input cannot interleave with paste data.
+     * Stop every paste started by [paste]. Text already queued is still sent.
+     */
+    fun cancelPaste() {
+        pasteJobs.cancelChildren()
+    }
+
+    /**
+     * Enqueue a single keystroke byte for transport write. Keystrokes are sent ahead
+     * of any paste data still queued from [paste].
      */
     fun sendByte(c: Int) {
-        transportOperations.trySend(
-            TransportOperation.WriteData(byteArrayOf(c.toByte())),
-        )
+        transportWriter.sendInteractive(c)
+    }
+
+    /**
+     * Enqueue [write], which writes to the transport itself, such as a protocol message
+     * the transport builds. Serialized with keystrokes so it never splits one of their
+     * writes.
+     */
+    fun sendDirect(write: () -> Unit) {
+        transportWriter.sendInteractive(write)
     }
 
     /**
-     * Enqueue a byte array for transport write. Serialized with all other
-     * transport operations (paste, keyboard, resize, flush).
+     * Enqueue a byte array for transport write. Serialized with keystrokes and
+     * [injectString], ahead of any paste data still queued from [paste].
      */
     fun sendBytes(data: ByteArray) {
-        if (data.isEmpty()) return
-        transportOperations.trySend(TransportOperation.WriteData(data))
+        transportWriter.sendInteractive(data)
     }
 
     /**
@@ -624,7 +679,7 @@ class TerminalBridge {
      * flush happens only after preceding bytes have been sent to the transport.
      */
     fun requestFlush() {
-        transportOperations.trySend(TransportOperation.Flush)
+        transportWriter.flush()
     }
 
     /**
@@ -660,10 +715,15 @@ class TerminalBridge {
         if (isSessionOpen) {
             // create thread to relay incoming connection data to buffer
             transport?.let { t ->
-                relay = Relay(this, t, dispatchers, encoding)
+                predictiveEcho.reset()
+                bracketedPaste.reset()
+                relay = Relay(this, t, dispatchers, encoding, relayStatistics)
                 scope.launch {
                     relay?.start()
                 }
+                linkMonitorJob?.cancel()
+                linkMonitor.reset()
+                linkMonitorJob = scope.launch { linkMonitor.run() }
             }
         }
 
@@ -723,6 +783,16 @@ class TerminalBridge {
         // Cancel any pending prompts
         promptManager.cancelPrompt()
 
+        if (linkMonitorJob?.isActive == true) {
+            manager.recordLinkHistory(
+                host.id,
+                linkMonitor.quality.value.roundTripMillis,
+                linkMonitor.peakInboundBytesPerSecond,
+            )
+        }
+        linkMonitorJob?.cancel()
+        linkMonitor.reset()
+
         // disconnection request hangs if we havent really connected to a host yet
         // temporary fix is to just spawn disconnection into a thread
         scope.launch(dispatchers.io) {
@@ -909,7 +979,7 @@ class TerminalBridge {
         inGracePeriod = false
 
         profileObservationJob?.cancel()
-        transportOperations.close()
+        transportWriter.close()
         scope.cancel()
     }
 
@@ -938,6 +1008,26 @@ class TerminalBridge {
     val portForwards: List<PortForward>
         get() = transport?.getPortForwards().orEmpty()
 
+    /**
+     * Enable each group of [groups] in turn with [enable], the groups side by side, and tell
+     * the user how each forward went. The terminal belongs to the shell by then, so results
+     * are shown as status messages. [enable] blocks and is interrupted if the job is
+     * cancelled; it returns null when the session has closed and nothing should be shown.
+     *
+     * @return the job, for the transport to cancel when it closes
+     */
+    fun launchPortForwardSetup(groups: List<List<PortForward>>, enable: (PortForward) -> Boolean?): Job = scope.launch(dispatchers.io) {
+        for (group in groups) {
+            launch {
+                for (portForward in group) {
+                    val enabled = runInterruptible { enable(portForward) } ?: return@launch
+                    val message = if (enabled) R.string.portforward_ready else R.string.portforward_enable_failed
+                    _networkStatusMessages.emit(manager.res.getString(message, portForward.getDescription()))
+                }
+            }
+        }
+    }
+
     /**
      * Enables a port forward member. After calling this method, the port forward should
      * be operational.
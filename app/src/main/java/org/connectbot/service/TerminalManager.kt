@@ -50,6 +50,8 @@ import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asSharedFlow
 import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.runInterruptible
+import org.connectbot.BuildConfig
 import org.connectbot.R
 import org.connectbot.data.ColorSchemeRepository
 import org.connectbot.data.HostRepository
@@ -58,6 +60,13 @@ import org.connectbot.data.PubkeyRepository
 import org.connectbot.data.entity.Host
 import org.connectbot.data.entity.Pubkey
 import org.connectbot.di.CoroutineDispatchers
+import org.connectbot.transport.CipherBenchmark
+import org.connectbot.transport.DnsCache
+import org.connectbot.transport.HappyEyeballsConnector
+import org.connectbot.transport.JumpHostPool
+import org.connectbot.transport.Preconnector
+import org.connectbot.transport.SSH
+import org.connectbot.transport.SshConnectionPool
 import org.connectbot.transport.TransportFactory
 import org.connectbot.util.PreferenceConstants
 import org.connectbot.util.ProviderLoader
@@ -125,6 +134,34 @@ class TerminalManager :
 
     internal val loadedKeypairs: MutableMap<String, KeyHolder> = ConcurrentHashMap()
 
+    /** Authenticated SSH connections that new sessions to the same host can share. */
+    internal val sshConnectionPool = SshConnectionPool()
+
+    /** Host name lookups shared by every connection; cleared when the network changes. */
+    internal val dnsCache = DnsCache()
+    private var prefetchJob: Job? = null
+
+    /** Opens the TCP connections for network transports. */
+    internal val connector = HappyEyeballsConnector(dnsCache::resolve, dnsCache::forget)
+
+    /** Connections opened ahead of time to the hosts most likely to be tapped next. */
+    internal val preconnector by lazy {
+        Preconnector(scope, dispatchers.io) { host -> SSH.warmUp(host, this) }
+    }
+
+    /** How the last session to each host went. */
+    private val linkHistory by lazy {
+        LinkHistory(getSharedPreferences(LinkHistory.PREFS_NAME, MODE_PRIVATE))
+    }
+
+    /** Rate limits the user set on port forwards. */
+    internal val forwardRateLimits by lazy { ForwardRateLimits(prefs) }
+
+    /** Cipher and MAC speeds on this device, for ordering SSH proposals. */
+    internal val cipherBenchmark by lazy {
+        CipherBenchmark(getSharedPreferences(CipherBenchmark.PREFS_NAME, MODE_PRIVATE), BuildConfig.VERSION_CODE)
+    }
+
     internal lateinit var res: Resources
 
     @Inject
@@ -159,6 +196,9 @@ class TerminalManager :
 
     private val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
 
+    /** Jump host connections shared by sessions tunnelled through them. */
+    internal val jumpHostPool = JumpHostPool(scope)
+
     private var idleJob: Job? = null
     private val idleTimeout: Long = 300000 // 5 minutes
 
@@ -195,18 +235,19 @@ class TerminalManager :
         scope.launch(dispatchers.io) {
             try {
                 val pubkeys = pubkeyRepository.getStartupKeys()
+                val outcomes = classifyStartupKeys(pubkeys, dispatchers.default, convert = PubkeyUtils::convertToKeyPair)
                 val encryptedPending = mutableListOf<Pubkey>()
-                for (pubkey in pubkeys) {
-                    when (val outcome = classifyStartupKey(pubkey, PubkeyUtils::convertToKeyPair)) {
+                for (outcome in outcomes) {
+                    when (outcome) {
                         is StartupKeyLoadOutcome.Loaded -> addKey(outcome.pubkey, outcome.pair)
 
                         is StartupKeyLoadOutcome.NeedsPassphrase -> encryptedPending.add(outcome.pubkey)
 
                         is StartupKeyLoadOutcome.Failed -> {
-                            Timber.w("Failed to convert key '%s' to KeyPair: %s", pubkey.nickname, outcome.reason)
+                            Timber.w("Failed to convert key '%s' to KeyPair: %s", outcome.pubkey.nickname, outcome.reason)
                             _serviceErrors.emit(
                                 ServiceError.KeyLoadFailed(
-                                    keyName = pubkey.nickname,
+                                    keyName = outcome.pubkey.nickname,
                                     reason = outcome.reason,
                                 ),
                             )
@@ -266,8 +307,12 @@ class TerminalManager :
 
         stopIdleTimer()
 
+        preconnector.releaseAll()
+
         disconnectAll(excludeLocal = false)
 
+        jumpHostPool.closeIdle()
+
         connectionNotifier.hideRunningNotification(this)
 
         disableMediaPlayer()
@@ -722,10 +767,21 @@ class TerminalManager :
 
     override fun onProviderLoaderSuccess() {
         Timber.d("Installed crypto provider successfully")
+        benchmarkCiphersIfStale()
     }
 
     override fun onProviderLoaderError() {
         Timber.e("Failure while installing crypto provider")
+        benchmarkCiphersIfStale()
+    }
+
+    /** Time the ciphers on first run and after upgrades, once the crypto provider is settled. */
+    private fun benchmarkCiphersIfStale() {
+        scope.launch(dispatchers.default) {
+            if (cipherBenchmark.isStale()) {
+                cipherBenchmark.run()
+            }
+        }
     }
 
     inner class TerminalBinder : Binder() {
@@ -892,6 +948,17 @@ class TerminalManager :
             wantBellVibration = sharedPreferences.getBoolean(PreferenceConstants.BELL_VIBRATE, true)
         } else if (PreferenceConstants.BUMPY_ARROWS == key) {
             wantKeyVibration = sharedPreferences.getBoolean(PreferenceConstants.BUMPY_ARROWS, true)
+        } else if (PreferenceConstants.PREDICTIVE_ECHO == key) {
+            val predict = sharedPreferences.getBoolean(PreferenceConstants.PREDICTIVE_ECHO, false)
+            synchronized(_bridges) {
+                for (bridge in _bridges) {
+                    bridge.predictiveEcho.enabled = predict
+                }
+            }
+        } else if (PreferenceConstants.PRECONNECT == key) {
+            if (!sharedPreferences.getBoolean(PreferenceConstants.PRECONNECT, false)) {
+                preconnector.releaseAll()
+            }
         } else if (PreferenceConstants.WIFI_LOCK == key) {
             val lockingWifi = prefs.getBoolean(PreferenceConstants.WIFI_LOCK, true)
             connectivityMonitor.setWantWifiLock(lockingWifi)
@@ -913,6 +980,8 @@ class TerminalManager :
     class KeyHolder {
         var pubkey: Pubkey? = null
         var pair: KeyPair? = null
+
+        // SSH wire format of the public key, worked out once for agent and publickey requests
         var openSSHPubkey: ByteArray? = null
 
         // For biometric keys stored in Android Keystore
@@ -923,6 +992,58 @@ class TerminalManager :
         var expiryJob: Job? = null
     }
 
+    /**
+     * Look up [hostnames], in order, in the background so that connecting to them does not
+     * wait for DNS. Replaces any prefetch still running.
+     */
+    fun prefetchAddresses(hostnames: List<String>) {
+        prefetchJob?.cancel()
+        prefetchJob = scope.launch(dispatchers.io) {
+            runInterruptible { dnsCache.prefetch(hostnames) }
+        }
+    }
+
+    /**
+     * If the user has opted in, connect and authenticate to [hosts] in the background so that
+     * opening a session to one of them can share the connection. Hosts with a session open
+     * already are skipped.
+     */
+    fun preconnect(hosts: List<Host>) {
+        if (!prefs.getBoolean(PreferenceConstants.PRECONNECT, false)) {
+            return
+        }
+        val open = _bridgesFlow.value.map { it.host.id }.toSet()
+        preconnector.warmUp(hosts.filter { it.id !in open })
+    }
+
+    /**
+     * Whether an SSH connection to [host] should be compressed. That is the host's own
+     * setting, unless the user has chosen automatic compression, in which case
+     * [CompressionPolicy] decides from the current network and the last session to [host].
+     */
+    fun chooseCompression(host: Host): Boolean {
+        if (!prefs.getBoolean(PreferenceConstants.COMPRESSION_AUTO, false)) {
+            return host.compression
+        }
+        val networkType = connectivityMonitor.getCurrentNetworkInfo()?.networkType ?: -1
+        val decision = CompressionPolicy.decide(networkType, linkHistory.get(host.id))
+        Timber.i("Compression %s for %s: %s", if (decision.compress) "on" else "off", host.nickname, decision.reason)
+        return decision.compress
+    }
+
+    /** Remember how a session to [hostId] went, for [chooseCompression] next time. */
+    fun recordLinkHistory(hostId: Long, roundTripMillis: Long?, peakInboundBytesPerSecond: Long) {
+        linkHistory.record(hostId, roundTripMillis, peakInboundBytesPerSecond)
+    }
+
+    /**
+     * Called when the default network changes or its link properties do.
+     * Cached DNS answers may not hold on the new network, so they are dropped.
+     */
+    fun onDefaultNetworkChanged() {
+        dnsCache.invalidate()
+    }
+
     /**
      * Called when connectivity to a network is lost.
      * Starts grace period for bridges using this network.
@@ -0,0 +1,256 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.selects.select
+import org.connectbot.transport.AbsTransport
+import timber.log.Timber
+import java.io.IOException
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Serializes everything a [TerminalBridge] sends to its transport.
+ *
+ * Each time the processor wakes up it drains every queued operation into one reusable
+ * buffer and issues a single write and flush, so a held key or a burst of typing becomes
+ * one packet rather than one per byte. Interactive input (keystrokes and resizes) has its
+ * own queue which is always drained first, so keystrokes are not stuck behind a large
+ * paste. Order is preserved within each queue.
+ *
+ * The exception is a bracketed paste: between [beginPaste] and [endPaste] interactive
+ * input is held back, so nothing typed (Ctrl-C included) lands inside the markers and
+ * is taken by the remote application as part of the pasted text.
+ */
+internal class TransportWriter(
+    private val transport: () -> AbsTransport?,
+    batchSize: Int = DEFAULT_BATCH_SIZE,
+) {
+    private sealed class Operation {
+        class WriteByte(val value: Byte) : Operation()
+        class WriteData(
+            val data: ByteArray,
+            val length: Int = data.size,
+            val onWritten: (() -> Unit)? = null,
+        ) : Operation()
+        data class SetDimensions(val columns: Int, val rows: Int, val width: Int, val height: Int) : Operation()
+        class PasteMarker(val marker: ByteArray, val start: Boolean) : Operation()
+        class WriteDirect(val write: () -> Unit) : Operation()
+        data object Flush : Operation()
+    }
+
+    private val interactive = Channel<Operation>(Channel.UNLIMITED)
+    private val bulk = Channel<Operation>(Channel.UNLIMITED)
+
+    /** One operation per byte value so single keystrokes do not allocate. */
+    private val singleBytes = Array(256) { Operation.WriteByte(it.toByte()) }
+
+    // Batch state, only touched by the processor coroutine.
+    private val batch = ByteArray(batchSize)
+    private var batchLength = 0
+    private var wroteData = false
+    private var flushRequested = false
+    private var pasting = false
+
+    private val written = AtomicLong()
+
+    /** Bytes handed to the transport so far. Read from any thread. */
+    val bytesWritten: Long
+        get() = written.get()
+
+    /** Queue a single keystroke byte ahead of any pending bulk data. */
+    fun sendInteractive(c: Int) {
+        interactive.trySend(singleBytes[c and 0xff])
+    }
+
+    /** Queue keyboard input ahead of any pending bulk data. */
+    fun sendInteractive(data: ByteArray) {
+        if (data.isEmpty()) return
+        interactive.trySend(Operation.WriteData(data))
+    }
+
+    /** Queue bulk data such as a paste. */
+    fun sendBulk(data: ByteArray) {
+        if (data.isEmpty()) return
+        bulk.trySend(Operation.WriteData(data))
+    }
+
+    /**
+     * Queue the first [length] bytes of [data] as bulk data. [onWritten] is called once
+     * the bytes have been handed on and [data] may be reused.
+     */
+    fun sendBulk(data: ByteArray, length: Int, onWritten: () -> Unit) {
+        bulk.trySend(Operation.WriteData(data, length, onWritten))
+    }
+
+    /** Queue a bracketed-paste start [marker] as bulk data, holding interactive input after it. */
+    fun beginPaste(marker: ByteArray) {
+        bulk.trySend(Operation.PasteMarker(marker, start = true))
+    }
+
+    /** Queue a bracketed-paste end [marker] as bulk data, releasing interactive input held since [beginPaste]. */
+    fun endPaste(marker: ByteArray) {
+        bulk.trySend(Operation.PasteMarker(marker, start = false))
+    }
+
+    /**
+     * Queue [write], which writes to the transport itself, in order with keyboard input.
+     * Bytes already batched are written before it, so it never lands inside them. It is
+     * not called if there is no transport.
+     */
+    fun sendInteractive(write: () -> Unit) {
+        interactive.trySend(Operation.WriteDirect(write))
+    }
+
+    /** Queue a terminal resize. Bytes already batched are written before it. */
+    fun setDimensions(columns: Int, rows: Int, width: Int, height: Int) {
+        interactive.trySend(Operation.SetDimensions(columns, rows, width, height))
+    }
+
+    /** Make sure the transport is flushed after the bulk data queued so far. */
+    fun flush() {
+        bulk.trySend(Operation.Flush)
+    }
+
+    /** Stop accepting operations. [run] returns once everything queued has been sent. */
+    fun close() {
+        interactive.close()
+        bulk.close()
+    }
+
+    /**
+     * Process operations until [close] is called. Must only be called once.
+     */
+    suspend fun run() {
+        while (true) {
+            val first = if (pasting) {
+                bulk.receiveCatching().getOrNull()
+            } else {
+                select {
+                    interactive.onReceiveCatching { it.getOrNull() }
+                    bulk.onReceiveCatching { it.getOrNull() }
+                }
+            }
+
+            if (first == null) {
+                // A queue was closed and the paste cannot end now; send what is left.
+                pasting = false
+            }
+            processBatch(first)
+
+            if (first == null) {
+                // The batch above drained whatever was left.
+                return
+            }
+        }
+    }
+
+    private fun processBatch(first: Operation?) {
+        val target = transport()
+        try {
+            if (first != null) {
+                process(target, first)
+            }
+            while (true) {
+                val next = (if (pasting) null else interactive.tryReceive().getOrNull())
+                    ?: bulk.tryReceive().getOrNull()
+                    ?: break
+                process(target, next)
+            }
+            writeBatch(target)
+            if (wroteData || flushRequested) {
+                target?.flush()
+            }
+        } catch (e: IOException) {
+            Timber.e(e, "Error processing transport operation")
+        } catch (e: Exception) {
+            Timber.e(e, "Unexpected error processing transport operation")
+        } finally {
+            batchLength = 0
+            wroteData = false
+            flushRequested = false
+        }
+    }
+
+    private fun process(target: AbsTransport?, operation: Operation) {
+        when (operation) {
+            is Operation.WriteByte -> {
+                if (batchLength == batch.size) {
+                    writeBatch(target)
+                }
+                batch[batchLength++] = operation.value
+            }
+
+            is Operation.WriteData -> try {
+                append(target, operation.data, operation.length)
+            } finally {
+                operation.onWritten?.invoke()
+            }
+
+            is Operation.PasteMarker -> {
+                append(target, operation.marker, operation.marker.size)
+                pasting = operation.start
+            }
+
+            is Operation.WriteDirect -> {
+                writeBatch(target)
+                if (target != null) {
+                    operation.write()
+                    wroteData = true
+                }
+            }
+
+            is Operation.SetDimensions -> {
+                writeBatch(target)
+                target?.setDimensions(operation.columns, operation.rows, operation.width, operation.height)
+            }
+
+            is Operation.Flush -> flushRequested = true
+        }
+    }
+
+    private fun append(target: AbsTransport?, data: ByteArray, length: Int) {
+        if (length > batch.size - batchLength) {
+            writeBatch(target)
+        }
+        if (length >= batch.size) {
+            target?.let {
+                it.write(data, 0, length)
+                written.addAndGet(length.toLong())
+            }
+            wroteData = true
+        } else {
+            System.arraycopy(data, 0, batch, batchLength, length)
+            batchLength += length
+        }
+    }
+
+    private fun writeBatch(target: AbsTransport?) {
+        if (batchLength == 0) return
+        target?.let {
+            it.write(batch, 0, batchLength)
+            written.addAndGet(batchLength.toLong())
+        }
+        batchLength = 0
+        wroteData = true
+    }
+
+    companion object {
+        private const val DEFAULT_BATCH_SIZE = 8192
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+/**
+ * Validates UTF-8 input and forwards it to the terminal without transcoding.
+ *
+ * Well-formed UTF-8 is passed on unchanged, which is what decoding and re-encoding it
+ * gives too. Malformed input is replaced with U+FFFD, split into replaced sequences the
+ * way the JDK's UTF-8 [java.nio.charset.CharsetDecoder] with
+ * [java.nio.charset.CodingErrorAction.REPLACE] splits it. Android's ICU-backed decoder can
+ * split some malformed input differently, such as truncated or surrogate sequences, so
+ * there the number of U+FFFD shown may differ from what the decoding path showed.
+ */
+internal object Utf8Passthrough {
+    /** UTF-8 encoding of U+FFFD REPLACEMENT CHARACTER. */
+    private val REPLACEMENT = byteArrayOf(0xEF.toByte(), 0xBF.toByte(), 0xBD.toByte())
+
+    /**
+     * Receives runs of valid UTF-8 from [forward].
+     */
+    fun interface Sink {
+        fun write(buffer: ByteArray, offset: Int, length: Int)
+    }
+
+    /**
+     * Forward the bytes in `buffer[offset until end]` to [sink].
+     *
+     * An incomplete multibyte sequence at the end of the input is not consumed unless
+     * [endOfInput] is set, in which case it is replaced with a single U+FFFD.
+     *
+     * @return the number of bytes consumed; the caller should carry the rest over to the next call
+     */
+    fun forward(buffer: ByteArray, offset: Int, end: Int, endOfInput: Boolean, sink: Sink): Int {
+        var i = offset
+        var runStart = offset
+
+        while (i < end) {
+            if (buffer[i] >= 0) {
+                i++
+                continue
+            }
+
+            val length = sequenceLength(buffer, i, end)
+            when {
+                length > 0 -> i += length
+
+                length == 0 -> {
+                    if (!endOfInput) {
+                        break
+                    }
+                    if (i > runStart) sink.write(buffer, runStart, i - runStart)
+                    sink.write(REPLACEMENT, 0, REPLACEMENT.size)
+                    i = end
+                    runStart = end
+                }
+
+                else -> {
+                    if (i > runStart) sink.write(buffer, runStart, i - runStart)
+                    sink.write(REPLACEMENT, 0, REPLACEMENT.size)
+                    i -= length
+                    runStart = i
+                }
+            }
+        }
+
+        if (i > runStart) {
+            sink.write(buffer, runStart, i - runStart)
+        }
+
+        return i - offset
+    }
+
+    /**
+     * Classify the multibyte sequence starting at [start].
+     *
+     * @return the length of a valid sequence, 0 if the sequence is incomplete, or the
+     * negated length of the malformed input to replace
+     */
+    private fun sequenceLength(buffer: ByteArray, start: Int, end: Int): Int {
+        val b1 = buffer[start].toInt() and 0xFF
+        val remaining = end - start
+
+        return when (b1) {
+            in 0xC2..0xDF -> {
+                if (remaining < 2) return 0
+                if (isNotContinuation(buffer[start + 1])) -1 else 2
+            }
+
+            in 0xE0..0xEF -> {
+                if (remaining < 3) {
+                    return if (remaining > 1 && isMalformed3Prefix(b1, buffer[start + 1])) -1 else 0
+                }
+                val b2 = buffer[start + 1].toInt() and 0xFF
+                val b3 = buffer[start + 2]
+                when {
+                    isMalformed3Prefix(b1, buffer[start + 1]) -> -1
+
+                    isNotContinuation(b3) -> -2
+
+                    // Encoded surrogates are replaced as a whole sequence.
+                    b1 == 0xED && b2 >= 0xA0 -> -3
+
+                    else -> 3
+                }
+            }
+
+            in 0xF0..0xF7 -> {
+                if (b1 > 0xF4) return -1
+                if (remaining < 4) {
+                    return when {
+                        remaining > 1 && isMalformed4Prefix(b1, buffer[start + 1]) -> -1
+                        remaining > 2 && isNotContinuation(buffer[start + 2]) -> -2
+                        else -> 0
+                    }
+                }
+                when {
+                    isMalformed4Prefix(b1, buffer[start + 1]) -> -1
+                    isNotContinuation(buffer[start + 2]) -> -2
+                    isNotContinuation(buffer[start + 3]) -> -3
+                    else -> 4
+                }
+            }
+
+            else -> -1
+        }
+    }
+
+    private fun isNotContinuation(b: Byte): Boolean = (b.toInt() and 0xC0) != 0x80
+
+    private fun isMalformed3Prefix(b1: Int, b2: Byte): Boolean = (b1 == 0xE0 && (b2.toInt() and 0xE0) == 0x80) || isNotContinuation(b2)
+
+    private fun isMalformed4Prefix(b1: Int, b2: Byte): Boolean {
+        val u2 = b2.toInt() and 0xFF
+        return (b1 == 0xF0 && (u2 < 0x90 || u2 > 0xBF)) ||
+            (b1 == 0xF4 && (u2 and 0xF0) != 0x80) ||
+            isNotContinuation(b2)
+    }
+}
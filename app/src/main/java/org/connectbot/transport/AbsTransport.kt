@@ -79,6 +79,20 @@ abstract class AbsTransport {
     @Throws(IOException::class)
     abstract fun write(buffer: ByteArray)
 
+    /**
+     * Writes `length` bytes of `buffer` starting at `offset`. See [write] for
+     * behavior details. The default copies the range; transports backed by a stream
+     * should override this to write it directly.
+     * @param buffer bytes to write to transport
+     * @param offset where to start reading from the buffer
+     * @param length number of bytes to write
+     * @throws IOException when there is a problem writing after connection
+     */
+    @Throws(IOException::class)
+    open fun write(buffer: ByteArray, offset: Int, length: Int) {
+        write(buffer.copyOfRange(offset, offset + length))
+    }
+
     /**
      * Writes to the transport. See [write] for behavior details.
      * @param c character to write to the transport
@@ -115,6 +129,13 @@ abstract class AbsTransport {
 
     open fun getOptions(): Map<String, String>? = null
 
+    /**
+     * Time one round trip to the server that it must answer, such as a keepalive.
+     * Blocks until the answer arrives.
+     * @return milliseconds taken, or null if this transport cannot measure it or got no answer
+     */
+    open fun measureRoundTripMillis(): Long? = null
+
     open fun setCompression(compression: Boolean) {
         // do nothing
     }
@@ -0,0 +1,205 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import android.content.SharedPreferences
+import androidx.core.content.edit
+import timber.log.Timber
+import java.security.GeneralSecurityException
+import java.security.spec.AlgorithmParameterSpec
+import javax.crypto.Cipher
+import javax.crypto.Mac
+import javax.crypto.spec.GCMParameterSpec
+import javax.crypto.spec.IvParameterSpec
+import javax.crypto.spec.SecretKeySpec
+
+/**
+ * Orders SSH cipher and MAC proposals by how fast this device runs them.
+ *
+ * Devices with AES instructions run AES-GCM several times faster than ChaCha20-Poly1305, and
+ * devices without them the other way round, but sshlib proposes the same order everywhere.
+ * [run] times each family through the platform's JCA provider and keeps the results, along
+ * with [versionCode], in [prefs], so it runs once per install and again after each upgrade.
+ *
+ * Only the families in [CIPHER_FAMILIES] and [MAC_FAMILIES] are moved, and they stay ahead
+ * of everything else in the list; older algorithms are never promoted for being fast.
+ */
+internal class CipherBenchmark(
+    private val prefs: SharedPreferences,
+    private val versionCode: Int,
+    private val measure: (String) -> Double? = ::measureFamily,
+) {
+    /** Bytes per second by family from the last run, empty until a run has finished. */
+    @Volatile
+    var speeds: Map<String, Double> = load()
+        private set
+
+    /** Whether there is no run for this version of the app yet. */
+    fun isStale(): Boolean = prefs.getInt(KEY_VERSION, -1) != versionCode
+
+    /** Time every family and keep the results. Takes a second or so; not on the main thread. */
+    fun run() {
+        val measured = (CIPHER_FAMILIES + MAC_FAMILIES).mapNotNull { family ->
+            measure(family)?.let { family to it }
+        }.toMap()
+        Timber.i("Cipher benchmark: %s", measured.entries.joinToString { "${it.key} ${(it.value / MIB).toInt()} MiB/s" })
+        prefs.edit {
+            clear()
+            putInt(KEY_VERSION, versionCode)
+            measured.forEach { (family, speed) -> putFloat(family, speed.toFloat()) }
+        }
+        speeds = measured
+    }
+
+    private fun load(): Map<String, Double> = (CIPHER_FAMILIES + MAC_FAMILIES).mapNotNull { family ->
+        if (prefs.contains(family)) family to prefs.getFloat(family, 0f).toDouble() else null
+    }.toMap()
+
+    /** [available] ciphers, fastest measured family first. */
+    fun orderCiphers(available: Array<String>): Array<String> = order(available, cipherSpeeds(speeds), ::cipherFamily)
+
+    /** [available] MACs, fastest measured family first. */
+    fun orderMacs(available: Array<String>): Array<String> = order(available, speeds, ::macFamily)
+
+    companion object {
+        private const val KEY_VERSION = "versionCode"
+        private const val MIB = 1024.0 * 1024.0
+
+        /** Name of the preferences file the results are kept in. */
+        const val PREFS_NAME = "cipher_benchmark"
+
+        const val AES_GCM = "aes-gcm"
+        const val AES_CTR = "aes-ctr"
+        const val CHACHA20_POLY1305 = "chacha20-poly1305"
+        const val HMAC_SHA2_256 = "hmac-sha2-256"
+        const val HMAC_SHA2_512 = "hmac-sha2-512"
+
+        val CIPHER_FAMILIES = listOf(AES_GCM, AES_CTR, CHACHA20_POLY1305)
+        val MAC_FAMILIES = listOf(HMAC_SHA2_256, HMAC_SHA2_512)
+
+        /** SSH packets are at most 32 KiB, so that is what each operation works on. */
+        private const val PACKET_SIZE = 32 * 1024
+        private const val BYTES_PER_RUN = 4 * 1024 * 1024
+
+        private val AES_MODE = Regex("""aes\d+-(gcm|ctr).*""")
+
+        fun cipherFamily(name: String): String? = when {
+            name.startsWith("chacha20-poly1305") -> CHACHA20_POLY1305
+            else -> AES_MODE.matchEntire(name)?.let { "aes-" + it.groupValues[1] }
+        }
+
+        fun macFamily(name: String): String? = when {
+            name.startsWith(HMAC_SHA2_256) -> HMAC_SHA2_256
+            name.startsWith(HMAC_SHA2_512) -> HMAC_SHA2_512
+            else -> null
+        }
+
+        /**
+         * What each cipher family costs per byte on the wire. AES-CTR also needs a MAC, so it
+         * is charged for the fastest one measured.
+         */
+        fun cipherSpeeds(speeds: Map<String, Double>): Map<String, Double> {
+            val ctr = speeds[AES_CTR] ?: return speeds
+            val mac = MAC_FAMILIES.mapNotNull { speeds[it] }.maxOrNull() ?: return speeds
+            return speeds + (AES_CTR to 1 / (1 / ctr + 1 / mac))
+        }
+
+        /**
+         * Move the entries of [available] whose family has a speed to the front, fastest
+         * first. Within a family, and among everything else, the order is kept.
+         */
+        fun order(available: Array<String>, speeds: Map<String, Double>, familyOf: (String) -> String?): Array<String> {
+            val (measured, rest) = available.partition { name -> familyOf(name)?.let { it in speeds } == true }
+            return (measured.sortedByDescending { speeds.getValue(familyOf(it)!!) } + rest).toTypedArray()
+        }
+
+        /** Bytes per second this device encrypts or authenticates with [family], or null if it cannot. */
+        fun measureFamily(family: String): Double? {
+            val work = try {
+                when (family) {
+                    AES_GCM -> aeadWork(listOf("AES/GCM/NoPadding"), "AES", 16) { GCMParameterSpec(128, it) }
+                    AES_CTR -> ctrWork()
+                    CHACHA20_POLY1305 -> aeadWork(CHACHA20_TRANSFORMATIONS, "ChaCha20", 32) { IvParameterSpec(it) }
+                    HMAC_SHA2_256 -> macWork("HmacSHA256")
+                    HMAC_SHA2_512 -> macWork("HmacSHA512")
+                    else -> return null
+                }
+            } catch (e: GeneralSecurityException) {
+                Timber.d(e, "Cannot benchmark %s", family)
+                return null
+            }
+            val packet = ByteArray(PACKET_SIZE)
+            // A quarter of a run to warm up, then the run that is timed.
+            repeat(BYTES_PER_RUN / PACKET_SIZE / 4) { work(packet, it) }
+            val start = System.nanoTime()
+            repeat(BYTES_PER_RUN / PACKET_SIZE) { work(packet, it) }
+            val elapsed = System.nanoTime() - start
+            return if (elapsed > 0) BYTES_PER_RUN * 1e9 / elapsed else null
+        }
+
+        /** Conscrypt and the JDK name it differently. */
+        private val CHACHA20_TRANSFORMATIONS = listOf("ChaCha20/Poly1305/NoPadding", "ChaCha20-Poly1305")
+
+        private fun cipherFor(transformations: List<String>): Cipher {
+            for (transformation in transformations.dropLast(1)) {
+                try {
+                    return Cipher.getInstance(transformation)
+                } catch (_: GeneralSecurityException) {
+                }
+            }
+            return Cipher.getInstance(transformations.last())
+        }
+
+        private fun ctrWork(): (ByteArray, Int) -> Unit {
+            val cipher = Cipher.getInstance("AES/CTR/NoPadding")
+            cipher.init(Cipher.ENCRYPT_MODE, SecretKeySpec(ByteArray(16), "AES"), IvParameterSpec(ByteArray(16)))
+            val out = ByteArray(PACKET_SIZE)
+            return { packet, _ -> cipher.update(packet, 0, packet.size, out) }
+        }
+
+        /** One AEAD encryption per packet, each with its own nonce as SSH does. */
+        private fun aeadWork(
+            transformations: List<String>,
+            keyAlgorithm: String,
+            keySize: Int,
+            spec: (ByteArray) -> AlgorithmParameterSpec,
+        ): (ByteArray, Int) -> Unit {
+            val cipher = cipherFor(transformations)
+            val key = SecretKeySpec(ByteArray(keySize), keyAlgorithm)
+            val nonce = ByteArray(12)
+            val out = ByteArray(PACKET_SIZE + 16)
+            return { packet, sequence ->
+                nonce[8] = (sequence ushr 24).toByte()
+                nonce[9] = (sequence ushr 16).toByte()
+                nonce[10] = (sequence ushr 8).toByte()
+                nonce[11] = sequence.toByte()
+                cipher.init(Cipher.ENCRYPT_MODE, key, spec(nonce))
+                cipher.doFinal(packet, 0, packet.size, out)
+            }
+        }
+
+        private fun macWork(algorithm: String): (ByteArray, Int) -> Unit {
+            val mac = Mac.getInstance(algorithm)
+            mac.init(SecretKeySpec(ByteArray(32), algorithm))
+            return { packet, _ ->
+                mac.update(packet)
+                mac.doFinal()
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import java.io.FilterInputStream
+import java.io.FilterOutputStream
+import java.io.InputStream
+import java.io.OutputStream
+import java.net.InetAddress
+import java.net.Socket
+import java.net.SocketAddress
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A Socket that passes everything through to [delegate] while counting the bytes read from
+ * and written to it, so what went over the wire can be compared with what the session saw.
+ */
+class CountingSocket(private val delegate: Socket) : Socket() {
+    private val read = AtomicLong()
+    private val written = AtomicLong()
+
+    /** Bytes read from [delegate] so far. */
+    val bytesRead: Long
+        get() = read.get()
+
+    /** Bytes written to [delegate] so far. */
+    val bytesWritten: Long
+        get() = written.get()
+
+    private val input: InputStream by lazy {
+        object : FilterInputStream(delegate.getInputStream()) {
+            override fun read(): Int = super.read().also { if (it >= 0) read.incrementAndGet() }
+
+            override fun read(b: ByteArray, off: Int, len: Int): Int = super.read(b, off, len).also { if (it > 0) read.addAndGet(it.toLong()) }
+        }
+    }
+
+    private val output: OutputStream by lazy {
+        object : FilterOutputStream(delegate.getOutputStream()) {
+            override fun write(b: Int) {
+                out.write(b)
+                written.incrementAndGet()
+            }
+
+            override fun write(b: ByteArray, off: Int, len: Int) {
+                out.write(b, off, len)
+                written.addAndGet(len.toLong())
+            }
+        }
+    }
+
+    override fun getInputStream(): InputStream = input
+
+    override fun getOutputStream(): OutputStream = output
+
+    override fun close() = delegate.close()
+
+    override fun shutdownInput() = delegate.shutdownInput()
+
+    override fun shutdownOutput() = delegate.shutdownOutput()
+
+    override fun isClosed(): Boolean = delegate.isClosed
+
+    override fun isConnected(): Boolean = delegate.isConnected
+
+    override fun isInputShutdown(): Boolean = delegate.isInputShutdown
+
+    override fun isOutputShutdown(): Boolean = delegate.isOutputShutdown
+
+    override fun getInetAddress(): InetAddress? = delegate.inetAddress
+
+    override fun getPort(): Int = delegate.port
+
+    override fun getRemoteSocketAddress(): SocketAddress? = delegate.remoteSocketAddress
+
+    override fun getLocalAddress(): InetAddress? = delegate.localAddress
+
+    override fun getLocalPort(): Int = delegate.localPort
+
+    override fun getLocalSocketAddress(): SocketAddress? = delegate.localSocketAddress
+
+    override fun setSoTimeout(timeout: Int) {
+        delegate.soTimeout = timeout
+    }
+
+    override fun getSoTimeout(): Int = delegate.soTimeout
+
+    override fun setTcpNoDelay(on: Boolean) {
+        delegate.tcpNoDelay = on
+    }
+
+    override fun getTcpNoDelay(): Boolean = delegate.tcpNoDelay
+
+    override fun setKeepAlive(on: Boolean) {
+        delegate.keepAlive = on
+    }
+
+    override fun getKeepAlive(): Boolean = delegate.keepAlive
+
+    override fun setSendBufferSize(size: Int) {
+        delegate.sendBufferSize = size
+    }
+
+    override fun getSendBufferSize(): Int = delegate.sendBufferSize
+
+    override fun setReceiveBufferSize(size: Int) {
+        delegate.receiveBufferSize = size
+    }
+
+    override fun getReceiveBufferSize(): Int = delegate.receiveBufferSize
+
+    override fun toString(): String = delegate.toString()
+}
@@ -0,0 +1,116 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import timber.log.Timber
+import java.net.InetAddress
+import java.net.UnknownHostException
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Resolved addresses for host names, shared by every connection the app makes.
+ *
+ * `InetAddress` does not tell us the TTLs of the records it returns, so answers are kept for
+ * [ttlMillis], and failures for [negativeTtlMillis], which stays well inside the TTL of
+ * typical records. Everything is dropped by [invalidate] when the network changes, since the
+ * answers may not be valid on the new one, and a name is dropped by [forget] when none of
+ * its addresses could be reached.
+ */
+internal class DnsCache(
+    private val lookup: (String) -> Array<InetAddress> = InetAddress::getAllByName,
+    private val ttlMillis: Long = DEFAULT_TTL_MILLIS,
+    private val negativeTtlMillis: Long = DEFAULT_NEGATIVE_TTL_MILLIS,
+    private val clock: () -> Long = { System.nanoTime() / 1_000_000 },
+) {
+    private class Entry(
+        val addresses: Array<InetAddress>?,
+        val error: UnknownHostException?,
+        val expires: Long,
+        val generation: Int,
+    )
+
+    private val entries = ConcurrentHashMap<String, Entry>()
+
+    /** Bumped by [invalidate], so lookups started before it are not cached after it. */
+    @Volatile
+    private var generation = 0
+
+    /**
+     * The addresses of [hostname], from the cache if they are fresh.
+     *
+     * @throws UnknownHostException if the name does not resolve
+     */
+    @Throws(UnknownHostException::class)
+    fun resolve(hostname: String): Array<InetAddress> {
+        val key = hostname.lowercase(Locale.ROOT)
+        val cached = entries[key]
+        if (cached != null && cached.generation == generation && clock() < cached.expires) {
+            cached.error?.let { throw UnknownHostException(it.message) }
+            return cached.addresses!!.clone()
+        }
+
+        val startedIn = generation
+        val entry = try {
+            val addresses = lookup(hostname)
+            Entry(addresses, null, clock() + ttlMillis, startedIn)
+        } catch (e: UnknownHostException) {
+            Entry(null, e, clock() + negativeTtlMillis, startedIn)
+        }
+        if (startedIn == generation) {
+            entries[key] = entry
+        }
+
+        entry.error?.let { throw it }
+        return entry.addresses!!.clone()
+    }
+
+    /**
+     * Resolve [hostnames] that are not already cached, in order, so connecting to them later
+     * does not wait for DNS. Failures are cached like any other lookup and otherwise ignored.
+     */
+    fun prefetch(hostnames: List<String>) {
+        for (hostname in hostnames) {
+            if (Thread.currentThread().isInterrupted) {
+                return
+            }
+            try {
+                resolve(hostname)
+            } catch (e: UnknownHostException) {
+                Timber.d("Prefetch of $hostname failed: ${e.message}")
+            }
+        }
+    }
+
+    /** Drop the cached addresses of [hostname]. */
+    fun forget(hostname: String) {
+        entries.remove(hostname.lowercase(Locale.ROOT))
+    }
+
+    /** Drop everything, e.g. because the device moved to another network. */
+    @Synchronized
+    fun invalidate() {
+        generation++
+        entries.clear()
+    }
+
+    companion object {
+        const val DEFAULT_TTL_MILLIS = 60 * 1000L
+        const val DEFAULT_NEGATIVE_TTL_MILLIS = 10 * 1000L
+    }
+}
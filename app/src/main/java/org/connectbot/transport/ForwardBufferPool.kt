@@ -0,0 +1,61 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Copy buffers shared by every [PortForwarder], so a busy SOCKS proxy opening and closing
+ * hundreds of connections does not allocate two fresh buffers for each one.
+ *
+ * At most [maxPooled] buffers are kept; anything returned beyond that is left to the
+ * garbage collector.
+ */
+internal class ForwardBufferPool(
+    val bufferSize: Int = DEFAULT_BUFFER_SIZE,
+    private val maxPooled: Int = DEFAULT_MAX_POOLED,
+) {
+    private val free = ConcurrentLinkedQueue<ByteArray>()
+    private val pooled = AtomicInteger()
+
+    fun acquire(): ByteArray {
+        val buffer = free.poll() ?: return ByteArray(bufferSize)
+        pooled.decrementAndGet()
+        return buffer
+    }
+
+    fun release(buffer: ByteArray) {
+        if (buffer.size != bufferSize) {
+            return
+        }
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet()
+            return
+        }
+        free.offer(buffer)
+    }
+
+    companion object {
+        /** The largest SSH channel data packet sshlib will send, so each read fills one packet. */
+        const val DEFAULT_BUFFER_SIZE = 32 * 1024
+        const val DEFAULT_MAX_POOLED = 64
+
+        val shared = ForwardBufferPool()
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Counters for one [PortForwarder]. Updated from its connection threads and read from anywhere.
+ */
+class ForwardStatistics(private val clock: () -> Long = System::nanoTime) {
+    private val activeConnections = AtomicInteger()
+    private val totalConnections = AtomicLong()
+    private val bytesSent = AtomicLong()
+    private val bytesReceived = AtomicLong()
+
+    private var lastSnapshotTime = clock()
+    private var lastSnapshotSent = 0L
+    private var lastSnapshotReceived = 0L
+
+    /**
+     * A point-in-time view of a forward's traffic.
+     *
+     * @property bytesSent bytes carried from local clients to the server
+     * @property bytesReceived bytes carried from the server back to local clients
+     * @property sendBytesPerSecond rate of [bytesSent] since the previous snapshot
+     * @property receiveBytesPerSecond rate of [bytesReceived] since the previous snapshot
+     */
+    data class Snapshot(
+        val activeConnections: Int,
+        val totalConnections: Long,
+        val bytesSent: Long,
+        val bytesReceived: Long,
+        val sendBytesPerSecond: Long,
+        val receiveBytesPerSecond: Long,
+    )
+
+    fun recordOpened() {
+        activeConnections.incrementAndGet()
+        totalConnections.incrementAndGet()
+    }
+
+    fun recordClosed() {
+        activeConnections.decrementAndGet()
+    }
+
+    fun recordSent(bytes: Int) {
+        bytesSent.addAndGet(bytes.toLong())
+    }
+
+    fun recordReceived(bytes: Int) {
+        bytesReceived.addAndGet(bytes.toLong())
+    }
+
+    /**
+     * Take a snapshot of the counters. Rates cover the interval since the previous call.
+     */
+    @Synchronized
+    fun snapshot(): Snapshot {
+        val now = clock()
+        val sent = bytesSent.get()
+        val received = bytesReceived.get()
+        val elapsedNanos = now - lastSnapshotTime
+
+        val snapshot = Snapshot(
+            activeConnections = activeConnections.get(),
+            totalConnections = totalConnections.get(),
+            bytesSent = sent,
+            bytesReceived = received,
+            sendBytesPerSecond = perSecond(sent - lastSnapshotSent, elapsedNanos),
+            receiveBytesPerSecond = perSecond(received - lastSnapshotReceived, elapsedNanos),
+        )
+
+        lastSnapshotTime = now
+        lastSnapshotSent = sent
+        lastSnapshotReceived = received
+        return snapshot
+    }
+
+    private fun perSecond(bytes: Long, elapsedNanos: Long): Long = if (elapsedNanos > 0) {
+        bytes * TimeUnit.SECONDS.toNanos(1) / elapsedNanos
+    } else {
+        0L
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Sends the global requests on one SSH connection one at a time.
+ *
+ * sshlib matches a global request's answer to whichever request is waiting for one, so a
+ * keepalive sent while a tcpip-forward request is out can take its answer, misreporting
+ * the forward and timing the wrong round trip. Every keepalive, tcpip-forward and
+ * cancel-tcpip-forward on the connection therefore goes through [send] or [keepalive].
+ *
+ * Keepalives are optional, so they also wait while port forwards are being set up
+ * ([holdKeepalives]) rather than queueing between those requests.
+ */
+internal class GlobalRequests {
+    private val lock = ReentrantLock()
+    private val keepalivesAllowed = lock.newCondition()
+    private var holds = 0
+
+    /** Send a request that needs an answer, after any other request on the connection. */
+    fun <T> send(request: () -> T): T = lock.withLock { request() }
+
+    /** Send a keepalive once no port forward setup is holding them back. */
+    fun <T> keepalive(request: () -> T): T = lock.withLock {
+        while (holds > 0) {
+            keepalivesAllowed.await()
+        }
+        request()
+    }
+
+    /** Hold back keepalives until [releaseKeepalives] is called as many times as this. */
+    fun holdKeepalives() {
+        lock.withLock { holds++ }
+    }
+
+    fun releaseKeepalives() {
+        lock.withLock {
+            if (--holds == 0) {
+                keepalivesAllowed.signalAll()
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import com.trilead.ssh2.ProxyData
+import org.connectbot.util.HostConstants
+import timber.log.Timber
+import java.io.IOException
+import java.net.Inet4Address
+import java.net.Inet6Address
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.Socket
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+/**
+ * Connects to a host by racing its addresses, as described in RFC 8305 ("Happy Eyeballs").
+ *
+ * The name is resolved once and the addresses are interleaved by family, starting with the
+ * one the resolver preferred. A connection attempt is started every [attemptDelayMillis],
+ * or as soon as the previous one fails, and the first socket to connect wins; the others are
+ * closed. On a network with broken IPv6 this costs one stagger delay instead of a full
+ * connect timeout.
+ *
+ * Names are looked up with [resolver]; when none of the addresses can be connected, [forget]
+ * is told so that a cached answer is not used again.
+ */
+internal class HappyEyeballsConnector(
+    private val resolver: (String) -> Array<InetAddress> = InetAddress::getAllByName,
+    private val forget: (String) -> Unit = {},
+    private val socketFactory: () -> Socket = ::Socket,
+    private val attemptDelayMillis: Long = DEFAULT_ATTEMPT_DELAY_MILLIS,
+    private val clock: () -> Long = { System.nanoTime() / 1_000_000 },
+) {
+    /** The winning connection, [elapsedMillis] after resolving started. */
+    class Connected(
+        val socket: Socket,
+        val address: InetSocketAddress,
+        val elapsedMillis: Long,
+    )
+
+    private class Attempt(val address: InetSocketAddress, val socket: Socket) {
+        var error: IOException? = null
+    }
+
+    /**
+     * Connect to [hostname], keeping only the address families allowed by [ipVersion], one
+     * of the `HostConstants.IPVERSION_*` values. A literal address is used as given.
+     *
+     * @param timeoutMillis connect timeout for each attempt, or 0 for the system default
+     * @throws IOException if the name does not resolve or no address could be connected
+     */
+    @Throws(IOException::class)
+    fun connect(hostname: String, port: Int, ipVersion: String, timeoutMillis: Int = 0): Connected {
+        val start = clock()
+        val addresses = interleave(filter(hostname, resolver(hostname).toList(), ipVersion))
+        if (addresses.isEmpty()) {
+            throw IOException("No addresses for $hostname match IP version $ipVersion")
+        }
+
+        val finished = LinkedBlockingQueue<Attempt>()
+        val attempts = ArrayList<Attempt>(addresses.size)
+        var failed = 0
+        var lastError: IOException? = null
+
+        try {
+            while (true) {
+                if (attempts.size < addresses.size) {
+                    attempts += start(InetSocketAddress(addresses[attempts.size], port), timeoutMillis, finished)
+                }
+
+                val attempt = if (attempts.size < addresses.size) {
+                    finished.poll(attemptDelayMillis, TimeUnit.MILLISECONDS) ?: continue
+                } else {
+                    finished.take()
+                }
+
+                val error = attempt.error
+                if (error == null) {
+                    val elapsed = clock() - start
+                    Timber.d("Connected to ${attempt.address} in $elapsed ms (attempt ${attempts.indexOf(attempt) + 1} of ${addresses.size})")
+                    attempts.remove(attempt)
+                    return Connected(attempt.socket, attempt.address, elapsed)
+                }
+
+                Timber.d(error, "Could not connect to ${attempt.address}")
+                lastError = error
+                if (++failed == addresses.size) {
+                    forget(hostname)
+                    throw error
+                }
+            }
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw IOException("Interrupted while connecting to $hostname", e).apply {
+                lastError?.let { addSuppressed(it) }
+            }
+        } finally {
+            // Losers, and everything if we gave up; closing also aborts connects in progress.
+            attempts.forEach { closeQuietly(it.socket) }
+        }
+    }
+
+    private fun start(address: InetSocketAddress, timeoutMillis: Int, finished: LinkedBlockingQueue<Attempt>): Attempt {
+        val attempt = Attempt(address, socketFactory())
+        thread(name = "HappyEyeballs-${address.address.hostAddress}", isDaemon = true) {
+            try {
+                attempt.socket.connect(address, timeoutMillis)
+            } catch (e: IOException) {
+                attempt.error = e
+            }
+            finished.put(attempt)
+        }
+        return attempt
+    }
+
+    /**
+     * [ProxyData] for a trilead [com.trilead.ssh2.Connection] that connects directly through
+     * this connector. [onConnected] is called with the winner before the socket is used.
+     */
+    fun proxyData(ipVersion: String, onConnected: (Connected) -> Unit): ProxyData = object : ProxyData {
+        override fun openConnection(hostname: String, port: Int, connectTimeout: Int): Socket =
+            connect(hostname, port, ipVersion, connectTimeout).also(onConnected).socket
+    }
+
+    companion object {
+        /** RFC 8305 recommends 250 ms between connection attempts. */
+        const val DEFAULT_ATTEMPT_DELAY_MILLIS = 250L
+
+        /** Keep the addresses [ipVersion] allows, unless [hostname] is already an address. */
+        @JvmStatic
+        fun filter(hostname: String, addresses: List<InetAddress>, ipVersion: String): List<InetAddress> {
+            if (HostConstants.isIpAddress(hostname)) {
+                return addresses
+            }
+            return when (ipVersion) {
+                HostConstants.IPVERSION_IPV4_ONLY -> addresses.filter { it is Inet4Address }
+                HostConstants.IPVERSION_IPV6_ONLY -> addresses.filter { it is Inet6Address }
+                else -> addresses
+            }
+        }
+
+        /**
+         * Alternate address families, starting with the family of the first address, keeping
+         * the resolver's order within each family.
+         */
+        @JvmStatic
+        fun interleave(addresses: List<InetAddress>): List<InetAddress> {
+            if (addresses.isEmpty()) {
+                return addresses
+            }
+            val firstIsV6 = addresses.first() is Inet6Address
+            val (preferred, other) = addresses.partition { (it is Inet6Address) == firstIsV6 }
+
+            val result = ArrayList<InetAddress>(addresses.size)
+            for (i in 0 until maxOf(preferred.size, other.size)) {
+                preferred.getOrNull(i)?.let { result += it }
+                other.getOrNull(i)?.let { result += it }
+            }
+            return result
+        }
+
+        private fun closeQuietly(socket: Socket) {
+            try {
+                socket.close()
+            } catch (ignored: IOException) {
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import com.trilead.ssh2.Connection
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import timber.log.Timber
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Authenticated jump host connections shared by every session tunnelled through them.
+ *
+ * Connections are keyed by jump host id and reference counted through [Lease]s. One that
+ * nobody holds is kept for [idleTimeoutMillis] so the next session can use it, then closed.
+ * Before a connection is handed out again it is checked, with a round trip to the server if
+ * it has not been used for [healthCheckAfterMillis], and a dead one is replaced by opening a
+ * new connection.
+ */
+internal class JumpHostPool(
+    private val scope: CoroutineScope,
+    private val idleTimeoutMillis: Long = DEFAULT_IDLE_TIMEOUT_MILLIS,
+    private val healthCheckAfterMillis: Long = DEFAULT_HEALTH_CHECK_AFTER_MILLIS,
+    private val clock: () -> Long = { System.nanoTime() / 1_000_000 },
+) {
+    /**
+     * A newly authenticated jump host connection, along with leases it depends on, such as
+     * the jump host it is itself tunnelled through. Those are closed after [connection].
+     */
+    class Opened(
+        val connection: Connection,
+        val dependencies: List<AutoCloseable> = emptyList(),
+    )
+
+    inner class Lease internal constructor(
+        private val entry: Entry,
+        /** Whether the connection was already open rather than opened for this lease. */
+        val reused: Boolean,
+    ) : AutoCloseable {
+        private val released = AtomicBoolean()
+
+        val connection: Connection
+            get() = entry.connection
+
+        override fun close() {
+            if (released.compareAndSet(false, true)) {
+                release(entry)
+            }
+        }
+    }
+
+    internal class Entry(
+        val hostId: Long,
+        val connection: Connection,
+        val dependencies: List<AutoCloseable>,
+        var lastChecked: Long,
+    ) {
+        var references = 0
+        var expiry: Job? = null
+
+        @Volatile
+        var alive = true
+
+        fun close() {
+            expiry?.cancel()
+            connection.close()
+            dependencies.asReversed().forEach { dependency ->
+                try {
+                    dependency.close()
+                } catch (ignored: Exception) {
+                }
+            }
+        }
+    }
+
+    private val entries = HashMap<Long, Entry>()
+
+    /** Held while opening a connection, so sessions starting together share one. */
+    private val openLocks = ConcurrentHashMap<Long, Any>()
+
+    /**
+     * Lease the connection to jump host [hostId], calling [open] to connect and authenticate
+     * when there is no healthy one. This blocks while another caller is opening the same
+     * jump host.
+     *
+     * @return the lease, or null if [open] failed
+     */
+    fun acquire(hostId: Long, open: () -> Opened?): Lease? {
+        synchronized(openLocks.computeIfAbsent(hostId) { Any() }) {
+            reuse(hostId)?.let { return it }
+
+            val opened = open() ?: return null
+            val entry = Entry(hostId, opened.connection, opened.dependencies, clock())
+            entry.references = 1
+            opened.connection.addConnectionMonitor { entry.alive = false }
+
+            val replaced = synchronized(this) { entries.put(hostId, entry) }
+            if (replaced != null && replaced.references == 0) {
+                replaced.close()
+            }
+            return Lease(entry, reused = false)
+        }
+    }
+
+    private fun reuse(hostId: Long): Lease? {
+        val entry = synchronized(this) { entries[hostId] } ?: return null
+
+        if (isHealthy(entry)) {
+            synchronized(this) {
+                if (entries[hostId] === entry && entry.alive) {
+                    entry.references++
+                    entry.expiry?.cancel()
+                    entry.expiry = null
+                    return Lease(entry, reused = true)
+                }
+            }
+        }
+
+        Timber.d("Replacing dead connection to jump host $hostId")
+        val unused = synchronized(this) {
+            if (entries[hostId] === entry) {
+                entries.remove(hostId)
+            }
+            entry.references == 0
+        }
+        if (unused) {
+            entry.close()
+        }
+        return null
+    }
+
+    private fun isHealthy(entry: Entry): Boolean {
+        if (!entry.alive || !entry.connection.isAuthenticationComplete) {
+            return false
+        }
+
+        val now = clock()
+        if (now - entry.lastChecked < healthCheckAfterMillis) {
+            return true
+        }
+
+        return try {
+            entry.connection.ping()
+            entry.lastChecked = now
+            true
+        } catch (e: IOException) {
+            Timber.d(e, "Jump host ${entry.hostId} did not answer")
+            entry.alive = false
+            false
+        }
+    }
+
+    private fun release(entry: Entry) {
+        val close = synchronized(this) {
+            if (--entry.references > 0) {
+                return
+            }
+
+            entry.lastChecked = clock()
+            if (entries[entry.hostId] !== entry || !entry.alive || !scope.isActive) {
+                if (entries[entry.hostId] === entry) {
+                    entries.remove(entry.hostId)
+                }
+                true
+            } else {
+                entry.expiry = scope.launch {
+                    delay(idleTimeoutMillis)
+                    expire(entry)
+                }
+                false
+            }
+        }
+        if (close) {
+            entry.close()
+        }
+    }
+
+    private fun expire(entry: Entry) {
+        synchronized(this) {
+            if (entry.references > 0 || entries[entry.hostId] !== entry) {
+                return
+            }
+            entries.remove(entry.hostId)
+        }
+        Timber.d("Closing idle connection to jump host ${entry.hostId}")
+        entry.close()
+    }
+
+    /** Close every connection that no session is using. */
+    fun closeIdle() {
+        val idle = synchronized(this) {
+            entries.values.filter { it.references == 0 }.also { unused ->
+                unused.forEach { entries.remove(it.hostId) }
+            }
+        }
+        idle.forEach { it.close() }
+    }
+
+    /** Number of leases held on the connection to jump host [hostId]. */
+    @Synchronized
+    fun references(hostId: Long): Int = entries[hostId]?.references ?: 0
+
+    companion object {
+        const val DEFAULT_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000L
+        const val DEFAULT_HEALTH_CHECK_AFTER_MILLIS = 30 * 1000L
+    }
+}
@@ -122,6 +122,11 @@ class Local @VisibleForTesting constructor(private val killer: Killer) : AbsTran
         os?.write(buffer)
     }
 
+    @Throws(IOException::class)
+    override fun write(buffer: ByteArray, offset: Int, length: Int) {
+        os?.write(buffer, offset, length)
+    }
+
     @Throws(IOException::class)
     override fun write(c: Int) {
         os?.write(c)
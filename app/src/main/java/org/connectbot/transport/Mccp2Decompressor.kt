@@ -0,0 +1,193 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import de.mud.telnet.TelnetProtocolHandler
+import java.io.IOException
+import java.io.InputStream
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.DataFormatException
+import java.util.zip.Inflater
+
+/**
+ * Inflates MCCP2 (telnet option 86) server output for [Telnet].
+ *
+ * One [Inflater] and input buffer are kept for the whole session and reset whenever the
+ * server ends a compressed stream, so compression can be turned on and off any number of
+ * times. Bytes that follow the end of a compressed stream are plain telnet data and are
+ * handed back by [read] before anything else is read from the socket.
+ *
+ * [close] may be called from another thread while [read] is running. The inflater is only
+ * used under [lock], never while blocked on the socket, and once closed [read] reports end
+ * of stream.
+ */
+internal class Mccp2Decompressor {
+    private val inflater = Inflater()
+    private val lock = Any()
+
+    /** Set once [inflater] has been released; guarded by [lock]. */
+    private var closed = false
+    private var input = ByteArray(INPUT_BUFFER_SIZE)
+
+    /** End of the data last given to [inflater] within [input]. */
+    private var inputEnd = 0
+
+    /** Plain bytes left in [input] after a compressed stream ended. */
+    private var plainOffset = 0
+    private var plainLength = 0
+
+    private val compressed = AtomicLong()
+    private val decompressed = AtomicLong()
+
+    /** Totals from compressed streams that have already ended. */
+    private var finishedCompressed = 0L
+    private var finishedDecompressed = 0L
+
+    /** Whether the server output is currently compressed. */
+    var isActive = false
+        private set
+
+    /** Compressed bytes inflated this session. */
+    val compressedBytes: Long
+        get() = compressed.get()
+
+    /** Bytes produced by inflating [compressedBytes]. */
+    val decompressedBytes: Long
+        get() = decompressed.get()
+
+    /** Whether [read] has to be used instead of reading the socket directly. */
+    val hasPendingInput: Boolean
+        get() = isActive || plainLength > 0
+
+    /**
+     * Start inflating. Whatever the [handler] still has buffered, followed by any plain
+     * bytes not yet handed back, arrived after the start of compression and is moved
+     * over first.
+     */
+    fun start(handler: TelnetProtocolHandler) {
+        val fromHandler = handler.available()
+        val length = fromHandler + plainLength
+        val target = if (length > input.size) ByteArray(length) else input
+
+        System.arraycopy(input, plainOffset, target, fromHandler, plainLength)
+        handler.takeInput(target, 0, fromHandler)
+        input = target
+        plainLength = 0
+
+        synchronized(lock) {
+            if (closed) {
+                return
+            }
+            inflater.reset()
+            inflater.setInput(input, 0, length)
+            inputEnd = length
+            isActive = true
+        }
+    }
+
+    /**
+     * Read the next bytes for the telnet handler: plain bytes left over from a finished
+     * compressed stream, or inflated data.
+     *
+     * @return the number of bytes read, or -1 when [source] is at end of stream
+     */
+    @Throws(IOException::class)
+    fun read(source: InputStream, buffer: ByteArray, offset: Int, length: Int): Int {
+        while (true) {
+            if (plainLength > 0) {
+                val n = minOf(plainLength, length)
+                System.arraycopy(input, plainOffset, buffer, offset, n)
+                plainOffset += n
+                plainLength -= n
+                return n
+            }
+            if (!isActive) {
+                return source.read(buffer, offset, length)
+            }
+
+            val needsInput = synchronized(lock) {
+                if (closed) {
+                    return -1
+                }
+                inflater.needsInput()
+            }
+            if (needsInput) {
+                val n = source.read(input, 0, input.size)
+                if (n < 0) {
+                    return -1
+                }
+                synchronized(lock) {
+                    if (closed) {
+                        return -1
+                    }
+                    inflater.setInput(input, 0, n)
+                    inputEnd = n
+                }
+            }
+
+            val n = synchronized(lock) {
+                if (closed) {
+                    return -1
+                }
+                inflate(buffer, offset, length)
+            }
+            if (n > 0) {
+                return n
+            }
+        }
+    }
+
+    /** Inflate into [buffer], noting the end of the compressed stream. Called under [lock]. */
+    private fun inflate(buffer: ByteArray, offset: Int, length: Int): Int {
+        val n = try {
+            inflater.inflate(buffer, offset, length)
+        } catch (e: DataFormatException) {
+            throw IOException("Corrupt MCCP2 stream", e)
+        }
+        compressed.set(finishedCompressed + inflater.bytesRead)
+        decompressed.set(finishedDecompressed + inflater.bytesWritten)
+
+        if (inflater.finished()) {
+            // The server ended compression; whatever follows is plain telnet data.
+            plainLength = inflater.remaining
+            plainOffset = inputEnd - plainLength
+            finishedCompressed += inflater.bytesRead
+            finishedDecompressed += inflater.bytesWritten
+            isActive = false
+        }
+
+        if (n == 0 && inflater.needsDictionary()) {
+            throw IOException("MCCP2 stream requires a preset dictionary")
+        }
+        return n
+    }
+
+    /** Release the inflater. Safe while another thread is in [read], which then sees end of stream. */
+    fun close() {
+        synchronized(lock) {
+            if (!closed) {
+                closed = true
+                inflater.end()
+            }
+        }
+    }
+
+    private companion object {
+        const val INPUT_BUFFER_SIZE = 8192
+    }
+}
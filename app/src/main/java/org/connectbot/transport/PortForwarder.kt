@@ -0,0 +1,225 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import timber.log.Timber
+import java.io.Closeable
+import java.io.IOException
+import java.io.OutputStream
+import java.net.InetSocketAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.concurrent.thread
+
+/**
+ * Listens on a local port and carries each accepted connection over its own SSH channel.
+ *
+ * This stands in for sshlib's LocalPortForwarder and DynamicPortForwarder. Copies go through
+ * packet-sized buffers from a [ForwardBufferPool], local sockets have Nagle turned off so
+ * request/response protocols are not held back, and [statistics] says what the forward is
+ * doing. Data for the server goes out through the connection's [TrafficPriority], so the
+ * interactive session is never stuck behind it.
+ *
+ * @param route opens the SSH channel an accepted client should be connected to
+ */
+class PortForwarder private constructor(
+    private val serverSocket: ServerSocket,
+    private val route: (Socket) -> Socket,
+    private val priority: TrafficPriority,
+    private val bufferPool: ForwardBufferPool = ForwardBufferPool.shared,
+) : Closeable {
+    val statistics = ForwardStatistics()
+
+    private val sendLimiter = RateLimiter()
+    private val receiveLimiter = RateLimiter()
+
+    /** Most bytes per second carried each way, over all of this forward's connections; 0 for no limit. */
+    var rateLimit: Long
+        get() = sendLimiter.bytesPerSecond
+        set(value) {
+            sendLimiter.bytesPerSecond = value
+            receiveLimiter.bytesPerSecond = value
+        }
+
+    /** The port actually listened on, which differs from the requested one only if that was 0. */
+    val localPort: Int
+        get() = serverSocket.localPort
+
+    private val sockets = ConcurrentHashMap.newKeySet<Socket>()
+
+    @Volatile
+    private var closed = false
+
+    private fun start() {
+        thread(name = "PortForwarder-$localPort", isDaemon = true) { accept() }
+    }
+
+    /** Stop listening and drop every connection in flight. */
+    override fun close() {
+        closed = true
+        closeQuietly(serverSocket)
+        sockets.forEach(::closeQuietly)
+    }
+
+    private fun accept() {
+        while (!closed) {
+            val client = try {
+                serverSocket.accept()
+            } catch (e: IOException) {
+                if (!closed) {
+                    Timber.e(e, "Port forward on %d stopped accepting", localPort)
+                }
+                return
+            }
+            track(client)
+            thread(name = "PortForwarder-$localPort-${client.port}", isDaemon = true) { serve(client) }
+        }
+    }
+
+    private fun serve(client: Socket) {
+        var channel: Socket? = null
+        statistics.recordOpened()
+        try {
+            client.tcpNoDelay = true
+            val tunnel = track(route(client))
+            channel = tunnel
+            val upload = thread(name = "PortForwarder-$localPort-${client.port}-up", isDaemon = true) {
+                copy(client, tunnel, sendLimiter, statistics::recordSent) { output, buffer, length ->
+                    priority.writeBulk(output, buffer, 0, length)
+                }
+                // Pass the client's EOF on; the server may still have a reply to send.
+                runCatching { tunnel.shutdownOutput() }
+            }
+            copy(tunnel, client, receiveLimiter, statistics::recordReceived) { output, buffer, length ->
+                output.write(buffer, 0, length)
+            }
+            // Once the server is done there is nothing left to wait for.
+            closeQuietly(client)
+            upload.join()
+        } catch (e: Exception) {
+            Timber.d(e, "Forwarded connection on %d failed", localPort)
+        } finally {
+            closeQuietly(client)
+            channel?.let(::closeQuietly)
+            statistics.recordClosed()
+        }
+    }
+
+    private fun copy(
+        from: Socket,
+        to: Socket,
+        limiter: RateLimiter,
+        record: (Int) -> Unit,
+        write: (OutputStream, ByteArray, Int) -> Unit,
+    ) {
+        val buffer = bufferPool.acquire()
+        try {
+            val input = from.getInputStream()
+            val output = to.getOutputStream()
+            while (true) {
+                val read = input.read(buffer, 0, limiter.chunkSize(buffer.size))
+                if (read < 0) {
+                    break
+                }
+                limiter.acquire(read)
+                write(output, buffer, read)
+                output.flush()
+                record(read)
+            }
+        } catch (e: IOException) {
+            // One side went away; the caller tears the other down.
+        } finally {
+            bufferPool.release(buffer)
+        }
+    }
+
+    private fun track(socket: Socket): Socket {
+        sockets.add(socket)
+        if (closed) {
+            closeQuietly(socket)
+        }
+        return socket
+    }
+
+    private fun closeQuietly(closeable: Closeable) {
+        if (closeable is Socket) {
+            sockets.remove(closeable)
+        }
+        try {
+            closeable.close()
+        } catch (e: IOException) {
+            // Already gone.
+        }
+    }
+
+    companion object {
+        /**
+         * Forward every connection to [bindAddress] to [destHost]:[destPort] on the server's side.
+         *
+         * @param openChannel opens an SSH channel to the given host and port, as a socket
+         * @param priority the scheduler shared with the connection's session
+         */
+        @Throws(IOException::class)
+        fun local(
+            bindAddress: InetSocketAddress,
+            destHost: String,
+            destPort: Int,
+            openChannel: (String, Int) -> Socket,
+            priority: TrafficPriority = TrafficPriority(),
+        ): PortForwarder = PortForwarder(bind(bindAddress), { openChannel(destHost, destPort) }, priority)
+            .also { it.start() }
+
+        /** Act as a SOCKS 4/5 proxy on [bindAddress], connecting from the server's side. */
+        @Throws(IOException::class)
+        fun dynamic(
+            bindAddress: InetSocketAddress,
+            openChannel: (String, Int) -> Socket,
+            priority: TrafficPriority = TrafficPriority(),
+        ): PortForwarder = PortForwarder(bind(bindAddress), { client -> openSocks(client, openChannel) }, priority)
+            .also { it.start() }
+
+        private fun openSocks(client: Socket, openChannel: (String, Int) -> Socket): Socket {
+            val output = client.getOutputStream()
+            val request = SocksRequest.read(client.getInputStream(), output)
+            val channel = try {
+                openChannel(request.host, request.port)
+            } catch (e: IOException) {
+                request.reply(output, success = false)
+                throw e
+            }
+            try {
+                request.reply(output, success = true)
+            } catch (e: IOException) {
+                channel.close()
+                throw e
+            }
+            return channel
+        }
+
+        private fun bind(address: InetSocketAddress): ServerSocket = ServerSocket().apply {
+            reuseAddress = true
+            try {
+                bind(address)
+            } catch (e: IOException) {
+                close()
+                throw e
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.runInterruptible
+import org.connectbot.data.entity.Host
+import timber.log.Timber
+import kotlin.coroutines.CoroutineContext
+import kotlin.coroutines.EmptyCoroutineContext
+
+/**
+ * Connections opened ahead of time to the hosts the user is likely to pick next.
+ *
+ * [open] connects and authenticates to a host without asking the user anything, and returns
+ * a hold on the connection; while that is held the connection stays in the
+ * [SshConnectionPool], so a session opened to the host shares it instead of connecting. Once
+ * the session has its own lease, [release] lets ours go. A connection nobody claims is let
+ * go after [idleTimeoutMillis].
+ */
+internal class Preconnector(
+    private val scope: CoroutineScope,
+    private val context: CoroutineContext = EmptyCoroutineContext,
+    private val idleTimeoutMillis: Long = DEFAULT_IDLE_TIMEOUT_MILLIS,
+    private val open: (Host) -> AutoCloseable?,
+) {
+    private class Warming {
+        /** Completed once [open] has returned, whether or not it succeeded. */
+        val opened = CompletableDeferred<Unit>()
+        lateinit var job: Job
+    }
+
+    private val warming = HashMap<Long, Warming>()
+
+    /** Start connecting to each of [hosts] that is not already connected or connecting. */
+    fun warmUp(hosts: List<Host>) {
+        synchronized(this) {
+            for (host in hosts) {
+                if (host.id in warming) {
+                    continue
+                }
+                val entry = Warming()
+                warming[host.id] = entry
+                entry.job = scope.launch(context) { hold(host, entry) }
+            }
+        }
+    }
+
+    private suspend fun hold(host: Host, entry: Warming) {
+        var handle: AutoCloseable? = null
+        try {
+            handle = try {
+                runInterruptible { open(host) }
+            } finally {
+                entry.opened.complete(Unit)
+            }
+            if (handle == null) {
+                Timber.d("Could not connect to ${host.nickname} ahead of time")
+                return
+            }
+            Timber.d("Connected to ${host.nickname} ahead of time")
+            delay(idleTimeoutMillis)
+            Timber.d("Letting go of unused connection to ${host.nickname}")
+        } finally {
+            synchronized(this) {
+                if (warming[host.id] === entry) {
+                    warming.remove(host.id)
+                }
+            }
+            handle?.close()
+        }
+    }
+
+    /**
+     * Wait for a connection to [hostId] that is still being opened, so a session about to
+     * connect can share it rather than race it. Returns at once if there is none. Blocks.
+     */
+    fun awaitOpened(hostId: Long) {
+        val entry = synchronized(this) { warming[hostId] } ?: return
+        runBlocking { entry.opened.await() }
+    }
+
+    /** Let go of our hold on the connection to [hostId], if there is one. */
+    fun release(hostId: Long) {
+        synchronized(this) { warming.remove(hostId) }?.let { it.job.cancel() }
+    }
+
+    /** Let go of every connection, including those still being opened. */
+    fun releaseAll() {
+        val entries = synchronized(this) {
+            warming.values.toList().also { warming.clear() }
+        }
+        entries.forEach { it.job.cancel() }
+    }
+
+    /** Whether there is a connection to [hostId] held or being opened. */
+    @Synchronized
+    fun isWarm(hostId: Long): Boolean = hostId in warming
+
+    companion object {
+        const val DEFAULT_IDLE_TIMEOUT_MILLIS = 2 * 60 * 1000L
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import com.trilead.ssh2.Connection
+import com.trilead.ssh2.crypto.keys.Ed25519PublicKey
+import com.trilead.ssh2.signature.DSASHA1Verify
+import com.trilead.ssh2.signature.ECDSASHA2Verify
+import com.trilead.ssh2.signature.Ed25519Verify
+import com.trilead.ssh2.signature.RSASHA1Verify
+import timber.log.Timber
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.lang.reflect.Method
+import java.nio.charset.StandardCharsets
+import java.security.PublicKey
+import java.security.interfaces.DSAPublicKey
+import java.security.interfaces.ECPublicKey
+import java.security.interfaces.RSAPublicKey
+
+/**
+ * Asks the server whether it would accept a public key, with the "publickey" request that
+ * carries no signature (RFC 4252, section 7). Keys the server will not take then need not be
+ * decrypted, unlocked with a biometric prompt or used to sign.
+ *
+ * Each key is asked about once, with the signature algorithm sshlib would sign with, since
+ * servers count every query against MaxAuthTries.
+ *
+ * trilead has no API for this request, so it goes through the connection's authentication
+ * manager directly. Where that is not possible, [isAccepted] answers null and the key should
+ * be tried the usual way.
+ */
+internal class PublicKeyQuery internal constructor(
+    private val connection: Connection,
+    openChannel: () -> Channel?,
+) {
+    constructor(connection: Connection) : this(connection, { reflectChannel(connection) })
+
+    /** The parts of the connection's authentication layer a query needs. */
+    interface Channel {
+        fun send(message: ByteArray)
+
+        fun receive(): ByteArray
+
+        /** The algorithms the server listed in server-sig-algs, or null if it sent none. */
+        fun serverSignatureAlgorithms(): Set<String>?
+    }
+
+    private val channel: Channel? by lazy(openChannel)
+
+    /**
+     * @return whether [username] may log in with [publicKey], or null if the server could not
+     * be asked
+     */
+    fun isAccepted(username: String, publicKey: PublicKey): Boolean? = encode(publicKey)?.let { isAccepted(username, it) }
+
+    /**
+     * @return whether [username] may log in with the key whose SSH wire format is [blob], or
+     * null if the server could not be asked
+     */
+    fun isAccepted(username: String, blob: ByteArray): Boolean? {
+        val channel = channel ?: return null
+
+        return try {
+            // Make sure the "ssh-userauth" service has been requested.
+            connection.getRemainingAuthMethods(username)
+            val format = keyFormat(blob)
+            val algorithm = if (format == RSA) rsaAlgorithm(channel.serverSignatureAlgorithms()) else format
+            ask(channel, username, algorithm, blob)
+        } catch (e: IOException) {
+            Timber.d(e, "Public key query failed")
+            null
+        } catch (e: ReflectiveOperationException) {
+            Timber.d(e, "Public key query failed")
+            null
+        }
+    }
+
+    private fun ask(channel: Channel, username: String, algorithm: String, blob: ByteArray): Boolean {
+        val request = ByteArrayOutputStream()
+        DataOutputStream(request).apply {
+            writeByte(SSH_MSG_USERAUTH_REQUEST)
+            writeString(username.toByteArray(StandardCharsets.UTF_8))
+            writeString(SERVICE_CONNECTION)
+            writeString(METHOD_PUBLICKEY)
+            writeBoolean(false)
+            writeString(algorithm.toByteArray(StandardCharsets.US_ASCII))
+            writeString(blob)
+        }
+        channel.send(request.toByteArray())
+
+        val reply = channel.receive()
+        return when (reply.firstOrNull()?.toInt()) {
+            SSH_MSG_USERAUTH_PK_OK -> true
+            SSH_MSG_USERAUTH_FAILURE -> false
+            else -> throw IOException("Unexpected reply ${reply.firstOrNull()} to public key query")
+        }
+    }
+
+    /** Reaches sshlib's managers by reflection; the members used are kept in proguard.cfg. */
+    private class ReflectedChannel(
+        private val authenticationManager: Any,
+        private val transportManager: Any,
+        private val sendMessage: Method,
+        private val nextMessage: Method,
+    ) : Channel {
+        override fun send(message: ByteArray) {
+            sendMessage.invoke(transportManager, message)
+        }
+
+        override fun receive(): ByteArray = nextMessage.invoke(authenticationManager) as ByteArray
+
+        override fun serverSignatureAlgorithms(): Set<String>? {
+            val extensionInfo = transportManager.javaClass.getMethod("getExtensionInfo").invoke(transportManager)
+                ?: return null
+            @Suppress("UNCHECKED_CAST")
+            return extensionInfo.javaClass.getMethod("getSignatureAlgorithmsAccepted").invoke(extensionInfo) as Set<String>?
+        }
+    }
+
+    companion object {
+        private const val SSH_MSG_USERAUTH_REQUEST = 50
+        private const val SSH_MSG_USERAUTH_FAILURE = 51
+        private const val SSH_MSG_USERAUTH_PK_OK = 60
+
+        private const val RSA = "ssh-rsa"
+
+        private val SERVICE_CONNECTION = "ssh-connection".toByteArray(StandardCharsets.US_ASCII)
+        private val METHOD_PUBLICKEY = "publickey".toByteArray(StandardCharsets.US_ASCII)
+
+        /** The SSH wire format of [publicKey], or null for key types we cannot encode. */
+        @JvmStatic
+        fun encode(publicKey: PublicKey): ByteArray? = try {
+            when (publicKey) {
+                is RSAPublicKey -> RSASHA1Verify.get().encodePublicKey(publicKey)
+                is DSAPublicKey -> DSASHA1Verify.get().encodePublicKey(publicKey)
+                is ECPublicKey -> ECDSASHA2Verify.getVerifierForKey(publicKey).encodePublicKey(publicKey)
+                is Ed25519PublicKey -> Ed25519Verify.get().encodePublicKey(publicKey)
+                else -> null
+            }
+        } catch (e: IOException) {
+            Timber.d(e, "Could not encode public key")
+            null
+        }
+
+        /** The key format named at the start of a key [blob], such as "ssh-ed25519". */
+        @JvmStatic
+        fun keyFormat(blob: ByteArray): String {
+            val input = DataInputStream(blob.inputStream())
+            return ByteArray(input.readInt()).also { input.readFully(it) }
+                .toString(StandardCharsets.US_ASCII)
+        }
+
+        /**
+         * The algorithm sshlib signs with for an RSA key, given the server's [accepted]
+         * server-sig-algs: SHA-2 where the server lists it, and SHA-1 for servers that
+         * predate RFC 8332 and list nothing.
+         */
+        @JvmStatic
+        fun rsaAlgorithm(accepted: Set<String>?): String = when {
+            accepted == null -> RSA
+            "rsa-sha2-512" in accepted -> "rsa-sha2-512"
+            "rsa-sha2-256" in accepted -> "rsa-sha2-256"
+            else -> RSA
+        }
+
+        private fun reflectChannel(connection: Connection): Channel? = try {
+            // Null until the connection has been established.
+            Connection::class.java.getDeclaredField("am")
+                .apply { isAccessible = true }
+                .get(connection)
+                ?.let { authenticationManager ->
+                    val authenticationManagerClass = authenticationManager.javaClass
+                    val transportManager = authenticationManagerClass.getDeclaredField("tm")
+                        .apply { isAccessible = true }
+                        .get(authenticationManager)
+                    ReflectedChannel(
+                        authenticationManager,
+                        transportManager,
+                        transportManager.javaClass.getMethod("sendMessage", ByteArray::class.java),
+                        authenticationManagerClass.getDeclaredMethod("getNextMessage").apply { isAccessible = true },
+                    )
+                }
+        } catch (e: ReflectiveOperationException) {
+            Timber.w(e, "Public key queries are not available")
+            null
+        }
+
+        private fun DataOutputStream.writeString(value: ByteArray) {
+            writeInt(value.size)
+            write(value)
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Paces a stream of bytes to at most [bytesPerSecond]. Zero or less means no limit. The
+ * rate can be changed while data is flowing.
+ */
+class RateLimiter(
+    bytesPerSecond: Long = 0,
+    private val clock: () -> Long = System::nanoTime,
+    private val sleep: (Long) -> Unit = Thread::sleep,
+) {
+    @Volatile
+    var bytesPerSecond: Long = bytesPerSecond
+        set(value) {
+            field = value
+            synchronized(this) { nextFree = clock() }
+        }
+
+    /** When the bytes already let through will have drained at the current rate. */
+    private var nextFree = clock()
+
+    /** Most to read at once, so that a low limit is smooth rather than one burst and a long pause. */
+    fun chunkSize(bufferSize: Int): Int {
+        val rate = bytesPerSecond
+        return if (rate <= 0) bufferSize else rate.div(CHUNKS_PER_SECOND).toInt().coerceIn(MIN_CHUNK, bufferSize)
+    }
+
+    /** Block until [bytes] more may be sent. */
+    fun acquire(bytes: Int) {
+        val rate = bytesPerSecond
+        if (rate <= 0) {
+            return
+        }
+        val waitNanos = synchronized(this) {
+            val now = clock()
+            val start = maxOf(now, nextFree)
+            nextFree = start + bytes * TimeUnit.SECONDS.toNanos(1) / rate
+            start - now
+        }
+        if (waitNanos > 0) {
+            sleep(TimeUnit.NANOSECONDS.toMillis(waitNanos))
+        }
+    }
+
+    companion object {
+        private const val CHUNKS_PER_SECOND = 10
+        private const val MIN_CHUNK = 512
+    }
+}
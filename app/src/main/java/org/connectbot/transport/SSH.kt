@@ -27,23 +27,22 @@ import com.trilead.ssh2.AuthAgentCallback
 import com.trilead.ssh2.ChannelCondition
 import com.trilead.ssh2.Connection
 import com.trilead.ssh2.ConnectionMonitor
-import com.trilead.ssh2.DynamicPortForwarder
 import com.trilead.ssh2.ExtendedServerHostKeyVerifier
 import com.trilead.ssh2.InteractiveCallback
 import com.trilead.ssh2.IpVersion
 import com.trilead.ssh2.KnownHosts
-import com.trilead.ssh2.LocalPortForwarder
+import com.trilead.ssh2.ProxyData
 import com.trilead.ssh2.Session
 import com.trilead.ssh2.UserAuthBannerCallback
 import com.trilead.ssh2.crypto.PEMDecoder
 import com.trilead.ssh2.crypto.fingerprint.KeyFingerprint
-import com.trilead.ssh2.crypto.keys.Ed25519PrivateKey
 import com.trilead.ssh2.crypto.keys.Ed25519Provider
 import com.trilead.ssh2.crypto.keys.Ed25519PublicKey
 import com.trilead.ssh2.signature.DSASHA1Verify
 import com.trilead.ssh2.signature.ECDSASHA2Verify
 import com.trilead.ssh2.signature.Ed25519Verify
 import com.trilead.ssh2.signature.RSASHA1Verify
+import kotlinx.coroutines.Job
 import org.connectbot.R
 import org.connectbot.data.entity.Host
 import org.connectbot.data.entity.KeyStorageType
@@ -57,6 +56,7 @@ import org.connectbot.service.requestBooleanPrompt
 import org.connectbot.service.requestHostKeyFingerprintPrompt
 import org.connectbot.service.requestStringPrompt
 import org.connectbot.util.HostConstants
+import org.connectbot.util.PreferenceConstants
 import org.connectbot.util.PubkeyUtils
 import org.connectbot.util.SshKeyType
 import org.connectbot.util.UrlUtils
@@ -67,18 +67,17 @@ import java.io.OutputStream
 import java.net.InetAddress
 import java.net.InetSocketAddress
 import java.net.NoRouteToHostException
+import java.net.Socket
 import java.nio.charset.StandardCharsets
 import java.security.KeyPair
 import java.security.NoSuchAlgorithmException
 import java.security.PublicKey
-import java.security.interfaces.DSAPrivateKey
 import java.security.interfaces.DSAPublicKey
-import java.security.interfaces.ECPrivateKey
 import java.security.interfaces.ECPublicKey
-import java.security.interfaces.RSAPrivateKey
 import java.security.interfaces.RSAPublicKey
 import java.security.spec.InvalidKeySpecException
 import java.util.Locale
+import java.util.concurrent.TimeUnit
 import java.util.regex.Pattern
 
 /**
@@ -92,6 +91,12 @@ class SSH :
 
     private var compression = false
 
+    /** The socket of a connection this session opened itself, counting bytes on the wire. */
+    private var wireSocket: CountingSocket? = null
+
+    /** Terminal output the bridge had read before this session, to count only this session's. */
+    private var terminalBytesAtConnect = 0L
+
     @Volatile
     private var authenticated = false
 
@@ -101,12 +106,20 @@ class SSH :
     @Volatile
     private var sessionOpen = false
 
+    /** Connecting ahead of time: there is no terminal, and no session is opened. */
+    private var warmingUp = false
+
     private var pubkeysExhausted = false
     private var interactiveCanContinue = true
     private var savedPasswordTried = false
 
     private var connection: Connection? = null
-    private val jumpConnections: MutableList<Connection> = mutableListOf()
+    /** Our leases on the manager's [JumpHostPool], outermost jump host first. */
+    private val jumpLeases: MutableList<AutoCloseable> = mutableListOf()
+
+    /** Our hold on [connection] once it is in the manager's [SshConnectionPool]. */
+    private var connectionLease: SshConnectionPool.Lease? = null
+    private val lossMonitor = SshConnectionPool.LossMonitor(this)
     private var session: Session? = null
 
     private var stdin: OutputStream? = null
@@ -114,6 +127,30 @@ class SSH :
     private var stderr: InputStream? = null
 
     private val portForwards = mutableListOf<PortForward>()
+
+    /** Held while [connected] is checked after a forward binds, so [close] cannot slip in between. */
+    private val portForwardLock = Any()
+
+    /** Port forwards still being enabled in the background after connecting. */
+    @Volatile
+    private var portForwardSetup: Job? = null
+
+    /** Sends our global requests one at a time while the connection is ours alone. */
+    private val ownGlobalRequests = GlobalRequests()
+
+    /** A pooled connection has one [GlobalRequests] for all of its users. */
+    private val globalRequests: GlobalRequests
+        get() = connectionLease?.globalRequests ?: ownGlobalRequests
+
+    /** Puts what the user types ahead of port forward traffic while the connection is ours alone. */
+    private val ownTrafficPriority = TrafficPriority(
+        acknowledge = { connection?.let { ownGlobalRequests.keepalive(it::ping) } },
+    )
+
+    /** A pooled connection has one [TrafficPriority] for the sessions and forwards of all its users. */
+    private val trafficPriority: TrafficPriority
+        get() = connectionLease?.trafficPriority ?: ownTrafficPriority
+
     private val userAuthBannerCallbacks = mutableListOf<Pair<Connection, UserAuthBannerCallback>>()
 
     private var columns: Int = 0
@@ -134,6 +171,13 @@ class SSH :
         this.connection = connection
     }
 
+    @VisibleForTesting(otherwise = VisibleForTesting.PRIVATE)
+    internal fun setSessionForTesting(session: Session?, stdout: InputStream?, stderr: InputStream?) {
+        this.session = session
+        this.stdout = stdout
+        this.stderr = stderr
+    }
+
     private fun registerUserAuthBanner(connection: Connection, sourceName: String) {
         val callback = UserAuthBannerCallback { banner, languageTag ->
             handleAuthBanner(sourceName, banner, languageTag)
@@ -369,6 +413,14 @@ class SSH :
         }
     }
 
+    /** How an authentication method ended. */
+    private enum class AuthOutcome { ACCEPTED, REJECTED, ABANDONED }
+
+    /**
+     * Authenticate to the server, moving on to the next method the server allows as soon as
+     * one fails. The methods are tried in order: "none", public keys, keyboard-interactive,
+     * then password. The time each one took is shown as it ends.
+     */
     @VisibleForTesting(otherwise = VisibleForTesting.PRIVATE)
     internal fun authenticate() {
         // Prompt for username if not configured
@@ -386,103 +438,207 @@ class SSH :
         }
 
         val currentHost = host ?: return
-        val authBannerSourceName = currentHost.authBannerSourceName()
-        try {
-            if (connection?.authenticateWithNone(currentHost.username) == true) {
-                finishConnection()
-                return
-            }
-        } catch (e: Exception) {
-            Timber.d("Host does not support 'none' authentication.")
-        } finally {
-            bridge?.dismissAuthBannersFrom(authBannerSourceName)
+        val started = System.nanoTime()
+
+        val none = timeAuthMethod(AUTH_NONE) { tryNone(currentHost) }
+        if (none == AuthOutcome.ACCEPTED) {
+            authenticationFinished(started)
+            return
         }
 
         bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth))
 
         try {
-            val currentHost = host ?: return
-            val pubkeyId = currentHost.pubkeyId
+            var attempts = 0
+            while (attempts++ < AUTH_TRIES) {
+                // Known from the last failure, so this does not go back to the server.
+                val allowed = connection?.getRemainingAuthMethods(currentHost.username)?.toSet().orEmpty()
+                val method = nextAuthMethod(currentHost, allowed)
+                if (method == null) {
+                    bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_fail))
+                    return
+                }
 
-            if (!pubkeysExhausted &&
-                pubkeyId != HostConstants.PUBKEYID_NEVER &&
-                connection?.isAuthMethodAvailable(currentHost.username, AUTH_PUBLICKEY) == true
-            ) {
-                // if explicit pubkey defined for this host, then prompt for password as needed
-                // otherwise just try all in-memory keys held in terminalmanager
+                when (timeAuthMethod(method) { tryAuthMethod(method, currentHost) }) {
+                    AuthOutcome.ACCEPTED -> {
+                        authenticationFinished(started)
+                        return
+                    }
+                    AuthOutcome.ABANDONED -> return
+                    AuthOutcome.REJECTED -> {}
+                }
+            }
+        } catch (e: IllegalStateException) {
+            Timber.e(e, "Connection went away while we were trying to authenticate")
+        } catch (e: Exception) {
+            Timber.e(e, "Problem during handleAuthentication()")
+        }
+    }
 
-                if (pubkeyId == HostConstants.PUBKEYID_ANY) {
-                    // try each of the in-memory keys
-                    bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_pubkey_any))
-                    manager?.loadedKeypairs?.entries?.forEach { entry ->
-                        if (entry.value.pubkey?.confirmation == true && !promptForPubkeyUse(entry.key)) {
-                            return@forEach
-                        }
+    /** The next method to try out of those the server still [allowed], or null if none is left. */
+    private fun nextAuthMethod(currentHost: Host, allowed: Set<String>): String? = when {
+        AUTH_PUBLICKEY in allowed && !pubkeysExhausted && currentHost.pubkeyId != HostConstants.PUBKEYID_NEVER -> AUTH_PUBLICKEY
+        // Without a terminal every challenge would get an empty answer.
+        AUTH_KEYBOARDINTERACTIVE in allowed && interactiveCanContinue && !warmingUp -> AUTH_KEYBOARDINTERACTIVE
+        AUTH_PASSWORD in allowed -> AUTH_PASSWORD
+        else -> null
+    }
 
-                        val keyPair = entry.value.pair ?: return@forEach
+    private fun tryAuthMethod(method: String, currentHost: Host): AuthOutcome = try {
+        when (method) {
+            AUTH_PUBLICKEY -> tryPublicKeys(currentHost)
+            AUTH_KEYBOARDINTERACTIVE -> tryKeyboardInteractive(currentHost)
+            else -> tryPassword(currentHost)
+        }
+    } catch (e: IllegalStateException) {
+        throw e
+    } catch (e: Exception) {
+        // If the connection is gone, asking for the remaining methods will say so.
+        Timber.e(e, "Problem during '$method' authentication")
+        AuthOutcome.REJECTED
+    }
 
-                        if (tryPublicKey(currentHost.username, entry.key, keyPair)) {
-                            finishConnection()
-                            return
-                        }
-                    }
-                } else {
-                    bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_pubkey_specific))
-                    // use a specific key for this host, as requested
-                    val pubkey = manager?.pubkeyRepository?.getByIdBlocking(pubkeyId)
+    /** Run one authentication [method] and show how long it took. */
+    private inline fun timeAuthMethod(method: String, attempt: () -> AuthOutcome): AuthOutcome {
+        val started = System.nanoTime()
+        val outcome = attempt()
+        val elapsed = (System.nanoTime() - started) / 1_000_000
+        Timber.d("Authentication method $method: $outcome in $elapsed ms")
+        if (outcome != AuthOutcome.ABANDONED) {
+            val message = if (outcome == AuthOutcome.ACCEPTED) {
+                R.string.terminal_auth_method_accepted
+            } else {
+                R.string.terminal_auth_method_rejected
+            }
+            bridge?.outputLine(manager?.res?.getString(message, method, elapsed))
+        }
+        return outcome
+    }
 
-                    if (pubkey == null) {
-                        bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_pubkey_invalid))
-                    } else if (tryPublicKey(pubkey)) {
-                        finishConnection()
-                    }
-                }
+    private fun authenticationFinished(started: Long) {
+        val elapsed = (System.nanoTime() - started) / 1_000_000
+        bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_total, elapsed))
+        finishConnection()
+    }
 
-                pubkeysExhausted = true
-            } else if (interactiveCanContinue &&
-                connection?.isAuthMethodAvailable(currentHost.username, AUTH_KEYBOARDINTERACTIVE) == true
-            ) {
-                // this auth method will talk with us using InteractiveCallback interface
-                // it blocks until authentication finishes
-                bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_ki))
-                interactiveCanContinue = false
-                if (connection?.authenticateWithKeyboardInteractive(currentHost.username, this) == true) {
-                    finishConnection()
-                } else {
-                    bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_ki_fail))
+    private fun tryNone(currentHost: Host): AuthOutcome = try {
+        if (connection?.authenticateWithNone(currentHost.username) == true) {
+            AuthOutcome.ACCEPTED
+        } else {
+            AuthOutcome.REJECTED
+        }
+    } catch (e: Exception) {
+        Timber.d("Host does not support 'none' authentication.")
+        AuthOutcome.REJECTED
+    } finally {
+        bridge?.dismissAuthBannersFrom(currentHost.authBannerSourceName())
+    }
+
+    private fun tryPublicKeys(currentHost: Host): AuthOutcome {
+        // Whatever happens, the keys are not worth offering again.
+        pubkeysExhausted = true
+
+        // Ask first, so keys the server will not take are never unlocked or used to sign.
+        val query = connection?.let { PublicKeyQuery(it) }
+
+        // if explicit pubkey defined for this host, then prompt for password as needed
+        // otherwise just try all in-memory keys held in terminalmanager
+        val pubkeyId = currentHost.pubkeyId
+        if (pubkeyId == HostConstants.PUBKEYID_ANY) {
+            // try each of the in-memory keys
+            bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_pubkey_any))
+            manager?.loadedKeypairs?.entries?.forEach { entry ->
+                val keyPair = entry.value.pair ?: return@forEach
+
+                val blob = entry.value.openSSHPubkey ?: PublicKeyQuery.encode(keyPair.public)
+                if (blob != null && !mayAccept(query, currentHost.username, entry.key, blob)) {
+                    return@forEach
                 }
-            } else if (connection?.isAuthMethodAvailable(currentHost.username, AUTH_PASSWORD) == true) {
-                // Try saved password first
-                val savedPassword = manager?.securePasswordStorage?.getPassword(currentHost.id)
-                if (savedPassword != null) {
-                    bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_saved_password))
-                    if (connection?.authenticateWithPassword(currentHost.username, savedPassword) == true) {
-                        finishConnection()
-                        return
-                    }
-                    bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_saved_password_fail))
+
+                if (entry.value.pubkey?.confirmation == true && !promptForPubkeyUse(entry.key)) {
+                    return@forEach
                 }
 
-                // Fall back to password prompt
-                bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_pass))
-                val password = bridge?.requestStringPrompt(
-                    null,
-                    manager?.res?.getString(R.string.prompt_password),
-                    true,
-                )
-                if (password != null && connection?.authenticateWithPassword(currentHost.username, password) == true) {
-                    finishConnection()
-                } else {
-                    bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_pass_fail))
+                if (tryPublicKey(currentHost.username, entry.key, keyPair)) {
+                    return AuthOutcome.ACCEPTED
                 }
-            } else {
-                bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_fail))
             }
-        } catch (e: IllegalStateException) {
-            Timber.e(e, "Connection went away while we were trying to authenticate")
+            return AuthOutcome.REJECTED
+        }
+
+        bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_pubkey_specific))
+        // use a specific key for this host, as requested
+        val pubkey = manager?.pubkeyRepository?.getByIdBlocking(pubkeyId)
+        if (pubkey == null) {
+            bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_pubkey_invalid))
+            return AuthOutcome.REJECTED
+        }
+
+        // The public half is stored in the clear, so this needs no passphrase or biometric.
+        val blob = manager?.loadedKeypairs?.get(pubkey.nickname)?.openSSHPubkey ?: try {
+            PublicKeyQuery.encode(PubkeyUtils.decodePublic(pubkey.publicKey, pubkey.type))
         } catch (e: Exception) {
-            Timber.e(e, "Problem during handleAuthentication()")
+            null
         }
+        if (blob != null && !mayAccept(query, currentHost.username, pubkey.nickname, blob)) {
+            return AuthOutcome.REJECTED
+        }
+
+        return if (tryPublicKey(pubkey)) AuthOutcome.ACCEPTED else AuthOutcome.REJECTED
+    }
+
+    /**
+     * @return false only if the server said it will not accept the key [blob]; true if it will or
+     * could not be asked
+     */
+    private fun mayAccept(query: PublicKeyQuery?, username: String, keyNickname: String, blob: ByteArray): Boolean {
+        if (query?.isAccepted(username, blob) != false) {
+            return true
+        }
+        bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_pubkey_not_accepted, keyNickname))
+        return false
+    }
+
+    private fun tryKeyboardInteractive(currentHost: Host): AuthOutcome {
+        // this auth method will talk with us using InteractiveCallback interface
+        // it blocks until authentication finishes
+        bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_ki))
+        // Only worth repeating if the server actually asked us something.
+        interactiveCanContinue = false
+        if (connection?.authenticateWithKeyboardInteractive(currentHost.username, this) == true) {
+            return AuthOutcome.ACCEPTED
+        }
+        bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_ki_fail))
+        return AuthOutcome.REJECTED
+    }
+
+    private fun tryPassword(currentHost: Host): AuthOutcome {
+        // Try saved password first
+        if (!savedPasswordTried) {
+            val savedPassword = manager?.securePasswordStorage?.getPassword(currentHost.id)
+            if (savedPassword != null) {
+                savedPasswordTried = true
+                bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_saved_password))
+                if (connection?.authenticateWithPassword(currentHost.username, savedPassword) == true) {
+                    return AuthOutcome.ACCEPTED
+                }
+                bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_saved_password_fail))
+            }
+        }
+
+        // Fall back to password prompt
+        bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_pass))
+        val password = bridge?.requestStringPrompt(
+            null,
+            manager?.res?.getString(R.string.prompt_password),
+            true,
+        ) ?: return AuthOutcome.ABANDONED
+
+        if (connection?.authenticateWithPassword(currentHost.username, password) == true) {
+            return AuthOutcome.ACCEPTED
+        }
+        bridge?.outputLine(manager?.res?.getString(R.string.terminal_auth_pass_fail))
+        return AuthOutcome.REJECTED
     }
 
     /**
@@ -672,18 +828,21 @@ class SSH :
      */
     private fun finishConnection() {
         authenticated = true
-
-        for (portForward in portForwards) {
-            try {
-                enablePortForward(portForward)
-                bridge?.outputLine(manager?.res?.getString(R.string.terminal_enable_portfoward, portForward.getDescription()))
-            } catch (e: Exception) {
-                Timber.e(e, "Error setting up port forward during connect")
-            }
+        shareConnection()
+        if (warmingUp) {
+            return
         }
 
         val currentHost = host ?: return
         if (!currentHost.wantSession) {
+            for (portForward in portForwards) {
+                try {
+                    enablePortForward(portForward)
+                    bridge?.outputLine(manager?.res?.getString(R.string.terminal_enable_portfoward, portForward.getDescription()))
+                } catch (e: Exception) {
+                    Timber.e(e, "Error setting up port forward during connect")
+                }
+            }
             bridge?.outputLine(manager?.res?.getString(R.string.terminal_no_session))
             bridge?.onConnected()
             return
@@ -709,21 +868,162 @@ class SSH :
         } catch (e1: IOException) {
             Timber.e(e1, "Problem while trying to create PTY in finishConnection()")
         }
+
+        enablePortForwardsInBackground()
+    }
+
+    /**
+     * Enable the configured port forwards once the shell is up, without holding it back.
+     * Local and dynamic forwards only bind a local port. Remote forwards each wait for the
+     * server to answer, and sshlib can only wait for one such request at a time, so they
+     * take turns alongside the local ones, with keepalives held back until they are done.
+     * [close] cancels whatever is still running.
+     */
+    private fun enablePortForwardsInBackground() {
+        val (remote, local) = portForwards.toList().partition { it.type == HostConstants.PORTFORWARD_REMOTE }
+        val currentBridge = bridge ?: return
+        val requests = globalRequests
+        requests.holdKeepalives()
+        portForwardSetup = currentBridge.launchPortForwardSetup(
+            listOf(local, remote).filter { it.isNotEmpty() },
+            ::enablePortForwardWhileConnected,
+        ).apply {
+            invokeOnCompletion { requests.releaseKeepalives() }
+        }
+    }
+
+    /**
+     * @return whether [portForward] was enabled, or null if the session closed meanwhile; a
+     * forward that finished binding after [close] had already taken the others down is
+     * taken down again here
+     */
+    private fun enablePortForwardWhileConnected(portForward: PortForward): Boolean? {
+        val enabled = try {
+            enablePortForward(portForward)
+        } catch (e: Exception) {
+            Timber.e(e, "Error setting up port forward during connect")
+            false
+        }
+
+        synchronized(portForwardLock) {
+            if (connected) {
+                return enabled
+            }
+        }
+        if (enabled) {
+            disablePortForward(portForward)
+        }
+        return null
+    }
+
+    /**
+     * Offer the newly authenticated connection to other sessions for the same host entry,
+     * if the user turned sharing on or this is a connection opened ahead of time. The pool
+     * takes over closing it and our jump host leases.
+     */
+    private fun shareConnection() {
+        val pool = manager?.sshConnectionPool ?: return
+        val currentConnection = connection ?: return
+        if (!warmingUp && !sharesConnections()) {
+            return
+        }
+        val key = poolKey() ?: return
+        if (connectionLease != null) {
+            return
+        }
+
+        unregisterUserAuthBanner(currentConnection)
+        connectionLease = pool.register(key, currentConnection, jumpLeases.toList(), lossMonitor, standby = warmingUp)
+        jumpLeases.clear()
     }
 
+    /** Whether the user lets sessions to the same host entry share one connection. */
+    private fun sharesConnections(): Boolean = manager?.prefs?.getBoolean(PreferenceConstants.SHARE_CONNECTIONS, false) == true
+
     /**
-     * Establish and authenticate a connection to the jump host.
+     * @return the pool key for [host], or null if it cannot be shared yet because the
+     * username has not been entered
+     */
+    private fun poolKey(): SshConnectionPool.Key? {
+        val currentHost = host ?: return null
+        if (currentHost.username.isEmpty()) {
+            return null
+        }
+
+        return SshConnectionPool.Key(
+            hostId = currentHost.id,
+            hostname = currentHost.hostname,
+            port = currentHost.port,
+            username = currentHost.username,
+            jumpHostId = currentHost.jumpHostId,
+            hostKeyAlgo = currentHost.hostKeyAlgo,
+            useKeys = currentHost.useKeys,
+            pubkeyId = currentHost.pubkeyId,
+            useAuthAgent = currentHost.useAuthAgent,
+            compression = compression,
+        )
+    }
+
+    /**
+     * Open our session on a pooled connection to the same host entry instead of connecting
+     * again. Without sharing turned on, only a connection opened ahead of time is taken.
+     *
+     * @return true if a pooled connection was found
+     */
+    private fun connectShared(): Boolean {
+        val pool = manager?.sshConnectionPool ?: return false
+        val key = poolKey() ?: return false
+        val lease = pool.acquire(key, lossMonitor, shareInUse = sharesConnections()) ?: return false
+
+        connectionLease = lease
+        connection = lease.connection
+        connected = true
+        bridge?.outputLine(manager?.res?.getString(R.string.terminal_sharing_connection, key.hostname))
+        finishConnection()
+        return true
+    }
+
+    /**
+     * Get an authenticated connection to the jump host, reusing one another session already
+     * has open when possible. The lease is held until this session closes.
      * This is called before connecting to the target host when ProxyJump is configured.
-     * Supports chained jump hosts (jump host that requires another jump host).
      *
      * @param jumpHost The jump host configuration
      * @return The authenticated Connection, or null if connection/authentication failed
      */
     private fun connectToJumpHost(jumpHost: Host): Connection? {
+        val lease = leaseJumpHost(jumpHost) ?: return null
+        jumpLeases.add(lease)
+        return lease.connection
+    }
+
+    /**
+     * Lease a connection to [jumpHost] from the manager's [JumpHostPool], opening one if
+     * there is no healthy connection to it.
+     */
+    private fun leaseJumpHost(jumpHost: Host): JumpHostPool.Lease? {
+        val pool = manager?.jumpHostPool ?: return null
+        val lease = pool.acquire(jumpHost.id) { openJumpHost(jumpHost) } ?: return null
+        if (lease.reused) {
+            bridge?.outputLine(manager?.res?.getString(R.string.terminal_jump_reused, jumpHost.nickname))
+        }
+        return lease
+    }
+
+    /**
+     * Establish and authenticate a new connection to the jump host.
+     * Supports chained jump hosts (jump host that requires another jump host); the lease on
+     * the nested jump host is handed to the pool along with the connection.
+     *
+     * @param jumpHost The jump host configuration
+     * @return The authenticated connection, or null if connection/authentication failed
+     */
+    private fun openJumpHost(jumpHost: Host): JumpHostPool.Opened? {
         bridge?.outputLine(manager?.res?.getString(R.string.terminal_connecting_via_jump, jumpHost.nickname))
 
         val jc = Connection(jumpHost.hostname, jumpHost.port)
         registerUserAuthBanner(jc, jumpHost.authBannerSourceName())
+        var nestedLease: JumpHostPool.Lease? = null
 
         try {
             // Check if this jump host itself requires a jump host (chained ProxyJump)
@@ -731,18 +1031,20 @@ class SSH :
             if (nestedJumpHostId != null && nestedJumpHostId > 0) {
                 val nestedJumpHost = manager?.hostRepository?.findHostByIdBlocking(nestedJumpHostId)
                 if (nestedJumpHost != null) {
-                    val nestedConnection = connectToJumpHost(nestedJumpHost)
-                    if (nestedConnection == null) {
+                    nestedLease = leaseJumpHost(nestedJumpHost)
+                    if (nestedLease == null) {
                         unregisterUserAuthBanner(jc)
                         return null
                     }
                     // Use the nested jump host connection as proxy for this jump host
-                    jc.setProxyData(JumpHostProxyData(nestedConnection))
+                    jc.setProxyData(JumpHostProxyData(nestedLease.connection))
                 } else {
                     bridge?.outputLine(manager?.res?.getString(R.string.terminal_jump_not_found))
                     unregisterUserAuthBanner(jc)
                     return null
                 }
+            } else {
+                jc.setProxyData(directProxyData(jumpHost))
             }
 
             if (jumpHost.compression) {
@@ -752,9 +1054,6 @@ class SSH :
             // Connect to jump host
             jc.connect(HostKeyVerifier(jumpHost), parseIpVersion(jumpHost.ipVersion, jumpHost.hostname))
 
-            // Track this connection for cleanup
-            jumpConnections.add(jc)
-
             bridge?.outputLine(manager?.res?.getString(R.string.terminal_jump_connected, jumpHost.nickname))
 
             // Authenticate to jump host
@@ -762,25 +1061,44 @@ class SSH :
                 bridge?.outputLine(manager?.res?.getString(R.string.terminal_jump_auth_failed, jumpHost.nickname))
                 unregisterUserAuthBanner(jc)
                 jc.close()
-                jumpConnections.remove(jc)
+                nestedLease?.close()
                 return null
             }
 
             bridge?.outputLine(manager?.res?.getString(R.string.terminal_jump_authenticated, jumpHost.nickname))
-            return jc
+
+            // The connection may outlive this session, so stop showing its banners here.
+            unregisterUserAuthBanner(jc)
+            return JumpHostPool.Opened(jc, listOfNotNull(nestedLease))
         } catch (e: IOException) {
             Timber.e(e, "Failed to connect to jump host: ${jumpHost.nickname}")
             bridge?.outputLine(manager?.res?.getString(R.string.terminal_jump_failed, jumpHost.nickname, e.message))
             try {
                 unregisterUserAuthBanner(jc)
                 jc.close()
-                jumpConnections.remove(jc)
+                nestedLease?.close()
             } catch (ignored: Exception) {
             }
             return null
         }
     }
 
+    /**
+     * Connect straight to [target] by racing its addresses, reporting which one won.
+     */
+    private fun directProxyData(target: Host): ProxyData {
+        val connector = manager?.connector ?: HappyEyeballsConnector()
+        return connector.proxyData(target.ipVersion) { winner ->
+            bridge?.outputLine(
+                manager?.res?.getString(
+                    R.string.terminal_connected_address,
+                    winner.address.address.hostAddress,
+                    winner.elapsedMillis,
+                ),
+            )
+        }
+    }
+
     /**
      * Authenticate to a jump host connection.
      *
@@ -897,6 +1215,15 @@ class SSH :
     override fun connect() {
         val currentHost = host ?: return
 
+        // A connection opened ahead of time may be nearly ready; better to wait and share it.
+        val preconnector = if (warmingUp) null else manager?.preconnector
+        preconnector?.awaitOpened(currentHost.id)
+        val shared = connectShared()
+        preconnector?.release(currentHost.id)
+        if (shared) {
+            return
+        }
+
         // Check if we need to connect through a jump host
         val jumpHostId = currentHost.jumpHostId
         var directJumpConnection: Connection? = null
@@ -916,13 +1243,17 @@ class SSH :
         }
 
         connection = Connection(currentHost.hostname, currentHost.port)
-        connection?.addConnectionMonitor(this)
+        connection?.addConnectionMonitor(lossMonitor)
         connection?.let { registerUserAuthBanner(it, currentHost.authBannerSourceName()) }
 
-        // If we have a jump host connection, set up the proxy
-        directJumpConnection?.let {
-            connection?.setProxyData(JumpHostProxyData(it))
-        }
+        // If we have a jump host connection, set up the proxy; otherwise race the host's addresses
+        val proxyData = directJumpConnection?.let { JumpHostProxyData(it) } ?: directProxyData(currentHost)
+        connection?.setProxyData(
+            ProxyData { hostname, port, connectTimeout ->
+                CountingSocket(proxyData.openConnection(hostname, port, connectTimeout)).also { wireSocket = it }
+            },
+        )
+        terminalBytesAtConnect = bridge?.relayStatistics?.bytesRead ?: 0L
 
         try {
             connection?.setCompression(compression)
@@ -930,6 +1261,15 @@ class SSH :
             Timber.e(e, "Could not enable compression!")
         }
 
+        manager?.cipherBenchmark?.takeIf { it.speeds.isNotEmpty() }?.let { benchmark ->
+            val ciphers = benchmark.orderCiphers(Connection.getAvailableCiphers())
+            val macs = benchmark.orderMacs(Connection.getAvailableMACs())
+            connection?.setClient2ServerCiphers(ciphers)
+            connection?.setServer2ClientCiphers(ciphers)
+            connection?.setClient2ServerMACs(macs)
+            connection?.setServer2ClientMACs(macs)
+        }
+
         try {
             val connectionInfo = connection?.connect(
                 HostKeyVerifier(),
@@ -990,13 +1330,8 @@ class SSH :
         }
 
         try {
-            // enter a loop to keep trying until authentication
-            var tries = 0
-            while (connected && connection?.isAuthenticationComplete != true && tries++ < AUTH_TRIES) {
+            if (connected && connection?.isAuthenticationComplete != true) {
                 authenticate()
-
-                // sleep to make sure we dont kill system
-                Thread.sleep(1000)
             }
         } catch (e: Exception) {
             Timber.e(e, "Problem in SSH connection thread during authentication")
@@ -1010,29 +1345,67 @@ class SSH :
             return
         }
 
-        connected = false
+        synchronized(portForwardLock) {
+            connected = false
+        }
+        portForwardSetup?.cancel()
+        portForwardSetup = null
 
         session?.close()
         session = null
 
-        connection?.let { unregisterUserAuthBanner(it) }
-        connection?.close()
+        wireSocket?.let { logCompressionRatio(it) }
+        wireSocket = null
+
+        // Local and dynamic forwards listen on sockets the connection does not know about,
+        // and a shared connection outlives this session, so take every forward down here.
+        if (authenticated) {
+            portForwards.filter { it.isEnabled() }.forEach { disablePortForward(it) }
+        }
+
+        val lease = connectionLease
+        if (lease != null) {
+            connectionLease = null
+            manager?.sshConnectionPool?.release(lease)
+        } else {
+            connection?.let { unregisterUserAuthBanner(it) }
+            connection?.close()
+        }
         connection = null
 
-        // Close all jump host connections (in reverse order)
-        jumpConnections.asReversed().forEach { jc ->
+        // Let go of the jump hosts (in reverse order); the pool closes them once idle
+        jumpLeases.asReversed().forEach { lease ->
             try {
-                unregisterUserAuthBanner(jc)
-                jc.close()
+                lease.close()
             } catch (ignored: Exception) {
             }
         }
-        jumpConnections.clear()
+        jumpLeases.clear()
         synchronized(userAuthBannerCallbacks) {
             userAuthBannerCallbacks.clear()
         }
     }
 
+    /**
+     * Log what came over the wire against the terminal output it carried, for tuning when
+     * compression is chosen automatically. The wire also carries encryption overhead and any
+     * port forwards, so the ratio is only a guide.
+     */
+    private fun logCompressionRatio(socket: CountingSocket) {
+        val terminalBytes = (bridge?.relayStatistics?.bytesRead ?: 0L) - terminalBytesAtConnect
+        if (terminalBytes <= 0) {
+            return
+        }
+        Timber.i(
+            "Compression %s for %s: %d bytes received for %d bytes of terminal output (ratio %.2f)",
+            if (compression) "on" else "off",
+            host?.nickname,
+            socket.bytesRead,
+            terminalBytes,
+            socket.bytesRead.toDouble() / terminalBytes,
+        )
+    }
+
     private fun onDisconnect(reason: DisconnectReason = DisconnectReason.IO_ERROR) {
         bridge?.dispatchDisconnect(reason)
     }
@@ -1042,26 +1415,27 @@ class SSH :
         stdin?.flush()
     }
 
+    /**
+     * Reads everything already buffered on the session channel, up to [length] bytes,
+     * and only waits on the channel when it is empty. Stderr is merged into the
+     * terminal stream rather than discarded.
+     */
     @Throws(IOException::class)
     override fun read(buffer: ByteArray, offset: Int, length: Int): Int {
-        var bytesRead = 0
-
         val currentSession = session ?: return 0
 
-        val newConditions = currentSession.waitForCondition(conditions, 0)
-
-        if ((newConditions and ChannelCondition.STDOUT_DATA) != 0) {
-            bytesRead = stdout?.read(buffer, offset, length) ?: 0
+        var bytesRead = drainAvailable(buffer, offset, length)
+        if (bytesRead > 0) {
+            return bytesRead
         }
 
-        if ((newConditions and ChannelCondition.STDERR_DATA) != 0) {
-            val discard = ByteArray(256)
-            while (stderr?.available() ?: 0 > 0) {
-                stderr?.read(discard)
-            }
+        val newConditions = currentSession.waitForCondition(conditions, 0)
+
+        if ((newConditions and (ChannelCondition.STDOUT_DATA or ChannelCondition.STDERR_DATA)) != 0) {
+            bytesRead = drainAvailable(buffer, offset, length)
         }
 
-        if ((newConditions and ChannelCondition.EOF) != 0) {
+        if (bytesRead == 0 && (newConditions and ChannelCondition.EOF) != 0) {
             // Dispatch REMOTE_EOF before close(): connection.close() fires
             // connectionLost() synchronously, which would otherwise race in
             // with IO_ERROR and trigger the reconnect overlay.
@@ -1073,14 +1447,50 @@ class SSH :
         return bytesRead
     }
 
+    /**
+     * Copies whatever stdout and stderr data the channel has already buffered into
+     * [buffer] without blocking.
+     *
+     * @return the number of bytes copied
+     */
+    @Throws(IOException::class)
+    private fun drainAvailable(buffer: ByteArray, offset: Int, length: Int): Int {
+        var total = 0
+
+        while (total < length) {
+            var stream = stdout
+            var available = stream?.available() ?: 0
+            if (available <= 0) {
+                stream = stderr
+                available = stream?.available() ?: 0
+            }
+            if (stream == null || available <= 0) {
+                break
+            }
+
+            val n = stream.read(buffer, offset + total, minOf(available, length - total))
+            if (n <= 0) {
+                break
+            }
+            total += n
+        }
+
+        return total
+    }
+
     @Throws(IOException::class)
     override fun write(buffer: ByteArray) {
-        stdin?.write(buffer)
+        trafficPriority.interactive { stdin?.write(buffer) }
+    }
+
+    @Throws(IOException::class)
+    override fun write(buffer: ByteArray, offset: Int, length: Int) {
+        trafficPriority.interactive { stdin?.write(buffer, offset, length) }
     }
 
     @Throws(IOException::class)
     override fun write(c: Int) {
-        stdin?.write(c)
+        trafficPriority.interactive { stdin?.write(c) }
     }
 
     override fun getOptions(): Map<String, String> = mapOf("compression" to compression.toString())
@@ -1093,6 +1503,28 @@ class SSH :
 
     override fun isSessionOpen(): Boolean = sessionOpen
 
+    /**
+     * Times a global request, which servers answer like an OpenSSH keepalive. It takes its
+     * turn with the connection's other global requests so it cannot take one of their answers.
+     */
+    override fun measureRoundTripMillis(): Long? {
+        val currentConnection = connection
+        if (!connected || currentConnection == null) {
+            return null
+        }
+        return try {
+            // Timed from when it is sent, not from when it got its turn.
+            globalRequests.keepalive {
+                val start = System.nanoTime()
+                currentConnection.ping()
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+            }
+        } catch (e: IOException) {
+            Timber.d(e, "Keepalive got no answer")
+            null
+        }
+    }
+
     override fun isConnected(): Boolean = connected
 
     override fun connectionLost(reason: Throwable) {
@@ -1132,22 +1564,20 @@ class SSH :
 
         return when (portForward.type) {
             HostConstants.PORTFORWARD_LOCAL -> {
-                val lpf: LocalPortForwarder? = try {
-                    connection?.createLocalPortForwarder(
+                val lpf = try {
+                    PortForwarder.local(
                         InetSocketAddress(InetAddress.getLocalHost(), portForward.sourcePort),
-                        portForward.destAddr,
+                        portForward.destAddr ?: return false,
                         portForward.destPort,
+                        ::openForwardChannel,
+                        trafficPriority,
                     )
                 } catch (e: Exception) {
                     Timber.e(e, "Could not create local port forward")
                     return false
                 }
 
-                if (lpf == null) {
-                    Timber.e("returned LocalPortForwarder object is null")
-                    return false
-                }
-
+                lpf.rateLimit = portForward.getRateLimit()
                 portForward.setIdentifier(lpf)
                 portForward.setEnabled(true)
                 true
@@ -1155,7 +1585,10 @@ class SSH :
 
             HostConstants.PORTFORWARD_REMOTE -> {
                 try {
-                    connection?.requestRemotePortForwarding(portForward.sourceAddr, portForward.sourcePort, portForward.destAddr, portForward.destPort)
+                    val currentConnection = connection ?: throw IOException("Not connected")
+                    globalRequests.send {
+                        currentConnection.requestRemotePortForwarding(portForward.sourceAddr, portForward.sourcePort, portForward.destAddr, portForward.destPort)
+                    }
                 } catch (e: Exception) {
                     Timber.e(e, "Could not create remote port forward")
                     return false
@@ -1166,15 +1599,18 @@ class SSH :
             }
 
             HostConstants.PORTFORWARD_DYNAMIC5 -> {
-                val dpf: DynamicPortForwarder? = try {
-                    connection?.createDynamicPortForwarder(
+                val dpf = try {
+                    PortForwarder.dynamic(
                         InetSocketAddress(InetAddress.getLocalHost(), portForward.sourcePort),
+                        ::openForwardChannel,
+                        trafficPriority,
                     )
                 } catch (e: Exception) {
                     Timber.e(e, "Could not create dynamic port forward")
                     return false
                 }
 
+                dpf.rateLimit = portForward.getRateLimit()
                 portForward.setIdentifier(dpf)
                 portForward.setEnabled(true)
                 true
@@ -1188,6 +1624,12 @@ class SSH :
         }
     }
 
+    /** A direct-tcpip channel from the server to [host]:[port], for a [PortForwarder]. */
+    private fun openForwardChannel(host: String, port: Int): Socket {
+        val currentConnection = connection ?: throw IOException("Not connected")
+        return StreamSocket(currentConnection.createLocalStreamForwarder(host, port), host, port)
+    }
+
     override fun disablePortForward(portForward: PortForward): Boolean {
         if (!portForwards.contains(portForward)) {
             Timber.e("Attempt to disable port forward not in list")
@@ -1200,7 +1642,7 @@ class SSH :
 
         return when (portForward.type) {
             HostConstants.PORTFORWARD_LOCAL -> {
-                val lpf = portForward.getIdentifier() as? LocalPortForwarder
+                val lpf = portForward.getIdentifier() as? PortForwarder
 
                 if (!portForward.isEnabled() || lpf == null) {
                     Timber.d(String.format("Could not disable %s; it appears to be not enabled or have no handler", portForward.nickname))
@@ -1216,7 +1658,9 @@ class SSH :
                 portForward.setEnabled(false)
 
                 try {
-                    connection?.cancelRemotePortForwarding(portForward.sourcePort)
+                    connection?.let { currentConnection ->
+                        globalRequests.send { currentConnection.cancelRemotePortForwarding(portForward.sourcePort) }
+                    }
                 } catch (e: IOException) {
                     Timber.e(e, "Could not stop remote port forwarding, setting enabled to false")
                     return false
@@ -1225,7 +1669,7 @@ class SSH :
             }
 
             HostConstants.PORTFORWARD_DYNAMIC5 -> {
-                val dpf = portForward.getIdentifier() as? DynamicPortForwarder
+                val dpf = portForward.getIdentifier() as? PortForwarder
 
                 if (!portForward.isEnabled() || dpf == null) {
                     Timber.d(String.format("Could not disable %s; it appears to be not enabled or have no handler", portForward.nickname))
@@ -1341,32 +1785,11 @@ class SSH :
         val pubKeys = HashMap<String, ByteArray>(manager?.loadedKeypairs?.size ?: 0)
 
         manager?.loadedKeypairs?.entries?.forEach { entry ->
-            val pair = entry.value.pair ?: return@forEach
-            try {
-                val privKey = pair.private
-                when (privKey) {
-                    is RSAPrivateKey -> {
-                        val pubkey = pair.public as RSAPublicKey
-                        pubKeys[entry.key] = RSASHA1Verify.get().encodePublicKey(pubkey)
-                    }
-
-                    is DSAPrivateKey -> {
-                        val pubkey = pair.public as DSAPublicKey
-                        pubKeys[entry.key] = DSASHA1Verify.get().encodePublicKey(pubkey)
-                    }
-
-                    is ECPrivateKey -> {
-                        val pubkey = pair.public as ECPublicKey
-                        pubKeys[entry.key] = ECDSASHA2Verify.getVerifierForKey(pubkey).encodePublicKey(pubkey)
-                    }
-
-                    is Ed25519PrivateKey -> {
-                        val pubkey = pair.public as Ed25519PublicKey
-                        pubKeys[entry.key] = Ed25519Verify.get().encodePublicKey(pubkey)
-                    }
-                }
-            } catch (ignored: IOException) {
-            }
+            // The wire format is worked out once, when the key is added to memory.
+            val blob = entry.value.openSSHPubkey
+                ?: entry.value.pair?.public?.let { PublicKeyQuery.encode(it) }
+                ?: return@forEach
+            pubKeys[entry.key] = blob
         }
 
         return pubKeys
@@ -1472,6 +1895,7 @@ class SSH :
         private const val PROTOCOL = "ssh"
         private const val DEFAULT_PORT = 22
 
+        private const val AUTH_NONE = "none"
         private const val AUTH_PUBLICKEY = "publickey"
         private const val AUTH_PASSWORD = "password"
         private const val AUTH_KEYBOARDINTERACTIVE = "keyboard-interactive"
@@ -1493,6 +1917,27 @@ class SSH :
         @JvmStatic
         fun getProtocolName(): String = PROTOCOL
 
+        /**
+         * Connect and authenticate to [host] with nothing but what needs no answer from the
+         * user: known host keys, keys already in memory and saved passwords. The connection
+         * goes into the manager's [SshConnectionPool], where a session opened later can
+         * share it.
+         *
+         * @return our hold on the connection, or null if it could not be made unattended
+         */
+        internal fun warmUp(host: Host, manager: TerminalManager): AutoCloseable? {
+            val ssh = SSH(host, null, manager).apply {
+                warmingUp = true
+                setCompression(manager.chooseCompression(host))
+            }
+            ssh.connect()
+            if (ssh.connectionLease == null) {
+                ssh.close()
+                return null
+            }
+            return AutoCloseable { ssh.close() }
+        }
+
         @JvmStatic
         fun getUri(input: String): Uri? {
             val matcher = hostmask.matcher(input)
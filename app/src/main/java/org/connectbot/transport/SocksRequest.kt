@@ -0,0 +1,154 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import java.io.DataInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.net.InetAddress
+
+/**
+ * The CONNECT request a SOCKS 4, 4a or 5 client sends to a dynamic [PortForwarder].
+ * Only CONNECT without authentication is supported, which is what browsers and
+ * command-line tools use.
+ */
+internal class SocksRequest private constructor(
+    val version: Int,
+    val host: String,
+    val port: Int,
+) {
+    /** Tell the client whether the tunnel to [host] is open. */
+    fun reply(output: OutputStream, success: Boolean) {
+        if (version == SOCKS4) {
+            output.write(byteArrayOf(0, if (success) SOCKS4_GRANTED else SOCKS4_REJECTED, 0, 0, 0, 0, 0, 0))
+            output.flush()
+        } else {
+            writeSocks5Reply(output, if (success) SOCKS5_SUCCESS else SOCKS5_FAILURE)
+        }
+    }
+
+    companion object {
+        const val SOCKS4 = 4
+        const val SOCKS5 = 5
+
+        private const val CMD_CONNECT = 1
+        private const val SOCKS4_GRANTED: Byte = 0x5a
+        private const val SOCKS4_REJECTED: Byte = 0x5b
+        private const val SOCKS5_SUCCESS: Byte = 0
+        private const val SOCKS5_FAILURE: Byte = 1
+        private const val SOCKS5_UNSUPPORTED_COMMAND: Byte = 7
+        private const val SOCKS5_UNSUPPORTED_ADDRESS: Byte = 8
+        private const val METHOD_NO_AUTH = 0
+        private const val METHOD_NONE_ACCEPTABLE = 0xff
+        private const val ATYP_IPV4: Byte = 1
+        private const val ATYP_DOMAIN: Byte = 3
+        private const val ATYP_IPV6: Byte = 4
+        private const val MAX_FIELD_LENGTH = 255
+
+        /**
+         * Read a CONNECT request from a newly accepted client, answering the SOCKS 5 method
+         * negotiation on the way.
+         *
+         * @throws IOException if the client speaks something else or asks for something
+         *   unsupported; it has already been told so where the protocol allows
+         */
+        fun read(input: InputStream, output: OutputStream): SocksRequest {
+            val data = DataInputStream(input)
+            return when (val version = data.readUnsignedByte()) {
+                SOCKS4 -> readSocks4(data)
+                SOCKS5 -> readSocks5(data, output)
+                else -> throw IOException("Unknown SOCKS version $version")
+            }
+        }
+
+        private fun readSocks4(data: DataInputStream): SocksRequest {
+            val command = data.readUnsignedByte()
+            val port = data.readUnsignedShort()
+            val address = ByteArray(4).also { data.readFully(it) }
+            readNullTerminated(data) // user id, ignored
+            if (command != CMD_CONNECT) {
+                throw IOException("Unsupported SOCKS4 command $command")
+            }
+
+            // SOCKS 4a: an address of 0.0.0.x (x != 0) means the host name follows.
+            val isSocks4a = address[0] == 0.toByte() && address[1] == 0.toByte() &&
+                address[2] == 0.toByte() && address[3] != 0.toByte()
+            val host = if (isSocks4a) {
+                readNullTerminated(data)
+            } else {
+                InetAddress.getByAddress(address).hostAddress!!
+            }
+            return SocksRequest(SOCKS4, host, port)
+        }
+
+        private fun readSocks5(data: DataInputStream, output: OutputStream): SocksRequest {
+            val methods = ByteArray(data.readUnsignedByte()).also { data.readFully(it) }
+            if (methods.none { it.toInt() == METHOD_NO_AUTH }) {
+                output.write(byteArrayOf(SOCKS5.toByte(), METHOD_NONE_ACCEPTABLE.toByte()))
+                output.flush()
+                throw IOException("SOCKS5 client requires authentication")
+            }
+            output.write(byteArrayOf(SOCKS5.toByte(), METHOD_NO_AUTH.toByte()))
+            output.flush()
+
+            if (data.readUnsignedByte() != SOCKS5) {
+                throw IOException("Bad SOCKS5 request")
+            }
+            val command = data.readUnsignedByte()
+            data.readUnsignedByte() // reserved
+
+            val host = when (data.readByte()) {
+                ATYP_IPV4 -> InetAddress.getByAddress(ByteArray(4).also { data.readFully(it) }).hostAddress!!
+                ATYP_IPV6 -> InetAddress.getByAddress(ByteArray(16).also { data.readFully(it) }).hostAddress!!
+                ATYP_DOMAIN -> String(ByteArray(data.readUnsignedByte()).also { data.readFully(it) }, Charsets.US_ASCII)
+                else -> {
+                    writeSocks5Reply(output, SOCKS5_UNSUPPORTED_ADDRESS)
+                    throw IOException("Unsupported SOCKS5 address type")
+                }
+            }
+            val port = data.readUnsignedShort()
+
+            if (command != CMD_CONNECT) {
+                writeSocks5Reply(output, SOCKS5_UNSUPPORTED_COMMAND)
+                throw IOException("Unsupported SOCKS5 command $command")
+            }
+            return SocksRequest(SOCKS5, host, port)
+        }
+
+        /** SOCKS 5 replies carry a bound address; clients doing CONNECT ignore it. */
+        private fun writeSocks5Reply(output: OutputStream, code: Byte) {
+            output.write(byteArrayOf(SOCKS5.toByte(), code, 0, ATYP_IPV4, 0, 0, 0, 0, 0, 0))
+            output.flush()
+        }
+
+        private fun readNullTerminated(data: DataInputStream): String {
+            val bytes = StringBuilder()
+            while (true) {
+                val b = data.readUnsignedByte()
+                if (b == 0) {
+                    return bytes.toString()
+                }
+                if (bytes.length >= MAX_FIELD_LENGTH) {
+                    throw IOException("SOCKS4 field too long")
+                }
+                bytes.append(b.toChar())
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import com.trilead.ssh2.Connection
+import com.trilead.ssh2.ConnectionMonitor
+import timber.log.Timber
+
+/**
+ * Authenticated SSH connections shared between sessions, in the manner of OpenSSH's
+ * ControlMaster.
+ *
+ * A connection is added with [register] once it has authenticated, and further sessions
+ * to the same [Key] get it from [acquire] and open their own channels on it instead of
+ * connecting again. Each holder gets a [Lease]; the connection is closed, and the jump
+ * host connections it was tunnelled through are let go, when the last lease is released.
+ *
+ * A connection registered on standby, such as one opened ahead of time, has no session on
+ * it yet and can be taken over by the first session even when sharing is turned off.
+ */
+internal class SshConnectionPool {
+    /**
+     * What must match for two sessions to share one connection: the same host entry, with
+     * the same settings the connection was verified and authenticated with. Another entry
+     * for the same server, or this one after it was edited, gets its own connection.
+     */
+    data class Key(
+        val hostId: Long,
+        val hostname: String,
+        val port: Int,
+        val username: String,
+        val jumpHostId: Long?,
+        val hostKeyAlgo: String?,
+        val useKeys: Boolean,
+        val pubkeyId: Long,
+        val useAuthAgent: String?,
+        val compression: Boolean,
+    )
+
+    /**
+     * Passes connection loss on to a session until it lets go of its lease, so sessions
+     * that have moved on are not told about a connection they no longer use.
+     */
+    class LossMonitor(target: ConnectionMonitor) : ConnectionMonitor {
+        @Volatile
+        private var target: ConnectionMonitor? = target
+
+        override fun connectionLost(reason: Throwable) {
+            target?.connectionLost(reason)
+        }
+
+        internal fun detach() {
+            target = null
+        }
+    }
+
+    class Lease internal constructor(
+        internal val shared: Shared,
+        private val monitor: LossMonitor,
+    ) {
+        val connection: Connection
+            get() = shared.connection
+
+        /** Priority of session writes over forwards, shared by every session on the connection. */
+        val trafficPriority: TrafficPriority
+            get() = shared.trafficPriority
+
+        /** Global requests on the connection, taking turns between every session on it. */
+        val globalRequests: GlobalRequests
+            get() = shared.globalRequests
+
+        internal var released = false
+
+        internal fun detach() = monitor.detach()
+    }
+
+    internal class Shared(
+        val key: Key,
+        val connection: Connection,
+        val dependencies: List<AutoCloseable>,
+        var standby: Boolean,
+    ) {
+        val globalRequests = GlobalRequests()
+
+        val trafficPriority = TrafficPriority(acknowledge = { globalRequests.keepalive(connection::ping) })
+
+        var references = 0
+
+        @Volatile
+        var alive = true
+
+        fun close() {
+            connection.close()
+            dependencies.asReversed().forEach { dependency ->
+                try {
+                    dependency.close()
+                } catch (ignored: Exception) {
+                }
+            }
+        }
+    }
+
+    private val connections = HashMap<Key, Shared>()
+
+    /**
+     * Share the pooled connection for [key], if there is a live one. [monitor] must not
+     * have been added to any connection yet.
+     *
+     * @param shareInUse whether a connection another session is already using may be
+     * shared; if not, only a connection on standby is taken, and it leaves the pool
+     */
+    fun acquire(key: Key, monitor: LossMonitor, shareInUse: Boolean): Lease? {
+        val shared = synchronized(this) {
+            val candidate = connections[key] ?: return null
+            if (!candidate.alive || !candidate.connection.isAuthenticationComplete) {
+                connections.remove(key)
+                return null
+            }
+            if (!shareInUse) {
+                if (!candidate.standby) {
+                    return null
+                }
+                connections.remove(key)
+            }
+            candidate.standby = false
+            candidate.references++
+            candidate
+        }
+
+        shared.connection.addConnectionMonitor(monitor)
+        Timber.d("Sharing SSH connection to ${key.hostname}:${key.port} (${shared.references} sessions)")
+        return Lease(shared, monitor)
+    }
+
+    /**
+     * Add a newly authenticated [connection] to the pool and take the first lease on it.
+     * [monitor] must already be watching [connection]. The pool takes ownership of
+     * [dependencies], such as jump host leases, and closes them, last first, after
+     * [connection].
+     *
+     * If another connection for [key] was registered in the meantime, this one is still
+     * leased but not shared.
+     *
+     * @param standby whether no session is using [connection] yet
+     */
+    fun register(
+        key: Key,
+        connection: Connection,
+        dependencies: List<AutoCloseable>,
+        monitor: LossMonitor,
+        standby: Boolean = false,
+    ): Lease {
+        val shared = Shared(key, connection, dependencies, standby)
+        shared.references = 1
+
+        connection.addConnectionMonitor {
+            shared.alive = false
+            synchronized(this) {
+                if (connections[key] === shared) {
+                    connections.remove(key)
+                }
+            }
+        }
+
+        synchronized(this) {
+            if (connections[key]?.alive != true) {
+                connections[key] = shared
+            }
+        }
+        return Lease(shared, monitor)
+    }
+
+    /**
+     * Give up [lease]. The connection is closed if this was the last lease on it; otherwise
+     * the caller stops hearing about it.
+     *
+     * @return true if the connection was closed
+     */
+    fun release(lease: Lease): Boolean {
+        val shared = lease.shared
+        synchronized(this) {
+            if (lease.released) {
+                return false
+            }
+            lease.released = true
+
+            if (--shared.references > 0) {
+                lease.detach()
+                return false
+            }
+            if (connections[shared.key] === shared) {
+                connections.remove(shared.key)
+            }
+        }
+
+        shared.close()
+        return true
+    }
+
+    /** Number of sessions using the pooled connection for [key]. */
+    @Synchronized
+    fun references(key: Key): Int = connections[key]?.references ?: 0
+}
@@ -46,6 +46,18 @@ class StreamSocket(
     @Volatile
     private var closed = false
 
+    @Volatile
+    private var outputShutdown = false
+
+    /** Looked up once, on first use, rather than on every call. */
+    private val remoteAddress: InetAddress? by lazy {
+        try {
+            InetAddress.getByName(remoteHost)
+        } catch (e: Exception) {
+            null
+        }
+    }
+
     override fun getInputStream(): InputStream {
         if (closed) {
             throw SocketException("Socket is closed")
@@ -74,14 +86,24 @@ class StreamSocket(
 
     override fun isInputShutdown(): Boolean = closed
 
-    override fun isOutputShutdown(): Boolean = closed
+    override fun isOutputShutdown(): Boolean = closed || outputShutdown
 
-    override fun getInetAddress(): InetAddress? = try {
-        InetAddress.getByName(remoteHost)
-    } catch (e: Exception) {
-        null
+    /**
+     * Sends EOF on the channel; data from the remote end can still be read.
+     */
+    @Synchronized
+    override fun shutdownOutput() {
+        if (closed) {
+            throw SocketException("Socket is closed")
+        }
+        if (!outputShutdown) {
+            outputShutdown = true
+            outputStreamInternal.close()
+        }
     }
 
+    override fun getInetAddress(): InetAddress? = remoteAddress
+
     override fun getPort(): Int = remotePort
 
     override fun getRemoteSocketAddress(): SocketAddress? = null // Not applicable for tunneled connections
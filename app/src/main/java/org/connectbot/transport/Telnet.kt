@@ -27,19 +27,16 @@ import org.connectbot.data.entity.Host
 import org.connectbot.service.DisconnectReason
 import org.connectbot.service.TerminalBridge
 import org.connectbot.service.TerminalManager
-import org.connectbot.util.HostConstants
 import timber.log.Timber
 import java.io.IOException
 import java.io.InputStream
 import java.io.OutputStream
-import java.net.Inet4Address
-import java.net.Inet6Address
-import java.net.InetAddress
-import java.net.InetSocketAddress
 import java.net.Socket
 import java.net.SocketException
-import java.net.SocketTimeoutException
 import java.net.UnknownHostException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
 import java.util.regex.Pattern
 
 /**
@@ -60,6 +57,20 @@ class Telnet : AbsTransport {
 
     private var connected = false
 
+    private val decompressor = Mccp2Decompressor()
+
+    /** Counted down when the server answers our timing mark. */
+    @Volatile
+    private var timingMark: CountDownLatch? = null
+
+    /** MCCP2-compressed bytes received from the server this session. */
+    val compressedBytesRead: Long
+        get() = decompressor.compressedBytes
+
+    /** Bytes [compressedBytesRead] inflated to. */
+    val decompressedBytes: Long
+        get() = decompressor.decompressedBytes
+
     constructor() {
         handler = object : TelnetProtocolHandler() {
             /** get the current terminal type */
@@ -87,6 +98,12 @@ class Telnet : AbsTransport {
                 val charset = bridge?.charset
                 return charset?.name() ?: ""
             }
+
+            override fun isCompressionSupported(): Boolean = true
+
+            override fun notifyTimingMark() {
+                timingMark?.countDown()
+            }
         }
     }
 
@@ -110,15 +127,27 @@ class Telnet : AbsTransport {
                 val charset = this@Telnet.bridge?.charset
                 return charset?.name() ?: ""
             }
+            override fun isCompressionSupported(): Boolean = true
+
+            override fun notifyTimingMark() {
+                timingMark?.countDown()
+            }
         }
     }
 
     override fun connect() {
         try {
-            socket = Socket()
-
             val currentHost = host ?: return
-            tryAllAddresses(socket!!, currentHost.hostname, currentHost.port, currentHost.ipVersion)
+            val connector = manager?.connector ?: HappyEyeballsConnector()
+            val winner = connector.connect(currentHost.hostname, currentHost.port, currentHost.ipVersion)
+            socket = winner.socket
+            bridge?.outputLine(
+                manager?.res?.getString(
+                    R.string.terminal_connected_address,
+                    winner.address.address.hostAddress,
+                    winner.elapsedMillis,
+                ),
+            )
 
             connected = true
 
@@ -145,6 +174,10 @@ class Telnet : AbsTransport {
                 Timber.d(e, "Error closing telnet socket.")
             }
         }
+        if (decompressor.compressedBytes > 0) {
+            Timber.d("MCCP2: %d bytes inflated to %d", decompressor.compressedBytes, decompressor.decompressedBytes)
+        }
+        decompressor.close()
     }
 
     @Throws(IOException::class)
@@ -158,35 +191,54 @@ class Telnet : AbsTransport {
 
     override fun isSessionOpen(): Boolean = connected
 
+    /** Times an IAC DO TIMING-MARK; servers that ignore it give no measurement. */
+    override fun measureRoundTripMillis(): Long? {
+        if (!connected) {
+            return null
+        }
+        val currentBridge = bridge ?: return null
+        val latch = CountDownLatch(1)
+        timingMark = latch
+        val start = AtomicLong()
+        // Written by the bridge's writer so the mark never lands inside a batch of keystrokes.
+        currentBridge.sendDirect {
+            start.set(System.nanoTime())
+            handler.sendTimingMark()
+        }
+        if (!latch.await(TIMING_MARK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            return null
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start.get())
+    }
+
     @Throws(IOException::class)
     override fun read(buffer: ByteArray, offset: Int, length: Int): Int {
         /* process all already read bytes */
-        var n: Int
-
-        do {
-            n = handler.negotiate(buffer, offset)
+        while (true) {
+            val n = handler.negotiate(buffer, offset, length)
+            if (handler.takeCompressionStart()) {
+                // Everything after IAC SE is compressed, including what the handler still holds.
+                decompressor.start(handler)
+            }
             if (n > 0) {
                 return n
             }
-        } while (n == 0)
+            if (n == 0) {
+                continue
+            }
 
-        while (n <= 0) {
-            do {
-                n = handler.negotiate(buffer, offset)
-                if (n > 0) {
-                    return n
-                }
-            } while (n == 0)
-            n = `is`!!.read(buffer, offset, length)
-            if (n < 0) {
+            val read = if (decompressor.hasPendingInput) {
+                decompressor.read(`is`!!, buffer, offset, length)
+            } else {
+                `is`!!.read(buffer, offset, length)
+            }
+            if (read < 0) {
                 bridge?.dispatchDisconnect(DisconnectReason.REMOTE_EOF)
                 throw IOException("Remote end closed connection.")
             }
 
-            handler.inputfeed(buffer, offset, n)
-            n = handler.negotiate(buffer, offset)
+            handler.inputfeed(buffer, offset, read)
         }
-        return n
     }
 
     @Throws(IOException::class)
@@ -198,6 +250,15 @@ class Telnet : AbsTransport {
         }
     }
 
+    @Throws(IOException::class)
+    override fun write(buffer: ByteArray, offset: Int, length: Int) {
+        try {
+            os?.write(buffer, offset, length)
+        } catch (_: SocketException) {
+            bridge?.dispatchDisconnect(DisconnectReason.IO_ERROR)
+        }
+    }
+
     @Throws(IOException::class)
     override fun write(c: Int) {
         try {
@@ -257,6 +318,7 @@ class Telnet : AbsTransport {
     companion object {
         private const val PROTOCOL = "telnet"
         private const val DEFAULT_PORT = 23
+        private const val TIMING_MARK_TIMEOUT_MILLIS = 10_000L
 
         private val hostmask: Pattern = Pattern.compile(
             "^((?:[0-9a-z._-]+)|(?:\\[[a-f:0-9]+(?:%[-_.a-z0-9]+)?\\]))(?::(\\d+))?\$",
@@ -266,29 +328,6 @@ class Telnet : AbsTransport {
         @JvmStatic
         fun getProtocolName(): String = PROTOCOL
 
-        @JvmStatic
-        private fun tryAllAddresses(sock: Socket, host: String, port: Int, ipVersion: String) {
-            val allAddresses = InetAddress.getAllByName(host)
-            // Filter addresses based on IP version preference (unless hostname is a literal IP)
-            val addresses = if (HostConstants.isIpAddress(host)) {
-                allAddresses.toList()
-            } else {
-                when (ipVersion) {
-                    HostConstants.IPVERSION_IPV4_ONLY -> allAddresses.filter { it is Inet4Address }
-                    HostConstants.IPVERSION_IPV6_ONLY -> allAddresses.filter { it is Inet6Address }
-                    else -> allAddresses.toList()
-                }
-            }
-            for (addr in addresses) {
-                try {
-                    sock.connect(InetSocketAddress(addr, port))
-                    return
-                } catch (ignored: SocketTimeoutException) {
-                }
-            }
-            throw SocketTimeoutException("Could not connect; socket timed out")
-        }
-
         @JvmStatic
         fun getUri(input: String): Uri? {
             val matcher = hostmask.matcher(input)
@@ -0,0 +1,149 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import java.io.OutputStream
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Gives the interactive session strict priority over port forwards on one SSH connection.
+ *
+ * sshlib sends channel data in the order it is written, so one forward writing a 32 KiB
+ * burst puts every keystroke queued after it behind the whole burst. Forwards therefore
+ * write through [writeBulk], which cuts their data into [sliceSize] pieces and, before each
+ * one, waits for any session write in progress or waiting to go out.
+ *
+ * That alone only orders writes into the socket, whose send buffer can hold megabytes
+ * that a keystroke then waits behind. So while the session is typing, that is for
+ * [typingHoldMillis] after its last write, forwards stop once [maxBulkInFlight] bytes have
+ * been written and wait until [acknowledge] returns, which must be a round trip to the
+ * server such as a keepalive. Its answer comes back after everything sent before it, so a
+ * keystroke never has more than about [maxBulkInFlight] bytes ahead of it. While the
+ * session is idle, forwards are left to the SSH channel window and nothing is sent.
+ */
+class TrafficPriority(
+    private val sliceSize: Int = DEFAULT_SLICE_SIZE,
+    private val maxBulkInFlight: Int = DEFAULT_MAX_BULK_IN_FLIGHT,
+    private val typingHoldMillis: Long = DEFAULT_TYPING_HOLD_MILLIS,
+    private val acknowledge: () -> Unit = {},
+) {
+    private val lock = ReentrantLock()
+    private val turn = lock.newCondition()
+    private var sessionWriters = 0
+    private var bulkInFlight = 0L
+    private var acknowledging = false
+
+    /** When the session last finished a write, or null if it has not written yet. */
+    private var lastSessionWriteNanos: Long? = null
+
+    /** Run a session write ahead of any forward data not yet sent. */
+    fun <T> interactive(write: () -> T): T {
+        lock.withLock { sessionWriters++ }
+        try {
+            return write()
+        } finally {
+            lock.withLock {
+                lastSessionWriteNanos = System.nanoTime()
+                if (--sessionWriters == 0) {
+                    turn.signalAll()
+                }
+            }
+        }
+    }
+
+    /** Write forwarded data to [output], stepping aside for the session between slices. */
+    fun writeBulk(output: OutputStream, buffer: ByteArray, offset: Int, length: Int) {
+        var position = offset
+        val end = offset + length
+        while (position < end) {
+            awaitTurn()
+            val slice = minOf(sliceSize, end - position)
+            output.write(buffer, position, slice)
+            lock.withLock {
+                if (isTyping()) {
+                    bulkInFlight += slice
+                }
+            }
+            position += slice
+        }
+    }
+
+    /** Whether the session is writing or wrote recently enough that it may write again. */
+    private fun isTyping(): Boolean {
+        if (sessionWriters > 0) {
+            return true
+        }
+        val last = lastSessionWriteNanos ?: return false
+        return System.nanoTime() - last < TimeUnit.MILLISECONDS.toNanos(typingHoldMillis)
+    }
+
+    /**
+     * Wait until no session write is waiting and, while the session is typing, until there is
+     * room for more forwarded data in flight, making the round trip that frees the room if no
+     * other forward is already making it.
+     */
+    private fun awaitTurn() {
+        while (true) {
+            val covered = lock.withLock {
+                while (sessionWriters > 0 || acknowledging) {
+                    turn.await()
+                }
+                if (!isTyping()) {
+                    // Data written before the session went idle is not ahead of anything now.
+                    bulkInFlight = 0
+                    return
+                }
+                if (bulkInFlight < maxBulkInFlight) {
+                    return
+                }
+                acknowledging = true
+                bulkInFlight
+            }
+
+            try {
+                acknowledge()
+            } finally {
+                lock.withLock {
+                    // Slices written while the round trip was out are still in flight.
+                    bulkInFlight -= covered
+                    acknowledging = false
+                    turn.signalAll()
+                }
+            }
+        }
+    }
+
+    companion object {
+        /**
+         * Small enough to go out in a few milliseconds on a slow mobile uplink, large
+         * enough that packet overhead stays around one percent.
+         */
+        const val DEFAULT_SLICE_SIZE = 4 * 1024
+
+        /**
+         * Half a second of a 1 Mbit/s uplink; while the session is typing, forwards get up to
+         * this much per round trip.
+         */
+        const val DEFAULT_MAX_BULK_IN_FLIGHT = 64 * 1024
+
+        /** Longer than the pauses within a burst of typing, so forwards are not let loose between keys. */
+        const val DEFAULT_TYPING_HOLD_MILLIS = 1000L
+    }
+}
@@ -21,6 +21,7 @@ import android.app.Activity
 import android.content.ActivityNotFoundException
 import android.content.ClipboardManager
 import android.content.Context
+import android.text.format.Formatter
 import androidx.annotation.VisibleForTesting
 import androidx.compose.animation.AnimatedVisibility
 import androidx.compose.animation.core.tween
@@ -47,6 +48,7 @@ import androidx.compose.foundation.layout.ime
 import androidx.compose.foundation.layout.imeAnimationTarget
 import androidx.compose.foundation.layout.padding
 import androidx.compose.foundation.layout.union
+import androidx.compose.foundation.layout.width
 import androidx.compose.foundation.layout.windowInsetsPadding
 import androidx.compose.foundation.lazy.LazyColumn
 import androidx.compose.material.icons.Icons
@@ -74,6 +76,7 @@ import androidx.compose.material3.SnackbarDuration
 import androidx.compose.material3.SnackbarHost
 import androidx.compose.material3.SnackbarHostState
 import androidx.compose.material3.SnackbarResult
+import androidx.compose.material3.Surface
 import androidx.compose.material3.Text
 import androidx.compose.material3.TextButton
 import androidx.compose.material3.TopAppBar
@@ -121,6 +124,7 @@ import androidx.core.content.edit
 import androidx.core.view.WindowInsetsCompat
 import androidx.core.view.WindowInsetsControllerCompat
 import androidx.hilt.lifecycle.viewmodel.compose.hiltViewModel
+import androidx.lifecycle.compose.collectAsStateWithLifecycle
 import androidx.preference.PreferenceManager
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.delay
@@ -129,6 +133,7 @@ import org.connectbot.R
 import org.connectbot.data.entity.Host
 import org.connectbot.service.AuthBanner
 import org.connectbot.service.DisconnectReason
+import org.connectbot.service.LinkQuality
 import org.connectbot.service.PromptRequest
 import org.connectbot.service.TerminalBridge
 import org.connectbot.terminal.ProgressState
@@ -590,6 +595,11 @@ fun ConsoleScreen(
     val authBanners by currentBridge?.authBanners?.collectAsState()
         ?: remember { mutableStateOf(emptyList()) }
     val currentAuthBanner = authBanners.firstOrNull()
+    val pasteProgress by currentBridge?.pasteProgress?.collectAsState()
+        ?: remember { mutableStateOf(null) }
+    // The bridge only measures its link while this is collected, so stop when not shown.
+    val linkQuality by currentBridge?.linkQuality?.collectAsStateWithLifecycle()
+        ?: remember { mutableStateOf(null) }
     var wasBiometricPromptActive by remember { mutableStateOf(false) }
     val isBiometricPromptActive = promptState is PromptRequest.BiometricPrompt
 
@@ -875,7 +885,7 @@ fun ConsoleScreen(
                 ?.toString()
 
             if (!clip.isNullOrBlank()) {
-                bridge.injectString(clip)
+                bridge.paste(clip)
             }
         }
     }
@@ -1054,12 +1064,15 @@ fun ConsoleScreen(
             val density = LocalDensity.current
             TopAppBar(
                 title = {
-                    Text(
-                        currentBridge?.host?.nickname
-                            ?: stringResource(R.string.console_default_title),
-                        maxLines = 1,
-                        overflow = TextOverflow.Ellipsis,
-                    )
+                    Column {
+                        Text(
+                            currentBridge?.host?.nickname
+                                ?: stringResource(R.string.console_default_title),
+                            maxLines = 1,
+                            overflow = TextOverflow.Ellipsis,
+                        )
+                        linkQuality?.let { LinkQualityIndicator(it) }
+                    }
                 },
                 modifier = Modifier
                     .testTag("top_app_bar")
@@ -1301,9 +1314,88 @@ fun ConsoleScreen(
                 }
             }
         }
+
+        // Progress and cancel action for a paste being streamed to the host
+        pasteProgress?.let { progress ->
+            Box(
+                modifier = Modifier
+                    .fillMaxSize()
+                    .padding(innerPadding)
+                    .windowInsetsPadding(WindowInsets.imeAnimationTarget),
+                contentAlignment = Alignment.BottomCenter,
+            ) {
+                PasteProgressBar(
+                    progress = progress,
+                    onCancel = { currentBridge?.cancelPaste() },
+                    modifier = Modifier.padding(16.dp),
+                )
+            }
+        }
+    }
+}
+
+@Composable
+private fun PasteProgressBar(
+    progress: TerminalBridge.PasteProgress,
+    onCancel: () -> Unit,
+    modifier: Modifier = Modifier,
+) {
+    val fraction = if (progress.total > 0) progress.sent.toFloat() / progress.total else 0f
+
+    Surface(
+        modifier = modifier,
+        shape = MaterialTheme.shapes.medium,
+        tonalElevation = 3.dp,
+        shadowElevation = 3.dp,
+    ) {
+        Row(
+            modifier = Modifier.padding(start = 16.dp, end = 8.dp),
+            verticalAlignment = Alignment.CenterVertically,
+        ) {
+            Text(stringResource(R.string.console_paste_progress, (fraction * 100).toInt()))
+            LinearProgressIndicator(
+                progress = { fraction },
+                modifier = Modifier
+                    .width(96.dp)
+                    .padding(horizontal = 12.dp),
+            )
+            TextButton(onClick = onCancel) {
+                Text(stringResource(R.string.button_cancel))
+            }
+        }
     }
 }
 
+/**
+ * One line of round-trip time and throughput for the session, coloured by how slow
+ * the link is. Shows nothing until there has been a round trip.
+ */
+@Composable
+private fun LinkQualityIndicator(quality: LinkQuality) {
+    val roundTrip = quality.roundTripMillis ?: return
+    val context = LocalContext.current
+    val color = when {
+        roundTrip >= SLOW_ROUND_TRIP_MILLIS -> MaterialTheme.colorScheme.error
+        roundTrip >= FAIR_ROUND_TRIP_MILLIS -> MaterialTheme.colorScheme.tertiary
+        else -> MaterialTheme.colorScheme.onSurfaceVariant
+    }
+    Text(
+        text = stringResource(
+            R.string.console_link_quality,
+            roundTrip,
+            Formatter.formatShortFileSize(context, quality.inboundBytesPerSecond),
+            Formatter.formatShortFileSize(context, quality.outboundBytesPerSecond),
+        ),
+        style = MaterialTheme.typography.labelSmall,
+        color = color,
+        maxLines = 1,
+        modifier = Modifier.testTag("link_quality"),
+    )
+}
+
+private const val FAIR_ROUND_TRIP_MILLIS = 150L
+private const val SLOW_ROUND_TRIP_MILLIS = 400L
+
 @Composable
 private fun HostDisconnectDialog(
     host: Host,
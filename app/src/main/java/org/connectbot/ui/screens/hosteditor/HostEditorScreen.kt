@@ -441,7 +441,13 @@ fun HostEditorScreenContent(
             HorizontalDivider(modifier = Modifier.padding(vertical = 16.dp))
             SwitchPreference(
                 title = stringResource(R.string.hostpref_compression_title),
-                summary = stringResource(R.string.hostpref_compression_summary),
+                summary = stringResource(
+                    if (uiState.compressionAuto) {
+                        R.string.hostpref_compression_auto_summary
+                    } else {
+                        R.string.hostpref_compression_summary
+                    },
+                ),
                 checked = uiState.compression,
                 onCheckedChange = onCompressionChange,
             )
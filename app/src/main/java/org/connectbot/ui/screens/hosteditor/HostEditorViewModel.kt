@@ -34,6 +34,7 @@ import org.connectbot.data.entity.Host
 import org.connectbot.data.entity.Profile
 import org.connectbot.data.entity.Pubkey
 import org.connectbot.transport.Transport
+import org.connectbot.util.PreferenceConstants
 import org.connectbot.util.SecurePasswordStorage
 import javax.inject.Inject
 
@@ -52,6 +53,8 @@ data class HostEditorUiState(
     val availableProfiles: List<Profile> = emptyList(),
     val useAuthAgent: String = "no",
     val compression: Boolean = false,
+    // Compression is chosen on each connection instead, see PreferenceConstants.COMPRESSION_AUTO
+    val compressionAuto: Boolean = false,
     val wantSession: Boolean = true,
     val stayConnected: Boolean = false,
     val quickDisconnect: Boolean = false,
@@ -87,7 +90,12 @@ class HostEditorViewModel @Inject constructor(
 ) : ViewModel() {
 
     private val hostId: Long = savedStateHandle.get<Long>("hostId") ?: -1L
-    private val _uiState = MutableStateFlow(HostEditorUiState(hostId = hostId))
+    private val _uiState = MutableStateFlow(
+        HostEditorUiState(
+            hostId = hostId,
+            compressionAuto = prefs.getBoolean(PreferenceConstants.COMPRESSION_AUTO, false),
+        ),
+    )
     val uiState: StateFlow<HostEditorUiState> = _uiState.asStateFlow()
 
     init {
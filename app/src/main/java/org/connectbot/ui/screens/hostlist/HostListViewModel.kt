@@ -19,6 +19,7 @@ package org.connectbot.ui.screens.hostlist
 
 import android.content.Context
 import android.content.SharedPreferences
+import androidx.annotation.VisibleForTesting
 import androidx.core.content.edit
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
@@ -106,6 +107,7 @@ class HostListViewModel @Inject constructor(
             observePendingStartupKeyPrompts()
             // Update initial connection states
             updateConnectionStates(_uiState.value.hosts)
+            prefetchAddresses(_uiState.value.hosts)
         }
     }
 
@@ -124,6 +126,7 @@ class HostListViewModel @Inject constructor(
                 }
                 .collect { hosts ->
                     updateConnectionStates(hosts)
+                    prefetchAddresses(hosts)
                     _uiState.update {
                         it.copy(hosts = hosts, isLoading = false, error = null)
                     }
@@ -182,6 +185,22 @@ class HostListViewModel @Inject constructor(
         }
     }
 
+    /**
+     * Resolve the hosts most likely to be tapped next, so connecting skips the DNS wait, and
+     * connect to the very likeliest if the user has asked for that.
+     */
+    private fun prefetchAddresses(hosts: List<Host>) {
+        val manager = terminalManager ?: return
+        val hostnames = prefetchHostnames(hosts)
+        if (hostnames.isNotEmpty()) {
+            manager.prefetchAddresses(hostnames)
+        }
+        val likely = preconnectHosts(hosts)
+        if (likely.isNotEmpty()) {
+            manager.preconnect(likely)
+        }
+    }
+
     private fun updateConnectionStates(hosts: List<Host>) {
         val states = hosts.associate { host ->
             host.id to getConnectionState(host)
@@ -365,4 +384,37 @@ class HostListViewModel @Inject constructor(
         val pubkey = _uiState.value.startupKeyPrompt ?: return
         manager.dismissPendingStartupKey(pubkey)
     }
+
+    companion object {
+        /** How many hosts to resolve ahead of time. */
+        private const val PREFETCH_LIMIT = 8
+
+        /** How many hosts to connect to ahead of time, when the user has opted in. */
+        private const val PRECONNECT_LIMIT = 3
+
+        /**
+         * Names of the network hosts connected to directly, most recently used first. Hosts
+         * behind a jump host are resolved by the jump host, so there is nothing to prefetch.
+         */
+        @VisibleForTesting
+        internal fun prefetchHostnames(hosts: List<Host>): List<String> = hosts
+            .filter { it.protocol in NETWORK_PROTOCOLS && it.hostname.isNotBlank() && (it.jumpHostId ?: 0) <= 0 }
+            .sortedByDescending { it.lastConnect }
+            .map { it.hostname }
+            .distinct()
+            .take(PREFETCH_LIMIT)
+
+        /**
+         * The SSH hosts connected to most recently, which are worth connecting to before they
+         * are tapped. Hosts never connected to, or without a username to log in as, are left
+         * out.
+         */
+        @VisibleForTesting
+        internal fun preconnectHosts(hosts: List<Host>): List<Host> = hosts
+            .filter { it.protocol == "ssh" && it.lastConnect > 0 && it.hostname.isNotBlank() && it.username.isNotBlank() }
+            .sortedByDescending { it.lastConnect }
+            .take(PRECONNECT_LIMIT)
+
+        private val NETWORK_PROTOCOLS = setOf("ssh", "telnet")
+    }
 }
@@ -17,6 +17,7 @@
 
 package org.connectbot.ui.screens.portforwardlist
 
+import android.text.format.Formatter
 import androidx.compose.foundation.clickable
 import androidx.compose.foundation.layout.Arrangement
 import androidx.compose.foundation.layout.Box
@@ -26,6 +27,7 @@ import androidx.compose.foundation.layout.fillMaxSize
 import androidx.compose.foundation.layout.padding
 import androidx.compose.foundation.lazy.LazyColumn
 import androidx.compose.foundation.lazy.items
+import androidx.compose.foundation.text.KeyboardOptions
 import androidx.compose.material.icons.Icons
 import androidx.compose.material.icons.automirrored.filled.ArrowBack
 import androidx.compose.material.icons.filled.Add
@@ -33,7 +35,9 @@ import androidx.compose.material.icons.filled.CheckCircle
 import androidx.compose.material.icons.filled.Delete
 import androidx.compose.material.icons.filled.Edit
 import androidx.compose.material.icons.filled.MoreVert
+import androidx.compose.material.icons.filled.Speed
 import androidx.compose.material.icons.outlined.Circle
+import androidx.compose.material3.AlertDialog
 import androidx.compose.material3.CircularProgressIndicator
 import androidx.compose.material3.DropdownMenu
 import androidx.compose.material3.DropdownMenuItem
@@ -44,10 +48,12 @@ import androidx.compose.material3.Icon
 import androidx.compose.material3.IconButton
 import androidx.compose.material3.ListItem
 import androidx.compose.material3.MaterialTheme
+import androidx.compose.material3.OutlinedTextField
 import androidx.compose.material3.Scaffold
 import androidx.compose.material3.SnackbarHost
 import androidx.compose.material3.SnackbarHostState
 import androidx.compose.material3.Text
+import androidx.compose.material3.TextButton
 import androidx.compose.material3.TopAppBar
 import androidx.compose.runtime.Composable
 import androidx.compose.runtime.LaunchedEffect
@@ -58,14 +64,19 @@ import androidx.compose.runtime.remember
 import androidx.compose.runtime.setValue
 import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
+import androidx.compose.ui.platform.LocalContext
+import androidx.compose.ui.platform.testTag
 import androidx.compose.ui.res.stringResource
 import androidx.compose.ui.text.font.FontWeight
+import androidx.compose.ui.text.input.KeyboardType
 import androidx.compose.ui.unit.dp
 import androidx.hilt.lifecycle.viewmodel.compose.hiltViewModel
 import org.connectbot.R
 import org.connectbot.data.entity.PortForward
+import org.connectbot.transport.ForwardStatistics
 import org.connectbot.ui.PreviewScreen
 import org.connectbot.ui.theme.ConnectBotTheme
+import org.connectbot.util.HostConstants
 
 @OptIn(ExperimentalMaterial3Api::class)
 @Composable
@@ -90,6 +101,7 @@ fun PortForwardListScreen(
         onUpdatePortForward = viewModel::updatePortForward,
         onEnablePortForward = viewModel::enablePortForward,
         onDisablePortForward = viewModel::disablePortForward,
+        onSetRateLimit = viewModel::setRateLimit,
         modifier = modifier,
     )
 }
@@ -104,10 +116,12 @@ fun PortForwardListScreenContent(
     onUpdatePortForward: (PortForward, String, String, String, String, String) -> Unit,
     onEnablePortForward: (PortForward) -> Unit,
     onDisablePortForward: (PortForward) -> Unit,
+    onSetRateLimit: (PortForward, String) -> Unit,
     modifier: Modifier = Modifier,
 ) {
     var showAddDialog by remember { mutableStateOf(false) }
     var editingPortForward by remember { mutableStateOf<PortForward?>(null) }
+    var limitingPortForward by remember { mutableStateOf<PortForward?>(null) }
     val snackbarHostState = remember { SnackbarHostState() }
 
     // Show snackbar when there's an error
@@ -189,7 +203,9 @@ fun PortForwardListScreenContent(
                                 onDelete = { onDeletePortForward(portForward) },
                                 onEnable = { onEnablePortForward(portForward) },
                                 onDisable = { onDisablePortForward(portForward) },
+                                onLimitRate = { limitingPortForward = portForward },
                                 hasLiveConnection = uiState.hasLiveConnection,
+                                traffic = uiState.traffic[portForward.id],
                             )
                         }
                     }
@@ -229,6 +245,17 @@ fun PortForwardListScreenContent(
             isEditing = true,
         )
     }
+
+    limitingPortForward?.let { portForward ->
+        RateLimitDialog(
+            initialKilobytesPerSecond = portForward.getRateLimit() / 1024,
+            onDismiss = { limitingPortForward = null },
+            onSave = { kilobytesPerSecond ->
+                limitingPortForward = null
+                onSetRateLimit(portForward, kilobytesPerSecond)
+            },
+        )
+    }
 }
 
 @PreviewScreen
@@ -246,6 +273,7 @@ private fun PortForwardListScreenEmptyPreview() {
             onUpdatePortForward = { _, _, _, _, _, _ -> },
             onEnablePortForward = {},
             onDisablePortForward = {},
+            onSetRateLimit = { _, _ -> },
         )
     }
 }
@@ -265,6 +293,7 @@ private fun PortForwardListScreenLoadingPreview() {
             onUpdatePortForward = { _, _, _, _, _, _ -> },
             onEnablePortForward = {},
             onDisablePortForward = {},
+            onSetRateLimit = { _, _ -> },
         )
     }
 }
@@ -285,6 +314,7 @@ private fun PortForwardListScreenErrorPreview() {
             onUpdatePortForward = { _, _, _, _, _, _ -> },
             onEnablePortForward = {},
             onDisablePortForward = {},
+            onSetRateLimit = { _, _ -> },
         )
     }
 }
@@ -305,7 +335,10 @@ private fun PortForwardListScreenPopulatedPreview() {
                         destAddr = "db.internal",
                         destPort = 3306,
                         hostId = 1,
-                    ).apply { setEnabled(true) },
+                    ).apply {
+                        setEnabled(true)
+                        setRateLimit(512 * 1024)
+                    },
                     PortForward(
                         id = 2,
                         nickname = "Web Server",
@@ -329,6 +362,16 @@ private fun PortForwardListScreenPopulatedPreview() {
                 ),
                 isLoading = false,
                 hasLiveConnection = true,
+                traffic = mapOf(
+                    1L to ForwardStatistics.Snapshot(
+                        activeConnections = 2,
+                        totalConnections = 5,
+                        bytesSent = 48_000,
+                        bytesReceived = 12_500_000,
+                        sendBytesPerSecond = 1_200,
+                        receiveBytesPerSecond = 850_000,
+                    ),
+                ),
             ),
             onNavigateBack = {},
             onDeletePortForward = {},
@@ -336,6 +379,7 @@ private fun PortForwardListScreenPopulatedPreview() {
             onUpdatePortForward = { _, _, _, _, _, _ -> },
             onEnablePortForward = {},
             onDisablePortForward = {},
+            onSetRateLimit = { _, _ -> },
         )
     }
 }
@@ -348,7 +392,9 @@ private fun PortForwardListItem(
     onDelete: () -> Unit,
     onEnable: () -> Unit,
     onDisable: () -> Unit,
+    onLimitRate: () -> Unit,
     hasLiveConnection: Boolean,
+    traffic: ForwardStatistics.Snapshot? = null,
     modifier: Modifier = Modifier,
 ) {
     var showMenu by remember { mutableStateOf(false) }
@@ -369,6 +415,17 @@ private fun PortForwardListItem(
                         ),
                     )
                     Text("${portForward.sourcePort} → ${portForward.destAddr}:${portForward.destPort}")
+                    if (portForward.getRateLimit() > 0) {
+                        Text(
+                            stringResource(
+                                R.string.portforward_rate_limited,
+                                Formatter.formatShortFileSize(LocalContext.current, portForward.getRateLimit()),
+                            ),
+                        )
+                    }
+                    if (isEnabled && traffic != null) {
+                        ForwardTraffic(traffic)
+                    }
                 }
             },
             leadingContent = {
@@ -430,6 +487,18 @@ private fun PortForwardListItem(
                                 Icon(Icons.Default.Edit, null)
                             },
                         )
+                        if (portForward.type != HostConstants.PORTFORWARD_REMOTE) {
+                            DropdownMenuItem(
+                                text = { Text(stringResource(R.string.portforward_limit_rate)) },
+                                onClick = {
+                                    showMenu = false
+                                    onLimitRate()
+                                },
+                                leadingIcon = {
+                                    Icon(Icons.Default.Speed, null)
+                                },
+                            )
+                        }
                         DropdownMenuItem(
                             text = { Text(stringResource(R.string.portforward_delete)) },
                             onClick = {
@@ -448,3 +517,59 @@ private fun PortForwardListItem(
         HorizontalDivider()
     }
 }
+
+@Composable
+private fun ForwardTraffic(traffic: ForwardStatistics.Snapshot) {
+    val context = LocalContext.current
+    Text(
+        text = stringResource(
+            R.string.portforward_traffic,
+            traffic.activeConnections,
+            Formatter.formatShortFileSize(context, traffic.bytesSent),
+            Formatter.formatShortFileSize(context, traffic.sendBytesPerSecond),
+            Formatter.formatShortFileSize(context, traffic.bytesReceived),
+            Formatter.formatShortFileSize(context, traffic.receiveBytesPerSecond),
+        ),
+        style = MaterialTheme.typography.labelSmall,
+        color = MaterialTheme.colorScheme.onSurfaceVariant,
+        maxLines = 1,
+        modifier = Modifier.testTag("portforward_traffic"),
+    )
+}
+
+@Composable
+private fun RateLimitDialog(
+    initialKilobytesPerSecond: Long,
+    onDismiss: () -> Unit,
+    onSave: (String) -> Unit,
+) {
+    var value by remember { mutableStateOf(if (initialKilobytesPerSecond > 0) initialKilobytesPerSecond.toString() else "") }
+    val isValid = value.isEmpty() || value.toLongOrNull()?.let { it >= 0 } == true
+
+    AlertDialog(
+        onDismissRequest = onDismiss,
+        title = { Text(stringResource(R.string.portforward_rate_limit_title)) },
+        text = {
+            OutlinedTextField(
+                value = value,
+                onValueChange = { value = it },
+                label = { Text(stringResource(R.string.portforward_rate_limit_label)) },
+                supportingText = { Text(stringResource(R.string.portforward_rate_limit_hint)) },
+                keyboardOptions = KeyboardOptions(keyboardType = KeyboardType.Number),
+                isError = !isValid,
+                singleLine = true,
+                modifier = Modifier.testTag("portforward_rate_limit"),
+            )
+        },
+        confirmButton = {
+            TextButton(onClick = { onSave(value) }, enabled = isValid) {
+                Text(stringResource(R.string.portforward_save))
+            }
+        },
+        dismissButton = {
+            TextButton(onClick = onDismiss) {
+                Text(stringResource(R.string.delete_neg))
+            }
+        },
+    )
+}
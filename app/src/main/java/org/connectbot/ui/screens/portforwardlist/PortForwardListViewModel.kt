@@ -17,22 +17,29 @@
 
 package org.connectbot.ui.screens.portforwardlist
 
+import android.content.SharedPreferences
 import androidx.lifecycle.SavedStateHandle
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
 import dagger.hilt.android.lifecycle.HiltViewModel
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.flow.combine
 import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import org.connectbot.data.HostRepository
 import org.connectbot.data.entity.PortForward
 import org.connectbot.di.CoroutineDispatchers
+import org.connectbot.service.ForwardRateLimits
 import org.connectbot.service.TerminalBridge
 import org.connectbot.service.TerminalManager
+import org.connectbot.transport.ForwardStatistics
+import org.connectbot.transport.PortForwarder
 import org.connectbot.util.HostConstants
 import timber.log.Timber
 import javax.inject.Inject
@@ -42,6 +49,7 @@ data class PortForwardListUiState(
     val isLoading: Boolean = false,
     val error: String? = null,
     val hasLiveConnection: Boolean = false,
+    val traffic: Map<Long, ForwardStatistics.Snapshot> = emptyMap(),
 )
 
 @HiltViewModel
@@ -49,14 +57,18 @@ class PortForwardListViewModel @Inject constructor(
     savedStateHandle: SavedStateHandle,
     private val repository: HostRepository,
     private val dispatchers: CoroutineDispatchers,
+    prefs: SharedPreferences,
 ) : ViewModel() {
     private val hostId: Long = savedStateHandle.get<Long>("hostId") ?: -1L
     private val _terminalManager = MutableStateFlow<TerminalManager?>(null)
     private val _refreshTrigger = MutableStateFlow(0)
+    private val rateLimits = ForwardRateLimits(prefs)
 
     private val _uiState = MutableStateFlow(PortForwardListUiState(isLoading = true))
     val uiState: StateFlow<PortForwardListUiState> = _uiState.asStateFlow()
 
+    private var trafficJob: Job? = null
+
     init {
         // Observe port forwards from the repository and combine with bridge state from TerminalManager
         viewModelScope.launch {
@@ -74,6 +86,7 @@ class PortForwardListViewModel @Inject constructor(
                     // (using toList() alone isn't enough - we need new object instances)
                     val updatedPortForwards = portForwards.map { pf ->
                         val copy = pf.copy()
+                        copy.setRateLimit(rateLimits.get(pf.id))
 
                         if (hasLiveConnection) {
                             val bridgePf = bridge.portForwards.find { it.id == pf.id }
@@ -109,7 +122,8 @@ class PortForwardListViewModel @Inject constructor(
                     )
                 }
             }.collect { newState ->
-                _uiState.value = newState
+                _uiState.value = newState.copy(traffic = _uiState.value.traffic)
+                watchTraffic(newState.portForwards)
             }
         }
     }
@@ -184,6 +198,7 @@ class PortForwardListViewModel @Inject constructor(
                         destPort = parsed.port,
                     )
                     repository.savePortForward(updatedPf)
+                    updatedPf.setRateLimit(rateLimits.get(updatedPf.id))
                     updatedPf
                 }
 
@@ -232,6 +247,31 @@ class PortForwardListViewModel @Inject constructor(
         }
     }
 
+    /**
+     * Limit [portForward] to [kilobytesPerSecond] each way; blank or 0 removes the limit.
+     * Takes effect at once if the forward is running.
+     */
+    fun setRateLimit(portForward: PortForward, kilobytesPerSecond: String) {
+        val limit = kilobytesPerSecond.trim().ifEmpty { "0" }.toLongOrNull()
+        if (limit == null || limit < 0) {
+            _uiState.update { it.copy(error = "Invalid rate limit: '$kilobytesPerSecond' is not a number of KB/s") }
+            return
+        }
+        val bytesPerSecond = limit * 1024
+
+        viewModelScope.launch {
+            withContext(dispatchers.io) {
+                rateLimits.set(portForward.id, bytesPerSecond)
+            }
+
+            findBridgeForHost()?.portForwards?.find { it.id == portForward.id }?.let { bridgePf ->
+                bridgePf.setRateLimit(bytesPerSecond)
+                (bridgePf.getIdentifier() as? PortForwarder)?.rateLimit = bytesPerSecond
+            }
+            _refreshTrigger.value += 1
+        }
+    }
+
     fun enablePortForward(portForward: PortForward) {
         enableDisablePortForward(portForward, enable = true)
     }
@@ -287,6 +327,28 @@ class PortForwardListViewModel @Inject constructor(
         }
     }
 
+    /** Refresh [PortForwardListUiState.traffic] every second while any forward is running. */
+    private fun watchTraffic(portForwards: List<PortForward>) {
+        trafficJob?.cancel()
+        val forwarders = portForwards
+            .filter { it.isEnabled() }
+            .mapNotNull { pf -> (pf.getIdentifier() as? PortForwarder)?.let { pf.id to it } }
+            .toMap()
+        if (forwarders.isEmpty()) {
+            trafficJob = null
+            _uiState.update { it.copy(traffic = emptyMap()) }
+            return
+        }
+
+        trafficJob = viewModelScope.launch {
+            while (isActive) {
+                val traffic = forwarders.mapValues { it.value.statistics.snapshot() }
+                _uiState.update { it.copy(traffic = traffic) }
+                delay(TRAFFIC_REFRESH_MILLIS)
+            }
+        }
+    }
+
     private fun findBridgeForHost(): TerminalBridge? = _terminalManager.value?.bridgesFlow?.value?.find { it.host.id == hostId }
 
     private fun validatePort(portString: String, portType: String): Int {
@@ -323,4 +385,8 @@ class PortForwardListViewModel @Inject constructor(
             }
         }
     }
+
+    companion object {
+        private const val TRAFFIC_REFRESH_MILLIS = 1_000L
+    }
 }
@@ -171,6 +171,9 @@ fun SettingsScreen(
         onMemkeysChange = viewModel::updateMemkeys,
         onConnPersistChange = viewModel::updateConnPersist,
         onWifilockChange = viewModel::updateWifilock,
+        onPreconnectChange = viewModel::updatePreconnect,
+        onShareConnectionsChange = viewModel::updateShareConnections,
+        onCompressionAutoChange = viewModel::updateCompressionAuto,
         onBackupkeysChange = viewModel::updateBackupkeys,
         onScrollbackChange = viewModel::updateScrollback,
         onAddCustomTerminalType = viewModel::addCustomTerminalType,
@@ -192,6 +195,7 @@ fun SettingsScreen(
         onSwipeSessionsChange = viewModel::updateSwipeSessions,
         onVolumeFontChange = viewModel::updateVolumeFont,
         onKeepAliveChange = viewModel::updateKeepAlive,
+        onPredictiveEchoChange = viewModel::updatePredictiveEcho,
         onAlwaysVisibleChange = viewModel::updateAlwaysVisible,
         onShiftFkeysChange = viewModel::updateShiftFkeys,
         onCtrlFkeysChange = viewModel::updateCtrlFkeys,
@@ -216,6 +220,9 @@ fun SettingsScreenContent(
     onMemkeysChange: (Boolean) -> Unit,
     onConnPersistChange: (Boolean) -> Unit,
     onWifilockChange: (Boolean) -> Unit,
+    onPreconnectChange: (Boolean) -> Unit,
+    onShareConnectionsChange: (Boolean) -> Unit,
+    onCompressionAutoChange: (Boolean) -> Unit,
     onBackupkeysChange: (Boolean) -> Unit,
     onScrollbackChange: (String) -> Unit,
     onAddCustomTerminalType: (String) -> Unit,
@@ -237,6 +244,7 @@ fun SettingsScreenContent(
     onSwipeSessionsChange: (Boolean) -> Unit,
     onVolumeFontChange: (Boolean) -> Unit,
     onKeepAliveChange: (Boolean) -> Unit,
+    onPredictiveEchoChange: (Boolean) -> Unit,
     onAlwaysVisibleChange: (Boolean) -> Unit,
     onShiftFkeysChange: (Boolean) -> Unit,
     onCtrlFkeysChange: (Boolean) -> Unit,
@@ -333,6 +341,33 @@ fun SettingsScreenContent(
                 )
             }
 
+            item {
+                SwitchPreference(
+                    title = stringResource(R.string.pref_preconnect_title),
+                    summary = stringResource(R.string.pref_preconnect_summary),
+                    checked = uiState.preconnect,
+                    onCheckedChange = onPreconnectChange,
+                )
+            }
+
+            item {
+                SwitchPreference(
+                    title = stringResource(R.string.pref_share_connections_title),
+                    summary = stringResource(R.string.pref_share_connections_summary),
+                    checked = uiState.shareConnections,
+                    onCheckedChange = onShareConnectionsChange,
+                )
+            }
+
+            item {
+                SwitchPreference(
+                    title = stringResource(R.string.pref_compression_auto_title),
+                    summary = stringResource(R.string.pref_compression_auto_summary),
+                    checked = uiState.compressionAuto,
+                    onCheckedChange = onCompressionAutoChange,
+                )
+            }
+
             item {
                 SwitchPreference(
                     title = stringResource(R.string.pref_backupkeys_title),
@@ -558,6 +593,15 @@ fun SettingsScreenContent(
                 )
             }
 
+            item {
+                SwitchPreference(
+                    title = stringResource(R.string.pref_predictive_echo_title),
+                    summary = stringResource(R.string.pref_predictive_echo_summary),
+                    checked = uiState.predictiveEcho,
+                    onCheckedChange = onPredictiveEchoChange,
+                )
+            }
+
             item {
                 PreferenceCategory(title = stringResource(R.string.pref_keyboard_category))
             }
@@ -1581,6 +1625,9 @@ private fun SettingsScreenPreview() {
             onMemkeysChange = {},
             onConnPersistChange = {},
             onWifilockChange = {},
+            onPreconnectChange = {},
+            onShareConnectionsChange = {},
+            onCompressionAutoChange = {},
             onBackupkeysChange = {},
             onScrollbackChange = {},
             onAddCustomTerminalType = {},
@@ -1602,6 +1649,7 @@ private fun SettingsScreenPreview() {
             onSwipeSessionsChange = {},
             onVolumeFontChange = {},
             onKeepAliveChange = {},
+            onPredictiveEchoChange = {},
             onAlwaysVisibleChange = {},
             onShiftFkeysChange = {},
             onCtrlFkeysChange = {},
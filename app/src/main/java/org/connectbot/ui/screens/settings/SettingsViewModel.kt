@@ -56,6 +56,9 @@ data class SettingsUiState(
     val memkeys: Boolean = true,
     val connPersist: Boolean = true,
     val wifilock: Boolean = true,
+    val preconnect: Boolean = false,
+    val shareConnections: Boolean = false,
+    val compressionAuto: Boolean = false,
     val backupkeys: Boolean = false,
     val scrollback: String = "140",
     val rotation: String = "Default",
@@ -65,6 +68,7 @@ data class SettingsUiState(
     val swipeSessions: Boolean = false,
     val volumefont: Boolean = true,
     val keepalive: Boolean = true,
+    val predictiveEcho: Boolean = false,
     val alwaysvisible: Boolean = false,
     val shiftfkeys: Boolean = false,
     val ctrlfkeys: Boolean = false,
@@ -194,6 +198,9 @@ class SettingsViewModel @Inject constructor(
             memkeys = prefs.getBoolean("memkeys", true),
             connPersist = prefs.getBoolean(PreferenceConstants.CONNECTION_PERSIST, true),
             wifilock = prefs.getBoolean("wifilock", true),
+            preconnect = prefs.getBoolean(PreferenceConstants.PRECONNECT, false),
+            shareConnections = prefs.getBoolean(PreferenceConstants.SHARE_CONNECTIONS, false),
+            compressionAuto = prefs.getBoolean(PreferenceConstants.COMPRESSION_AUTO, false),
             backupkeys = prefs.getBoolean("backupkeys", false),
             scrollback = prefs.getString("scrollback", "140") ?: "140",
             rotation = prefs.getString("rotation", "Default") ?: "Default",
@@ -203,6 +210,7 @@ class SettingsViewModel @Inject constructor(
             swipeSessions = prefs.getBoolean(PreferenceConstants.SWIPE_SESSIONS, false),
             volumefont = prefs.getBoolean("volumefont", true),
             keepalive = prefs.getBoolean("keepalive", true),
+            predictiveEcho = prefs.getBoolean(PreferenceConstants.PREDICTIVE_ECHO, false),
             alwaysvisible = prefs.getBoolean("alwaysvisible", false),
             shiftfkeys = prefs.getBoolean("shiftfkeys", false),
             ctrlfkeys = prefs.getBoolean("ctrlfkeys", false),
@@ -285,6 +293,18 @@ class SettingsViewModel @Inject constructor(
         updateBooleanPref(PreferenceConstants.WIFI_LOCK, value) { copy(wifilock = value) }
     }
 
+    fun updatePreconnect(value: Boolean) {
+        updateBooleanPref(PreferenceConstants.PRECONNECT, value) { copy(preconnect = value) }
+    }
+
+    fun updateShareConnections(value: Boolean) {
+        updateBooleanPref(PreferenceConstants.SHARE_CONNECTIONS, value) { copy(shareConnections = value) }
+    }
+
+    fun updateCompressionAuto(value: Boolean) {
+        updateBooleanPref(PreferenceConstants.COMPRESSION_AUTO, value) { copy(compressionAuto = value) }
+    }
+
     fun updateBackupkeys(value: Boolean) {
         updateBooleanPref(PreferenceConstants.BACKUP_KEYS, value) { copy(backupkeys = value) }
     }
@@ -297,6 +317,10 @@ class SettingsViewModel @Inject constructor(
         updateBooleanPref(PreferenceConstants.KEEP_ALIVE, value) { copy(keepalive = value) }
     }
 
+    fun updatePredictiveEcho(value: Boolean) {
+        updateBooleanPref(PreferenceConstants.PREDICTIVE_ECHO, value) { copy(predictiveEcho = value) }
+    }
+
     fun updateBell(value: Boolean) {
         updateBooleanPref(PreferenceConstants.BELL, value) { copy(bell = value) }
     }
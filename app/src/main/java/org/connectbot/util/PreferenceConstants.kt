@@ -56,8 +56,16 @@ object PreferenceConstants {
 
     const val KEEP_ALIVE: String = "keepalive"
 
+    const val PREDICTIVE_ECHO: String = "predictiveEcho"
+
     const val WIFI_LOCK: String = "wifilock"
 
+    const val PRECONNECT: String = "preconnect"
+
+    const val SHARE_CONNECTIONS: String = "shareConnections"
+
+    const val COMPRESSION_AUTO: String = "compressionAuto"
+
     const val BUMPY_ARROWS: String = "bumpyarrows"
 
     const val SORT_BY_COLOR: String = "sortByColor"
@@ -0,0 +1,266 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.mud.telnet
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import kotlin.random.Random
+
+class TelnetProtocolHandlerTest {
+
+    private class RecordingHandler : TelnetProtocolHandler() {
+        val writes = mutableListOf<List<Int>>()
+        val echo = mutableListOf<Boolean>()
+        var endOfRecords = 0
+
+        override fun getTerminalType(): String = "xterm"
+        override fun getWindowSize(): IntArray = intArrayOf(80, 24)
+        override fun setLocalEcho(echo: Boolean) {
+            this.echo += echo
+        }
+        override fun notifyEndOfRecord() {
+            endOfRecords++
+        }
+        override fun write(b: ByteArray) {
+            writes += b.map { it.toInt() and 0xff }
+        }
+        override fun getCharsetName(): String = "UTF-8"
+
+        /** Feed [input] and negotiate until the handler runs dry, returning the data bytes. */
+        fun feedAll(vararg input: Int, bufferSize: Int = 64): ByteArray {
+            val bytes = ByteArray(input.size) { input[it].toByte() }
+            inputfeed(bytes, 0, bytes.size)
+            return drain(bufferSize)
+        }
+
+        fun drain(bufferSize: Int = 64): ByteArray {
+            val out = ByteArrayOutputStream()
+            val buffer = ByteArray(bufferSize)
+            while (true) {
+                val n = negotiate(buffer, 0, buffer.size)
+                if (n < 0) break
+                out.write(buffer, 0, n)
+            }
+            return out.toByteArray()
+        }
+    }
+
+    @Test
+    fun negotiate_emptyBuffer_returnsEndOfBuffer() {
+        assertEquals(-1, RecordingHandler().negotiate(ByteArray(8), 0, 8))
+    }
+
+    @Test
+    fun negotiate_plainData_copiedThrough() {
+        val handler = RecordingHandler()
+        val data = "hello, world".toByteArray()
+        handler.inputfeed(data, 0, data.size)
+
+        val buffer = ByteArray(32)
+        assertEquals(data.size, handler.negotiate(buffer, 4, 28))
+        assertArrayEquals(data, buffer.copyOfRange(4, 4 + data.size))
+        assertEquals(-1, handler.negotiate(buffer, 0, 32))
+    }
+
+    @Test
+    fun negotiate_respectsLength() {
+        val handler = RecordingHandler()
+        val data = "abcdef".toByteArray()
+        handler.inputfeed(data, 0, data.size)
+
+        val buffer = ByteArray(16)
+        assertEquals(4, handler.negotiate(buffer, 0, 4))
+        assertEquals(2, handler.negotiate(buffer, 4, 12))
+        assertEquals("abcdef", String(buffer, 0, 6))
+    }
+
+    @Test
+    fun negotiate_escapedIac_stopsBeforeIacThenUnescapes() {
+        val handler = RecordingHandler()
+        val input = byteArrayOf('a'.code.toByte(), IAC, IAC, 'b'.code.toByte())
+        handler.inputfeed(input, 0, input.size)
+
+        val buffer = ByteArray(16)
+        // Data before the IAC is returned first so the caller can sync.
+        assertEquals(1, handler.negotiate(buffer, 0, 16))
+        assertEquals(2, handler.negotiate(buffer, 1, 15))
+        assertArrayEquals(byteArrayOf('a'.code.toByte(), IAC, 'b'.code.toByte()), buffer.copyOf(3))
+    }
+
+    @Test
+    fun negotiate_willEcho_repliesDoOnceAndDisablesLocalEcho() {
+        val handler = RecordingHandler()
+
+        handler.feedAll(0xff, 0xfb, 0x01)
+        handler.feedAll(0xff, 0xfb, 0x01)
+
+        assertEquals(listOf(listOf(0xff, 0xfd, 0x01)), handler.writes)
+        assertEquals(listOf(false, false), handler.echo)
+    }
+
+    @Test
+    fun negotiate_unknownWill_repliesDont() {
+        val handler = RecordingHandler()
+
+        handler.feedAll(0xff, 0xfb, 99)
+
+        assertEquals(listOf(listOf(0xff, 0xfe, 99)), handler.writes)
+    }
+
+    @Test
+    fun negotiate_willCompress2WithoutSupport_repliesDont() {
+        val handler = RecordingHandler()
+
+        handler.feedAll(0xff, 0xfb, 86, 0xff, 0xfa, 86, 0xff, 0xf0)
+
+        assertEquals(listOf(listOf(0xff, 0xfe, 86)), handler.writes)
+        assertEquals(false, handler.takeCompressionStart())
+    }
+
+    @Test
+    fun negotiate_compress2Start_stopsAndLeavesCompressedInput() {
+        val handler = object : TelnetProtocolHandler() {
+            override fun getTerminalType(): String = "xterm"
+            override fun getWindowSize(): IntArray = intArrayOf(80, 24)
+            override fun setLocalEcho(echo: Boolean) {}
+            override fun notifyEndOfRecord() {}
+            override fun write(b: ByteArray) {}
+            override fun getCharsetName(): String = "UTF-8"
+            override fun isCompressionSupported(): Boolean = true
+        }
+        val input = byteArrayOf(
+            IAC, 0xfb.toByte(), 86,
+            'a'.code.toByte(), IAC, 0xfa.toByte(), 86, IAC, 0xf0.toByte(),
+            1, 2, 3,
+        )
+        handler.inputfeed(input, 0, input.size)
+
+        val buffer = ByteArray(16)
+        var total = 0
+        while (!handler.takeCompressionStart()) {
+            total += handler.negotiate(buffer, total, buffer.size - total).coerceAtLeast(0)
+        }
+
+        assertEquals("a", String(buffer, 0, total))
+        assertEquals(3, handler.available())
+        assertEquals(3, handler.takeInput(buffer, 0, buffer.size))
+        assertArrayEquals(byteArrayOf(1, 2, 3), buffer.copyOf(3))
+        assertEquals(-1, handler.negotiate(buffer, 0, buffer.size))
+    }
+
+    @Test
+    fun negotiate_dontEcho_repliesWontByteByByte() {
+        val handler = RecordingHandler()
+
+        handler.feedAll(0xff, 0xfe, 0x01)
+
+        assertEquals(listOf(listOf(0xff), listOf(0xfc), listOf(0x01)), handler.writes)
+        assertEquals(listOf(false), handler.echo)
+    }
+
+    @Test
+    fun negotiate_doNaws_sendsWindowSizeThenWill() {
+        val handler = RecordingHandler()
+
+        handler.feedAll(0xff, 0xfd, 31)
+
+        assertEquals(
+            listOf(
+                listOf(0xff, 0xfa, 31, 0, 80, 0, 24, 0xff, 0xf0),
+                listOf(0xff, 0xfb, 31),
+            ),
+            handler.writes,
+        )
+
+        handler.writes.clear()
+        handler.setWindowSize(132, 50)
+        assertEquals(listOf(listOf(0xff, 0xfa, 31, 0, 132, 0, 50, 0xff, 0xf0)), handler.writes)
+    }
+
+    @Test
+    fun negotiate_terminalTypeSubnegotiation_sendsTerminalType() {
+        val handler = RecordingHandler()
+
+        val data = handler.feedAll(0xff, 0xfd, 24, 0xff, 0xfa, 24, 1, 0xff, 0xf0, 'x'.code)
+
+        assertEquals(
+            listOf(
+                listOf(0xff, 0xfb, 24),
+                listOf(0xff, 0xfa, 24, 0) + "xterm".map { it.code } + listOf(0xff, 0xf0),
+            ),
+            handler.writes,
+        )
+        assertEquals("x", String(data))
+    }
+
+    @Test
+    fun negotiate_sequenceSplitAcrossFeeds_isHandled() {
+        val handler = RecordingHandler()
+
+        handler.feedAll(0xff)
+        handler.feedAll(0xfb)
+        handler.feedAll(0x03)
+
+        assertEquals(listOf(listOf(0xff, 0xfd, 0x03)), handler.writes)
+    }
+
+    @Test
+    fun negotiate_endOfRecord_notifies() {
+        val handler = RecordingHandler()
+
+        val data = handler.feedAll('>'.code, 0xff, 0xef, ' '.code)
+
+        assertEquals(1, handler.endOfRecords)
+        assertEquals("> ", String(data))
+    }
+
+    @Test
+    fun inputfeed_interleavedWithPartialReads_preservesOrder() {
+        val handler = RecordingHandler()
+        val random = Random(0x7E1)
+        val expected = ByteArrayOutputStream()
+        val actual = ByteArrayOutputStream()
+        val buffer = ByteArray(700)
+
+        repeat(200) {
+            // Random data with escaped IACs, fed faster than it is read so the ring wraps and grows.
+            val chunk = ByteArrayOutputStream()
+            repeat(random.nextInt(1, 3000)) {
+                val b = random.nextInt(256)
+                expected.write(b)
+                chunk.write(b)
+                if (b == 0xff) chunk.write(b)
+            }
+            val bytes = chunk.toByteArray()
+            handler.inputfeed(bytes, 0, bytes.size)
+
+            val n = handler.negotiate(buffer, 0, random.nextInt(1, buffer.size))
+            if (n > 0) actual.write(buffer, 0, n)
+        }
+        actual.write(handler.drain())
+
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray())
+        assertEquals(emptyList<List<Int>>(), handler.writes)
+    }
+
+    private companion object {
+        const val IAC = 0xff.toByte()
+    }
+}
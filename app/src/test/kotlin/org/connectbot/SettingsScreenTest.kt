@@ -271,6 +271,9 @@ class SettingsScreenTest {
                     onMemkeysChange = onMemkeysChange,
                     onConnPersistChange = onConnPersistChange,
                     onWifilockChange = onWifilockChange,
+                    onPreconnectChange = {},
+                    onShareConnectionsChange = {},
+                    onCompressionAutoChange = {},
                     onBackupkeysChange = onBackupkeysChange,
                     onScrollbackChange = onScrollbackChange,
                     onAddCustomTerminalType = onAddCustomTerminalType,
@@ -291,6 +294,7 @@ class SettingsScreenTest {
                     onPgUpDnGestureChange = {},
                     onVolumeFontChange = {},
                     onKeepAliveChange = {},
+                    onPredictiveEchoChange = {},
                     onAlwaysVisibleChange = {},
                     onSwipeSessionsChange = {},
                     onShiftFkeysChange = {},
@@ -0,0 +1,82 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class BracketedPasteTrackerTest {
+
+    private fun BracketedPasteTracker.scan(text: String) {
+        val bytes = text.toByteArray()
+        scan(bytes, 0, bytes.size)
+    }
+
+    @Test
+    fun scan_setAndResetMode_togglesEnabled() {
+        val tracker = BracketedPasteTracker()
+
+        tracker.scan("prompt$ \u001b[?2004h")
+        assertTrue(tracker.enabled)
+
+        tracker.scan("\u001b[?2004l\r\n")
+        assertFalse(tracker.enabled)
+    }
+
+    @Test
+    fun scan_sequenceSplitAcrossReads_isRecognised() {
+        val tracker = BracketedPasteTracker()
+
+        tracker.scan("output\u001b")
+        tracker.scan("[?20")
+        tracker.scan("04h")
+
+        assertTrue(tracker.enabled)
+    }
+
+    @Test
+    fun scan_combinedPrivateModes_includesBracketedPaste() {
+        val tracker = BracketedPasteTracker()
+
+        tracker.scan("\u001b[?1049;2004;1h")
+        assertTrue(tracker.enabled)
+
+        tracker.scan("\u001b[?2004;1049l")
+        assertFalse(tracker.enabled)
+    }
+
+    @Test
+    fun scan_otherModes_leaveStateAlone() {
+        val tracker = BracketedPasteTracker()
+
+        tracker.scan("\u001b[?20040h\u001b[2004h\u001b[?1h")
+
+        assertFalse(tracker.enabled)
+    }
+
+    @Test
+    fun scan_fullReset_disables() {
+        val tracker = BracketedPasteTracker()
+        tracker.scan("\u001b[?2004h")
+
+        tracker.scan("\u001bc")
+
+        assertFalse(tracker.enabled)
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import kotlinx.coroutines.async
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.runTest
+import kotlinx.coroutines.yield
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertThrows
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import kotlin.random.Random
+
+class ByteRingTest {
+
+    @Test
+    fun offerAndPoll_acrossWrap_preserveOrder() {
+        val ring = ByteRing(8)
+        val out = ByteArray(8)
+
+        assertEquals(6, ring.offer("abcdef".toByteArray(), 0, 6))
+        assertEquals(4, ring.poll(out, 0, 4))
+        assertEquals(6, ring.offer("ghijkl".toByteArray(), 0, 6))
+        assertEquals(8, ring.size)
+
+        assertEquals(8, ring.poll(out, 0, 8))
+        assertEquals("efghijkl", String(out))
+        assertEquals(0, ring.size)
+    }
+
+    @Test
+    fun offer_whenFull_copiesOnlyFreeSpace() {
+        val ring = ByteRing(4)
+
+        assertEquals(4, ring.offer(ByteArray(6), 0, 6))
+        assertEquals(0, ring.offer(ByteArray(1), 0, 1))
+    }
+
+    @Test
+    fun constructor_nonPowerOfTwo_throws() {
+        assertThrows(IllegalArgumentException::class.java) { ByteRing(12) }
+    }
+
+    @Test
+    fun read_closedAndEmpty_returnsEndOfInput() = runTest {
+        val ring = ByteRing(8)
+        val out = ByteArray(8)
+        ring.offer("xy".toByteArray(), 0, 2)
+        ring.close()
+
+        assertEquals(2, ring.read(out, 0, 8))
+        assertEquals(-1, ring.read(out, 0, 8))
+    }
+
+    @Test
+    fun read_empty_suspendsUntilWritten() = runTest {
+        val ring = ByteRing(8)
+        val out = ByteArray(8)
+
+        val pending = async { ring.read(out, 0, 8) }
+        yield()
+        assertFalse(pending.isCompleted)
+
+        ring.offer("z".toByteArray(), 0, 1)
+        assertEquals(1, pending.await())
+        assertEquals('z'.code.toByte(), out[0])
+    }
+
+    @Test
+    fun write_aboveHighWatermark_waitsForLowWatermark() = runTest {
+        val ring = ByteRing(16, highWatermark = 12, lowWatermark = 4)
+        val out = ByteArray(16)
+
+        val writer = async { ring.write(ByteArray(20), 0, 20) }
+        yield()
+        assertFalse(writer.isCompleted)
+        assertEquals(16, ring.size)
+
+        // Draining to just above the low watermark is not enough to resume the writer.
+        ring.poll(out, 0, 11)
+        yield()
+        assertFalse(writer.isCompleted)
+
+        ring.poll(out, 0, 1)
+        assertEquals(1, writer.await())
+        assertEquals(8, ring.size)
+    }
+
+    @Test
+    fun writeAndRead_concurrentChunks_deliverAllBytesInOrder() = runTest {
+        val ring = ByteRing(64)
+        val random = Random(0x5EED)
+        val input = random.nextBytes(10_000)
+        val output = ByteArrayOutputStream()
+
+        launch {
+            var offset = 0
+            while (offset < input.size) {
+                val length = minOf(random.nextInt(1, 100), input.size - offset)
+                ring.write(input, offset, length)
+                offset += length
+            }
+            ring.close()
+        }
+
+        val chunk = ByteArray(37)
+        while (true) {
+            val count = ring.read(chunk, 0, chunk.size)
+            if (count == -1) break
+            output.write(chunk, 0, count)
+        }
+
+        assertArrayEquals(input, output.toByteArray())
+        assertEquals(0, ring.size)
+    }
+}
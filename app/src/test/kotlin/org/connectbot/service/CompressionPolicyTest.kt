@@ -0,0 +1,67 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import android.net.NetworkCapabilities
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class CompressionPolicyTest {
+    private val wifi = NetworkCapabilities.TRANSPORT_WIFI
+    private val cellular = NetworkCapabilities.TRANSPORT_CELLULAR
+
+    @Test
+    fun decide_mobileData_compressesEvenIfFastBefore() {
+        val history = LinkHistory.Entry(roundTripMillis = 20, peakInboundBytesPerSecond = 10L * 1024 * 1024)
+
+        assertThat(CompressionPolicy.decide(cellular, history).compress).isTrue()
+    }
+
+    @Test
+    fun decide_noHistory_doesNotCompress() {
+        assertThat(CompressionPolicy.decide(wifi, null).compress).isFalse()
+    }
+
+    @Test
+    fun decide_slowLastTime_compresses() {
+        val history = LinkHistory.Entry(roundTripMillis = 400, peakInboundBytesPerSecond = 20_000)
+
+        assertThat(CompressionPolicy.decide(wifi, history).compress).isTrue()
+    }
+
+    @Test
+    fun decide_fastLastTime_doesNotCompress() {
+        val history = LinkHistory.Entry(roundTripMillis = 400, peakInboundBytesPerSecond = 5L * 1024 * 1024)
+
+        assertThat(CompressionPolicy.decide(wifi, history).compress).isFalse()
+    }
+
+    @Test
+    fun decide_quickRoundTrip_doesNotCompress() {
+        val history = LinkHistory.Entry(roundTripMillis = 30, peakInboundBytesPerSecond = 20_000)
+
+        assertThat(CompressionPolicy.decide(wifi, history).compress).isFalse()
+    }
+
+    @Test
+    fun decide_unknownNetworkWithSlowHistory_compresses() {
+        val history = LinkHistory.Entry(roundTripMillis = 600, peakInboundBytesPerSecond = 0)
+
+        assertThat(CompressionPolicy.decide(-1, history).compress).isTrue()
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.advanceTimeBy
+import kotlinx.coroutines.test.runCurrent
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class LinkMonitorTest {
+    private val scope = TestScope()
+    private var inbound = 0L
+    private var outbound = 0L
+    private var reads = 0L
+    private var nextRoundTrip: Long? = 80L
+    private val reported = mutableListOf<Long>()
+
+    private val monitor = LinkMonitor(
+        roundTrip = { nextRoundTrip },
+        inboundBytes = { inbound },
+        outboundBytes = { outbound },
+        inboundReads = { reads },
+        onRoundTrip = { reported += it },
+        clock = { scope.testScheduler.currentTime },
+        sampleIntervalMillis = SAMPLE_INTERVAL,
+        roundTripIntervalMillis = ROUND_TRIP_INTERVAL,
+        idleRoundTripIntervalMillis = IDLE_ROUND_TRIP_INTERVAL,
+    )
+
+    /** Run the monitor with someone collecting its quality, as the console does. */
+    private fun runWatched() = scope.launch {
+        launch { monitor.quality.collect {} }
+        monitor.run()
+    }
+
+    @Test
+    fun run_measuresRoundTripAtOnce() {
+        val job = runWatched()
+        scope.runCurrent()
+
+        assertThat(monitor.quality.value.roundTripMillis).isEqualTo(80L)
+        assertThat(reported).containsExactly(80L)
+        job.cancel()
+    }
+
+    @Test
+    fun run_throughputIsBytesPerSecondOverTheSample() {
+        val job = runWatched()
+        scope.runCurrent()
+
+        inbound += 4000
+        reads += 4
+        outbound += 200
+        scope.advanceTimeBy(SAMPLE_INTERVAL)
+        scope.runCurrent()
+
+        assertThat(monitor.quality.value.inboundBytesPerSecond).isEqualTo(2000L)
+        assertThat(monitor.quality.value.outboundBytesPerSecond).isEqualTo(100L)
+        assertThat(monitor.quality.value.inboundReadsPerSecond).isEqualTo(2L)
+        assertThat(monitor.quality.value.inboundBytesPerRead).isEqualTo(1000L)
+
+        scope.advanceTimeBy(SAMPLE_INTERVAL)
+        scope.runCurrent()
+
+        assertThat(monitor.quality.value.inboundBytesPerSecond).isEqualTo(0L)
+        assertThat(monitor.peakInboundBytesPerSecond).isEqualTo(2000L)
+        job.cancel()
+    }
+
+    @Test
+    fun run_unansweredRoundTrip_keepsLastMeasurement() {
+        val job = runWatched()
+        scope.runCurrent()
+
+        nextRoundTrip = null
+        scope.advanceTimeBy(ROUND_TRIP_INTERVAL)
+        scope.runCurrent()
+
+        assertThat(monitor.quality.value.roundTripMillis).isEqualTo(80L)
+        assertThat(reported).containsExactly(80L)
+        job.cancel()
+    }
+
+    @Test
+    fun run_unwatched_skipsThroughputAndStretchesRoundTrips() {
+        val job = scope.launch { monitor.run() }
+        scope.runCurrent()
+
+        inbound += 4000
+        scope.advanceTimeBy(SAMPLE_INTERVAL * 2)
+        scope.runCurrent()
+
+        assertThat(monitor.quality.value.inboundBytesPerSecond).isEqualTo(0L)
+        assertThat(reported).isEmpty()
+
+        scope.advanceTimeBy(IDLE_ROUND_TRIP_INTERVAL)
+        scope.runCurrent()
+
+        assertThat(reported).containsExactly(80L)
+        job.cancel()
+    }
+
+    @Test
+    fun run_watchedLater_measuresAtOnce() {
+        val job = scope.launch { monitor.run() }
+        scope.runCurrent()
+
+        val watcher = scope.launch { monitor.quality.collect {} }
+        scope.runCurrent()
+
+        assertThat(reported).containsExactly(80L)
+        watcher.cancel()
+        job.cancel()
+    }
+
+    @Test
+    fun reset_forgetsMeasurements() {
+        val job = runWatched()
+        scope.runCurrent()
+        job.cancel()
+
+        monitor.reset()
+
+        assertThat(monitor.quality.value).isEqualTo(LinkQuality())
+        assertThat(monitor.peakInboundBytesPerSecond).isEqualTo(0L)
+    }
+
+    companion object {
+        private const val SAMPLE_INTERVAL = 2_000L
+        private const val ROUND_TRIP_INTERVAL = 30_000L
+        private const val IDLE_ROUND_TRIP_INTERVAL = 300_000L
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.runTest
+import kotlinx.coroutines.yield
+import org.connectbot.transport.AbsTransport
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.mockito.kotlin.any
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.mock
+import java.io.ByteArrayOutputStream
+import java.nio.charset.StandardCharsets
+
+class PasteStreamerTest {
+
+    private val sent = ByteArrayOutputStream()
+    private val transport = mock<AbsTransport> {
+        on { write(any<ByteArray>(), any(), any()) } doAnswer { invocation ->
+            sent.write(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2))
+        }
+    }
+
+    @Test
+    fun stream_largeText_arrivesIntactInChunks() = runTest {
+        val writer = TransportWriter({ transport }, batchSize = 64)
+        val streamer = PasteStreamer(writer, chunkSize = 16, window = 2)
+        val text = buildString { repeat(500) { append("line $it é漢\n") } }
+        val progress = mutableListOf<Int>()
+
+        val writerJob = launch { writer.run() }
+        streamer.stream(text, StandardCharsets.UTF_8, bracketed = false) { sentChars, total ->
+            assertEquals(text.length, total)
+            progress += sentChars
+        }
+        writer.close()
+        writerJob.join()
+
+        assertEquals(text, sent.toString("UTF-8"))
+        assertTrue(progress.size > 1)
+        assertEquals(text.length, progress.last())
+    }
+
+    @Test
+    fun stream_bracketed_wrapsWholePasteAndStripsEndMarker() = runTest {
+        val writer = TransportWriter({ transport })
+        val streamer = PasteStreamer(writer, chunkSize = 16, window = 2)
+
+        val writerJob = launch { writer.run() }
+        streamer.stream("echo hi\u001b[201~rm -rf ~\n", StandardCharsets.UTF_8, bracketed = true)
+        writer.close()
+        writerJob.join()
+
+        assertEquals("\u001b[200~echo hirm -rf ~\n\u001b[201~", sent.toString("UTF-8"))
+    }
+
+    @Test
+    fun stream_bracketed_typingDuringPasteIsSentAfterEndMarker() = runTest {
+        val writer = TransportWriter({ transport })
+        val streamer = PasteStreamer(writer, chunkSize = 16, window = 2)
+        val text = "y".repeat(100)
+        var chunks = 0
+
+        val writerJob = launch { writer.run() }
+        streamer.stream(text, StandardCharsets.UTF_8, bracketed = true) { _, _ ->
+            // By the third chunk the writer has started the paste.
+            if (++chunks == 3) writer.sendInteractive(3)
+        }
+        writer.close()
+        writerJob.join()
+
+        assertEquals("\u001b[200~$text\u001b[201~\u0003", sent.toString("UTF-8"))
+    }
+
+    @Test
+    fun stream_cancelled_stillSendsEndMarker() = runTest {
+        val writer = TransportWriter({ transport })
+        val streamer = PasteStreamer(writer, chunkSize = 16, window = 1)
+        val text = "x".repeat(1000)
+
+        // Nothing drains the writer yet, so the stream stalls once the pool is empty.
+        val pasteJob = launch { streamer.stream(text, StandardCharsets.UTF_8, bracketed = true) }
+        yield()
+        pasteJob.cancel()
+        pasteJob.join()
+
+        writer.close()
+        writer.run()
+
+        val output = sent.toString("UTF-8")
+        assertEquals("\u001b[200~" + "x".repeat(16) + "\u001b[201~", output)
+    }
+}
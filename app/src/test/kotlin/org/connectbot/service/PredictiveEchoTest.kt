@@ -0,0 +1,198 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class PredictiveEchoTest {
+    private var now = 0L
+    private val screen = StringBuilder()
+
+    private val echo = PredictiveEcho(
+        display = { buffer, offset, length -> screen.append(String(buffer, offset, length, Charsets.UTF_8)) },
+        clock = { now },
+    ).apply { enabled = true }
+
+    private fun type(text: String) = echo.onInput(text.toByteArray())
+
+    private fun receive(text: String) {
+        val bytes = text.toByteArray()
+        echo.write(bytes, 0, bytes.size)
+    }
+
+    /** Type a character the server takes [millis] to echo. */
+    private fun roundTrip(c: Char, millis: Long) {
+        type(c.toString())
+        now += millis
+        receive(c.toString())
+    }
+
+    private fun takeScreen(): String = screen.toString().also { screen.clear() }
+
+    @Test
+    fun fastEcho_drawsNothing() {
+        roundTrip('a', 20)
+        type("b")
+
+        assertThat(echo.active).isFalse()
+        assertThat(takeScreen()).isEqualTo("a")
+    }
+
+    @Test
+    fun slowEcho_drawsPredictionsUnderlinedUntilEchoed() {
+        roundTrip('a', 600)
+        takeScreen()
+
+        type("b")
+        assertThat(echo.active).isTrue()
+        assertThat(takeScreen()).isEqualTo("$ESC[4mb$ESC[24m")
+
+        receive("b")
+        assertThat(takeScreen()).isEqualTo("$ESC[D$ESC[Xb")
+    }
+
+    @Test
+    fun partialEcho_redrawsTheRest() {
+        roundTrip('a', 600)
+        type("bc")
+        takeScreen()
+
+        receive("b")
+
+        assertThat(takeScreen()).isEqualTo("$ESC[D$ESC[X$ESC[D$ESC[Xb$ESC[4mc$ESC[24m")
+    }
+
+    @Test
+    fun misprediction_rollsBackAndWaitsForNextEcho() {
+        roundTrip('a', 600)
+        type("b")
+        takeScreen()
+
+        receive("x")
+        assertThat(takeScreen()).isEqualTo("$ESC[D$ESC[Xx")
+
+        type("c")
+        assertThat(takeScreen()).isEmpty()
+    }
+
+    @Test
+    fun afterEnter_nothingIsDrawnUntilTheServerEchoes() {
+        roundTrip('a', 600)
+        type("\r")
+        receive("\r\nPassword: ")
+        takeScreen()
+
+        type("secret")
+
+        assertThat(takeScreen()).isEmpty()
+    }
+
+    @Test
+    fun arrowKeys_moveTheCursorAndAreUndone() {
+        roundTrip('a', 600)
+        takeScreen()
+
+        type("$ESC[D")
+        assertThat(takeScreen()).isEqualTo("$ESC[D")
+
+        receive("\b")
+        assertThat(takeScreen()).isEqualTo("$ESC[C\b")
+    }
+
+    @Test
+    fun unansweredPrediction_isRolledBack() {
+        roundTrip('a', 600)
+        type("b")
+        takeScreen()
+
+        now += 10_000
+        type("c")
+
+        assertThat(takeScreen()).isEqualTo("$ESC[D$ESC[X")
+    }
+
+    @Test
+    fun outputEndingInsideEscapeSequence_drawsNothingUntilItEnds() {
+        roundTrip('a', 600)
+        receive("$ESC[3")
+        takeScreen()
+
+        type("b")
+        assertThat(takeScreen()).isEmpty()
+
+        receive("1m")
+        assertThat(takeScreen()).isEqualTo("1m")
+    }
+
+    @Test
+    fun outputEndingInsideUtf8Character_drawsNothing() {
+        roundTrip('a', 600)
+        val e = "\u00e9".toByteArray()
+        echo.write(e, 0, 1)
+        takeScreen()
+
+        type("b")
+
+        assertThat(takeScreen()).isEmpty()
+    }
+
+    @Test
+    fun serverUnderline_isLeftOn() {
+        roundTrip('a', 600)
+        receive("$ESC[1;4m")
+        takeScreen()
+
+        type("b")
+
+        assertThat(takeScreen()).isEqualTo("$ESC[4mb")
+    }
+
+    @Test
+    fun serverColour_isNotMistakenForUnderline() {
+        roundTrip('a', 600)
+        receive("$ESC[4m$ESC[24;38;5;4m")
+        takeScreen()
+
+        type("b")
+
+        assertThat(takeScreen()).isEqualTo("$ESC[4mb$ESC[24m")
+    }
+
+    @Test
+    fun slowKeepalive_activatesBeforeAnyEcho() {
+        echo.onRoundTrip(600)
+
+        assertThat(echo.active).isTrue()
+        assertThat(echo.echoMillis).isEqualTo(600L)
+    }
+
+    @Test
+    fun disabled_passesOutputThrough() {
+        echo.enabled = false
+        type("a")
+        receive("a")
+
+        assertThat(takeScreen()).isEqualTo("a")
+        assertThat(echo.echoMillis).isEqualTo(-1L)
+    }
+
+    companion object {
+        private const val ESC = "\u001b"
+    }
+}
@@ -17,6 +17,13 @@
 
 package org.connectbot.service
 
+import android.net.Uri
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.connectbot.data.entity.Host
+import org.connectbot.di.CoroutineDispatchers
+import org.connectbot.transport.AbsTransport
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertFalse
 import org.junit.Assert.assertThrows
@@ -24,6 +31,7 @@ import org.junit.Assert.assertTrue
 import org.junit.Test
 import java.io.IOException
 import java.nio.ByteBuffer
+import java.util.concurrent.CountDownLatch
 
 class RelayTest {
 
@@ -70,4 +78,104 @@ class RelayTest {
         }
         assertEquals(3, buffer.position())
     }
+
+    @Test
+    fun readBufferSizer_fullReads_growToMaximum() {
+        val sizer = ReadBufferSizer(minSize = 4096, maxSize = 65536)
+
+        repeat(20) { sizer.onRead(bytesRead = sizer.size, requestedLength = sizer.size) }
+
+        assertEquals(65536, sizer.size)
+    }
+
+    @Test
+    fun readBufferSizer_singleFullRead_doesNotGrow() {
+        val sizer = ReadBufferSizer(minSize = 4096, maxSize = 65536)
+
+        sizer.onRead(bytesRead = 4096, requestedLength = 4096)
+        sizer.onRead(bytesRead = 1000, requestedLength = 4096)
+        sizer.onRead(bytesRead = 4096, requestedLength = 4096)
+
+        assertEquals(4096, sizer.size)
+    }
+
+    @Test
+    fun readBufferSizer_interactiveReads_shrinkToMinimum() {
+        val sizer = ReadBufferSizer(minSize = 4096, maxSize = 65536)
+        repeat(20) { sizer.onRead(bytesRead = sizer.size, requestedLength = sizer.size) }
+
+        repeat(100) { sizer.onRead(bytesRead = 3, requestedLength = sizer.size) }
+
+        assertEquals(4096, sizer.size)
+    }
+
+    @Test
+    fun start_emulatorStageFails_returnsWhileReadIsBlocked() {
+        val released = CountDownLatch(1)
+        val transport = BlockingTransport(released)
+        val dispatchers = CoroutineDispatchers(Dispatchers.Default, Dispatchers.IO, Dispatchers.Default)
+        val relay = Relay(
+            { _, _, _ -> throw IOException("emulator gone") },
+            transport,
+            dispatchers,
+            "UTF-8",
+            RelayStatistics(),
+        )
+
+        try {
+            runBlocking {
+                withTimeout(5_000) { relay.start() }
+            }
+        } finally {
+            released.countDown()
+        }
+    }
+
+    @Test
+    fun relayStatistics_snapshot_doesNotDependOnEarlierSnapshots() {
+        val statistics = RelayStatistics()
+
+        statistics.recordRead(100)
+        statistics.recordRead(300)
+        statistics.recordBufferSize(8192)
+
+        val first = statistics.snapshot()
+        assertEquals(2L, first.totalReads)
+        assertEquals(400L, first.totalBytes)
+        assertEquals(200.0, first.bytesPerRead, 0.001)
+        assertEquals(8192, first.bufferSize)
+
+        assertEquals(first, statistics.snapshot())
+    }
+
+    /** Returns one line of output, then blocks in read until [released], as an idle socket does. */
+    private class BlockingTransport(private val released: CountDownLatch) : AbsTransport() {
+        private var first = true
+
+        override fun read(buffer: ByteArray, offset: Int, length: Int): Int {
+            if (first) {
+                first = false
+                val line = "prompt$ ".toByteArray()
+                line.copyInto(buffer, offset)
+                return line.size
+            }
+            released.await()
+            return -1
+        }
+
+        override fun connect() = Unit
+        override fun write(buffer: ByteArray) = Unit
+        override fun write(c: Int) = Unit
+        override fun flush() = Unit
+        override fun close() = Unit
+        override fun setDimensions(columns: Int, rows: Int, width: Int, height: Int) = Unit
+        override fun isConnected(): Boolean = true
+        override fun isSessionOpen(): Boolean = true
+        override fun getDefaultPort(): Int = 0
+        override fun getDefaultNickname(username: String?, hostname: String?, port: Int): String = ""
+        override fun getSelectionArgs(uri: Uri, selection: MutableMap<String, String>) = Unit
+        override fun createHost(uri: Uri): Host = throw UnsupportedOperationException()
+        override fun usesNetwork(): Boolean = false
+        override fun getLocalIpAddress(): String? = null
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import org.apache.harmony.niochar.charset.additional.IBM437
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.nio.charset.Charset
+import java.nio.charset.CodingErrorAction
+import java.nio.charset.StandardCharsets
+
+class SingleByteTranscoderTest {
+
+    private val allBytes = ByteArray(256) { it.toByte() }
+
+    @Test
+    fun transcode_singleByteCharsets_matchDecoderPath() {
+        val charsets = listOf(
+            IBM437("IBM437", arrayOf("IBM437", "CP437")),
+            StandardCharsets.ISO_8859_1,
+            StandardCharsets.US_ASCII,
+            Charset.forName("ISO-8859-15"),
+            Charset.forName("windows-1251"),
+            Charset.forName("windows-1252"),
+            Charset.forName("KOI8-R"),
+        )
+
+        for (charset in charsets) {
+            val transcoder = SingleByteTranscoder.forCharset(charset)
+            assertNotNull(charset.name(), transcoder)
+
+            val output = ByteArray(allBytes.size * SingleByteTranscoder.MAX_BYTES_PER_CHAR)
+            val written = transcoder!!.transcode(allBytes, 0, allBytes.size, output, 0)
+
+            assertArrayEquals(charset.name(), referenceTranscode(charset, allBytes), output.copyOf(written))
+        }
+    }
+
+    @Test
+    fun transcode_respectsOffsets() {
+        val transcoder = SingleByteTranscoder.forCharset(StandardCharsets.ISO_8859_1)!!
+        val input = byteArrayOf('x'.code.toByte(), 0xE9.toByte(), 'y'.code.toByte())
+        val output = ByteArray(8) { '-'.code.toByte() }
+
+        val written = transcoder.transcode(input, 1, 2, output, 3)
+
+        assertEquals(3, written)
+        assertArrayEquals("---éy--".toByteArray(StandardCharsets.UTF_8), output)
+    }
+
+    @Test
+    fun forCharset_multiByteCharsets_areNotSupported() {
+        assertNull(SingleByteTranscoder.forCharset(StandardCharsets.UTF_8))
+        assertNull(SingleByteTranscoder.forCharset(StandardCharsets.UTF_16))
+        assertNull(SingleByteTranscoder.forCharset(Charset.forName("Shift_JIS")))
+    }
+
+    @Test
+    fun forCharset_isCachedPerCharset() {
+        assertSame(
+            SingleByteTranscoder.forCharset(Charset.forName("windows-1252")),
+            SingleByteTranscoder.forCharset(Charset.forName("windows-1252")),
+        )
+    }
+
+    private fun referenceTranscode(charset: Charset, input: ByteArray): ByteArray {
+        val decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+        val encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+        val encoded = encoder.encode(decoder.decode(ByteBuffer.wrap(input)))
+        return ByteArray(encoded.remaining()).also { encoded.get(it) }
+    }
+}
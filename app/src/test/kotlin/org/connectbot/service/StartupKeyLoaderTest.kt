@@ -17,6 +17,8 @@
 
 package org.connectbot.service
 
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.runBlocking
 import org.connectbot.data.entity.Pubkey
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertNull
@@ -24,6 +26,7 @@ import org.junit.Assert.assertTrue
 import org.junit.Test
 import java.security.KeyPair
 import java.security.KeyPairGenerator
+import java.util.concurrent.atomic.AtomicInteger
 
 /**
  * Regression tests for issue #2081: encrypted startup keys must not be silently dropped.
@@ -36,9 +39,9 @@ class StartupKeyLoaderTest {
         keyGen.generateKeyPair()
     }
 
-    private fun pubkey(encrypted: Boolean) = Pubkey(
-        id = 1L,
-        nickname = "k",
+    private fun pubkey(encrypted: Boolean, id: Long = 1L) = Pubkey(
+        id = id,
+        nickname = "k$id",
         type = "RSA",
         privateKey = byteArrayOf(0),
         publicKey = byteArrayOf(0),
@@ -92,4 +95,40 @@ class StartupKeyLoaderTest {
         assertTrue(outcome is StartupKeyLoadOutcome.Failed)
         assertEquals("boom", (outcome as StartupKeyLoadOutcome.Failed).reason)
     }
+
+    @Test
+    fun parallelClassification_keepsInputOrder() = runBlocking {
+        val keys = (1L..8L).map { pubkey(encrypted = it % 3 == 0L, id = it) }
+        val outcomes = classifyStartupKeys(keys, Dispatchers.Default, parallelism = 4) { p, _ ->
+            // Finish later keys first.
+            Thread.sleep(10 * (9 - p.id))
+            if (p.id == 4L) null else rsaPair
+        }
+
+        assertEquals(keys.map { it.id }, outcomes.map { it.pubkeyId() })
+        assertTrue(outcomes[2] is StartupKeyLoadOutcome.NeedsPassphrase)
+        assertTrue(outcomes[3] is StartupKeyLoadOutcome.Failed)
+        assertTrue(outcomes[0] is StartupKeyLoadOutcome.Loaded)
+    }
+
+    @Test
+    fun parallelClassification_staysWithinBound() = runBlocking {
+        val running = AtomicInteger()
+        val mostRunning = AtomicInteger()
+        val keys = (1L..12L).map { pubkey(encrypted = false, id = it) }
+        classifyStartupKeys(keys, Dispatchers.Default, parallelism = 2) { _, _ ->
+            mostRunning.accumulateAndGet(running.incrementAndGet(), ::maxOf)
+            Thread.sleep(20)
+            running.decrementAndGet()
+            rsaPair
+        }
+
+        assertTrue("At most two keys may be decoded at once", mostRunning.get() <= 2)
+    }
+
+    private fun StartupKeyLoadOutcome.pubkeyId(): Long = when (this) {
+        is StartupKeyLoadOutcome.Loaded -> pubkey.id
+        is StartupKeyLoadOutcome.NeedsPassphrase -> pubkey.id
+        is StartupKeyLoadOutcome.Failed -> pubkey.id
+    }
 }
@@ -0,0 +1,192 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import android.net.Uri
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import org.connectbot.data.entity.Host
+import org.connectbot.transport.AbsTransport
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class TransportWriterTest {
+
+    @Test
+    fun run_queuedKeystrokes_sentAsSinglePacket() = runTest {
+        val transport = RecordingTransport()
+        val writer = TransportWriter({ transport })
+
+        "ls -la\r".forEach { writer.sendInteractive(it.code) }
+        writer.close()
+        writer.run()
+
+        assertEquals(listOf("write:ls -la\r", "flush"), transport.events)
+    }
+
+    @Test
+    fun run_interactiveInput_goesAheadOfQueuedPaste() = runTest {
+        val transport = RecordingTransport()
+        val writer = TransportWriter({ transport })
+
+        writer.sendBulk("paste one ".toByteArray())
+        writer.sendInteractive('x'.code)
+        writer.sendBulk("paste two".toByteArray())
+        writer.sendInteractive("yz".toByteArray())
+        writer.close()
+        writer.run()
+
+        assertEquals(listOf("write:xyzpaste one paste two", "flush"), transport.events)
+    }
+
+    @Test
+    fun run_interactiveInputDuringBracketedPaste_heldUntilPasteEnds() = runTest {
+        val transport = RecordingTransport()
+        val writer = TransportWriter({ transport })
+
+        val writerJob = launch { writer.run() }
+        writer.beginPaste("<".toByteArray())
+        writer.sendBulk("one ".toByteArray())
+        runCurrent()
+
+        writer.sendInteractive(3)
+        runCurrent()
+        assertEquals(listOf("write:<one ", "flush"), transport.events)
+
+        writer.sendBulk("two".toByteArray())
+        writer.endPaste(">".toByteArray())
+        writer.close()
+        writerJob.join()
+
+        assertEquals(listOf("write:<one ", "flush", "write:two>\u0003", "flush"), transport.events)
+    }
+
+    @Test
+    fun run_resize_splitsBatchAndKeepsOrder() = runTest {
+        val transport = RecordingTransport()
+        val writer = TransportWriter({ transport })
+
+        writer.sendInteractive("ab".toByteArray())
+        writer.setDimensions(100, 40, 0, 0)
+        writer.sendInteractive("cd".toByteArray())
+        writer.close()
+        writer.run()
+
+        assertEquals(listOf("write:ab", "dimensions:100x40", "write:cd", "flush"), transport.events)
+    }
+
+    @Test
+    fun run_directWrite_goesBetweenKeystrokeBatchesAndIsFlushed() = runTest {
+        val transport = RecordingTransport()
+        val writer = TransportWriter({ transport })
+
+        writer.sendInteractive("ab".toByteArray())
+        writer.sendInteractive { transport.write("<mark>".toByteArray()) }
+        writer.sendInteractive("cd".toByteArray())
+        writer.close()
+        writer.run()
+
+        assertEquals(listOf("write:ab", "write:<mark>", "write:cd", "flush"), transport.events)
+    }
+
+    @Test
+    fun run_dataLargerThanBatch_isWrittenInOrder() = runTest {
+        val transport = RecordingTransport()
+        val writer = TransportWriter({ transport }, batchSize = 4)
+
+        writer.sendBulk("ab".toByteArray())
+        writer.sendBulk("cdefgh".toByteArray())
+        writer.sendBulk("ij".toByteArray())
+        writer.sendBulk("kl".toByteArray())
+        writer.close()
+        writer.run()
+
+        assertEquals(listOf("write:ab", "write:cdefgh", "write:ijkl", "flush"), transport.events)
+    }
+
+    @Test
+    fun run_flushWithoutData_stillFlushes() = runTest {
+        val transport = RecordingTransport()
+        val writer = TransportWriter({ transport })
+
+        writer.flush()
+        writer.close()
+        writer.run()
+
+        assertEquals(listOf("flush"), transport.events)
+    }
+
+    @Test
+    fun run_noTransport_dropsQueuedData() = runTest {
+        val writer = TransportWriter({ null })
+
+        writer.sendBulk("lost".toByteArray())
+        writer.close()
+        writer.run()
+    }
+
+    @Test
+    fun bytesWritten_countsBatchedAndLargeWrites() = runTest {
+        val transport = RecordingTransport()
+        val writer = TransportWriter({ transport }, batchSize = 4)
+
+        writer.sendInteractive('a'.code)
+        writer.sendBulk("bcdefgh".toByteArray())
+        writer.close()
+        writer.run()
+
+        assertEquals(8L, writer.bytesWritten)
+    }
+
+    private class RecordingTransport : AbsTransport() {
+        val events = mutableListOf<String>()
+
+        override fun write(buffer: ByteArray) {
+            events += "write:" + String(buffer)
+        }
+
+        override fun write(buffer: ByteArray, offset: Int, length: Int) {
+            events += "write:" + String(buffer, offset, length)
+        }
+
+        override fun write(c: Int) {
+            events += "write:" + c.toChar()
+        }
+
+        override fun flush() {
+            events += "flush"
+        }
+
+        override fun setDimensions(columns: Int, rows: Int, width: Int, height: Int) {
+            events += "dimensions:${columns}x$rows"
+        }
+
+        override fun connect() = Unit
+        override fun read(buffer: ByteArray, offset: Int, length: Int): Int = -1
+        override fun close() = Unit
+        override fun isConnected(): Boolean = true
+        override fun isSessionOpen(): Boolean = true
+        override fun getDefaultPort(): Int = 0
+        override fun getDefaultNickname(username: String?, hostname: String?, port: Int): String = ""
+        override fun getSelectionArgs(uri: Uri, selection: MutableMap<String, String>) = Unit
+        override fun createHost(uri: Uri): Host = throw UnsupportedOperationException()
+        override fun usesNetwork(): Boolean = false
+        override fun getLocalIpAddress(): String? = null
+    }
+}
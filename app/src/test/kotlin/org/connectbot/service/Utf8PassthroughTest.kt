@@ -0,0 +1,166 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.service
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.nio.charset.CodingErrorAction
+import java.nio.charset.StandardCharsets
+import kotlin.random.Random
+
+class Utf8PassthroughTest {
+
+    @Test
+    fun forward_validInput_writesInputUnchanged() {
+        val input = "plain ascii, café, 日本語, 😀".toByteArray(StandardCharsets.UTF_8)
+
+        val output = ByteArrayOutputStream()
+        val consumed = Utf8Passthrough.forward(input, 0, input.size, false, output.asSink())
+
+        assertEquals(input.size, consumed)
+        assertArrayEquals(input, output.toByteArray())
+    }
+
+    @Test
+    fun forward_incompleteTrailingSequence_isCarriedOver() {
+        val input = byteArrayOf('a'.code.toByte(), 0xE6.toByte(), 0x97.toByte())
+
+        val output = ByteArrayOutputStream()
+        val consumed = Utf8Passthrough.forward(input, 0, input.size, false, output.asSink())
+
+        assertEquals(1, consumed)
+        assertArrayEquals(byteArrayOf('a'.code.toByte()), output.toByteArray())
+    }
+
+    @Test
+    fun forward_incompleteSequenceAtEndOfInput_isReplacedOnce() {
+        val input = byteArrayOf('a'.code.toByte(), 0xF0.toByte(), 0x9F.toByte(), 0x98.toByte())
+
+        val output = ByteArrayOutputStream()
+        val consumed = Utf8Passthrough.forward(input, 0, input.size, true, output.asSink())
+
+        assertEquals(input.size, consumed)
+        assertArrayEquals(referenceTranscode(input), output.toByteArray())
+    }
+
+    @Test
+    fun forward_malformedSequences_matchJdkDecoder() {
+        val cases = listOf(
+            byteArrayOf(0x80.toByte()),
+            byteArrayOf(0xC0.toByte(), 0xAF.toByte()),
+            byteArrayOf(0xC3.toByte(), 0x28),
+            byteArrayOf(0xE0.toByte(), 0x80.toByte(), 0xAF.toByte()),
+            byteArrayOf(0xE2.toByte(), 0x82.toByte(), 0x28),
+            byteArrayOf(0xED.toByte(), 0xA0.toByte(), 0x80.toByte()),
+            byteArrayOf(0xF0.toByte(), 0x8F.toByte(), 0xBF.toByte(), 0xBF.toByte()),
+            byteArrayOf(0xF4.toByte(), 0x90.toByte(), 0x80.toByte(), 0x80.toByte()),
+            byteArrayOf(0xF1.toByte(), 0x80.toByte(), 0x80.toByte(), 0x28),
+            byteArrayOf(0xF5.toByte(), 0x80.toByte()),
+            byteArrayOf(0xFF.toByte(), 0xFE.toByte()),
+        )
+
+        for (case in cases) {
+            val input = byteArrayOf('<'.code.toByte()) + case + byteArrayOf('>'.code.toByte())
+            assertArrayEquals(
+                "input ${input.joinToString(" ") { "%02x".format(it) }}",
+                referenceTranscode(input),
+                forwardInChunks(input, listOf(input.size)),
+            )
+        }
+    }
+
+    @Test
+    fun forward_randomInputInRandomChunks_matchesJdkDecoder() {
+        val random = Random(0x5EED)
+        repeat(500) { iteration ->
+            val input = randomUtf8ish(random, random.nextInt(1, 512))
+            val chunks = mutableListOf<Int>()
+            var left = input.size
+            while (left > 0) {
+                val size = random.nextInt(1, minOf(left, 16) + 1)
+                chunks += size
+                left -= size
+            }
+
+            assertArrayEquals(
+                "iteration $iteration",
+                referenceTranscode(input),
+                forwardInChunks(input, chunks),
+            )
+        }
+    }
+
+    /**
+     * Feed [input] in the given chunk sizes, carrying unconsumed bytes over the way [Relay] does.
+     */
+    private fun forwardInChunks(input: ByteArray, chunks: List<Int>): ByteArray {
+        val output = ByteArrayOutputStream()
+        val sink = output.asSink()
+        val buffer = ByteArray(input.size + 4)
+        var filled = 0
+        var position = 0
+
+        for ((index, size) in chunks.withIndex()) {
+            System.arraycopy(input, position, buffer, filled, size)
+            position += size
+            filled += size
+
+            val endOfInput = index == chunks.lastIndex
+            val consumed = Utf8Passthrough.forward(buffer, 0, filled, endOfInput, sink)
+            System.arraycopy(buffer, consumed, buffer, 0, filled - consumed)
+            filled -= consumed
+        }
+
+        assertEquals(0, filled)
+        return output.toByteArray()
+    }
+
+    private fun referenceTranscode(input: ByteArray): ByteArray {
+        val decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+        val chars = decoder.decode(ByteBuffer.wrap(input))
+        val encoded = StandardCharsets.UTF_8.encode(chars)
+        return ByteArray(encoded.remaining()).also { encoded.get(it) }
+    }
+
+    private fun randomUtf8ish(random: Random, length: Int): ByteArray {
+        val output = ByteArrayOutputStream()
+        while (output.size() < length) {
+            when (random.nextInt(6)) {
+                0 -> output.write(random.nextInt(0x20, 0x7F))
+
+                1 -> output.write(String(Character.toChars(random.nextInt(0x80, 0x800))).toByteArray(StandardCharsets.UTF_8))
+
+                2 -> output.write(String(Character.toChars(random.nextInt(0x4E00, 0x9FFF))).toByteArray(StandardCharsets.UTF_8))
+
+                3 -> output.write(String(Character.toChars(random.nextInt(0x10000, 0x10FFFF))).toByteArray(StandardCharsets.UTF_8))
+
+                else -> output.write(random.nextInt(0x80, 0x100))
+            }
+        }
+        return output.toByteArray()
+    }
+
+    private fun ByteArrayOutputStream.asSink() = Utf8Passthrough.Sink { buffer, offset, length ->
+        write(buffer, offset, length)
+    }
+}
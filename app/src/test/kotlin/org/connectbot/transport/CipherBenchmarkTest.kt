@@ -0,0 +1,111 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import org.assertj.core.api.Assertions.assertThat
+import org.connectbot.transport.CipherBenchmark.Companion.AES_CTR
+import org.connectbot.transport.CipherBenchmark.Companion.AES_GCM
+import org.connectbot.transport.CipherBenchmark.Companion.CHACHA20_POLY1305
+import org.connectbot.transport.CipherBenchmark.Companion.HMAC_SHA2_256
+import org.connectbot.transport.CipherBenchmark.Companion.HMAC_SHA2_512
+import org.junit.Test
+
+class CipherBenchmarkTest {
+    private val ciphers = arrayOf(
+        "chacha20-poly1305@openssh.com",
+        "aes256-gcm@openssh.com",
+        "aes128-gcm@openssh.com",
+        "aes256-ctr",
+        "aes128-ctr",
+        "aes128-cbc",
+    )
+
+    private val macs = arrayOf(
+        "hmac-sha2-256-etm@openssh.com",
+        "hmac-sha2-512-etm@openssh.com",
+        "hmac-sha2-256",
+        "hmac-sha2-512",
+        "hmac-sha1",
+    )
+
+    @Test
+    fun cipherFamily_groupsKeySizesTogether() {
+        assertThat(CipherBenchmark.cipherFamily("aes128-gcm@openssh.com")).isEqualTo(AES_GCM)
+        assertThat(CipherBenchmark.cipherFamily("aes256-ctr")).isEqualTo(AES_CTR)
+        assertThat(CipherBenchmark.cipherFamily("chacha20-poly1305@openssh.com")).isEqualTo(CHACHA20_POLY1305)
+        assertThat(CipherBenchmark.cipherFamily("aes128-cbc")).isNull()
+    }
+
+    @Test
+    fun orderCiphers_hardwareAes_putsGcmFirst() {
+        val speeds = mapOf(AES_GCM to 900.0, AES_CTR to 700.0, CHACHA20_POLY1305 to 200.0, HMAC_SHA2_256 to 800.0)
+
+        val ordered = CipherBenchmark.order(ciphers, CipherBenchmark.cipherSpeeds(speeds), CipherBenchmark::cipherFamily)
+
+        assertThat(ordered).containsExactly(
+            "aes256-gcm@openssh.com",
+            "aes128-gcm@openssh.com",
+            "aes256-ctr",
+            "aes128-ctr",
+            "chacha20-poly1305@openssh.com",
+            "aes128-cbc",
+        )
+    }
+
+    @Test
+    fun orderCiphers_noAesInstructions_keepsChachaFirst() {
+        val speeds = mapOf(AES_GCM to 40.0, AES_CTR to 60.0, CHACHA20_POLY1305 to 150.0, HMAC_SHA2_256 to 100.0)
+
+        val ordered = CipherBenchmark.order(ciphers, CipherBenchmark.cipherSpeeds(speeds), CipherBenchmark::cipherFamily)
+
+        assertThat(ordered.first()).isEqualTo("chacha20-poly1305@openssh.com")
+        assertThat(ordered.last()).isEqualTo("aes128-cbc")
+    }
+
+    @Test
+    fun cipherSpeeds_chargesCtrForItsMac() {
+        val speeds = CipherBenchmark.cipherSpeeds(mapOf(AES_CTR to 100.0, HMAC_SHA2_256 to 100.0, HMAC_SHA2_512 to 50.0))
+
+        assertThat(speeds[AES_CTR]).isEqualTo(50.0)
+    }
+
+    @Test
+    fun orderMacs_neverPromotesSha1() {
+        val speeds = mapOf(HMAC_SHA2_512 to 300.0, HMAC_SHA2_256 to 200.0)
+
+        val ordered = CipherBenchmark.order(macs, speeds, CipherBenchmark::macFamily)
+
+        assertThat(ordered).containsExactly(
+            "hmac-sha2-512-etm@openssh.com",
+            "hmac-sha2-512",
+            "hmac-sha2-256-etm@openssh.com",
+            "hmac-sha2-256",
+            "hmac-sha1",
+        )
+    }
+
+    @Test
+    fun order_nothingMeasured_keepsOrder() {
+        assertThat(CipherBenchmark.order(ciphers, emptyMap(), CipherBenchmark::cipherFamily)).containsExactly(*ciphers)
+    }
+
+    @Test
+    fun measureFamily_aesGcm_isMeasured() {
+        assertThat(CipherBenchmark.measureFamily(AES_GCM)).isPositive()
+    }
+}
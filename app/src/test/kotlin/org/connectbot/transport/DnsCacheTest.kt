@@ -0,0 +1,114 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.Test
+import java.net.InetAddress
+import java.net.UnknownHostException
+
+class DnsCacheTest {
+    private val address = InetAddress.getByName("192.0.2.1")
+    private var now = 0L
+    private val lookups = mutableListOf<String>()
+    private var answer: () -> Array<InetAddress> = { arrayOf(address) }
+
+    private val cache = DnsCache(
+        lookup = { hostname ->
+            lookups += hostname
+            answer()
+        },
+        ttlMillis = 1000,
+        negativeTtlMillis = 100,
+        clock = { now },
+    )
+
+    @Test
+    fun resolve_withinTtl_usesCache() {
+        cache.resolve("example.com")
+        now = 999
+        val addresses = cache.resolve("EXAMPLE.com")
+
+        assertThat(addresses).containsExactly(address)
+        assertThat(lookups).hasSize(1)
+    }
+
+    @Test
+    fun resolve_afterTtl_looksUpAgain() {
+        cache.resolve("example.com")
+        now = 1000
+        cache.resolve("example.com")
+
+        assertThat(lookups).hasSize(2)
+    }
+
+    @Test
+    fun resolve_failure_isCachedForNegativeTtl() {
+        answer = { throw UnknownHostException("example.invalid") }
+
+        assertThatThrownBy { cache.resolve("example.invalid") }.isInstanceOf(UnknownHostException::class.java)
+        assertThatThrownBy { cache.resolve("example.invalid") }.isInstanceOf(UnknownHostException::class.java)
+        assertThat(lookups).hasSize(1)
+
+        now = 100
+        answer = { arrayOf(address) }
+        assertThat(cache.resolve("example.invalid")).containsExactly(address)
+    }
+
+    @Test
+    fun invalidate_dropsEverything() {
+        cache.resolve("example.com")
+        cache.invalidate()
+        cache.resolve("example.com")
+
+        assertThat(lookups).hasSize(2)
+    }
+
+    @Test
+    fun invalidate_duringLookup_answerIsNotCached() {
+        answer = {
+            cache.invalidate()
+            arrayOf(address)
+        }
+        cache.resolve("example.com")
+        answer = { arrayOf(address) }
+        cache.resolve("example.com")
+
+        assertThat(lookups).hasSize(2)
+    }
+
+    @Test
+    fun forget_dropsOneName() {
+        cache.resolve("a.example.com")
+        cache.resolve("b.example.com")
+        cache.forget("a.example.com")
+        cache.resolve("a.example.com")
+        cache.resolve("b.example.com")
+
+        assertThat(lookups).containsExactly("a.example.com", "b.example.com", "a.example.com")
+    }
+
+    @Test
+    fun prefetch_resolvesInOrderAndIgnoresFailures() {
+        answer = { throw UnknownHostException() }
+        cache.prefetch(listOf("first.example.com", "second.example.com"))
+
+        assertThat(lookups).containsExactly("first.example.com", "second.example.com")
+    }
+}
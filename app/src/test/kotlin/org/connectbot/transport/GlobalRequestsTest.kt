@@ -0,0 +1,66 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+
+class GlobalRequestsTest {
+    private val requests = GlobalRequests()
+
+    @Test
+    fun send_neverOverlapsAnotherRequest() {
+        val outstanding = AtomicInteger()
+        val mostOutstanding = AtomicInteger()
+        val threads = (1..4).map {
+            thread {
+                repeat(50) {
+                    requests.send {
+                        mostOutstanding.accumulateAndGet(outstanding.incrementAndGet(), ::maxOf)
+                        Thread.sleep(1)
+                        outstanding.decrementAndGet()
+                    }
+                }
+            }
+        }
+        threads.forEach { it.join() }
+
+        assertThat(mostOutstanding.get()).isEqualTo(1)
+    }
+
+    @Test
+    fun keepalive_waitsUntilForwardSetupReleasesIt() {
+        requests.holdKeepalives()
+        val sent = CountDownLatch(1)
+        thread(isDaemon = true) {
+            requests.keepalive { sent.countDown() }
+        }
+
+        // Forward setup's own requests still go out while keepalives are held.
+        assertThat(requests.send { true }).isTrue()
+        assertThat(sent.await(100, TimeUnit.MILLISECONDS)).isFalse()
+
+        requests.releaseKeepalives()
+
+        assertThat(sent.await(5, TimeUnit.SECONDS)).isTrue()
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.connectbot.util.HostConstants
+import org.junit.Test
+import java.net.ConnectException
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.Socket
+import java.net.SocketAddress
+import java.net.SocketException
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+
+class HappyEyeballsConnectorTest {
+    private val v6a = InetAddress.getByName("2001:db8::1")
+    private val v6b = InetAddress.getByName("2001:db8::2")
+    private val v4a = InetAddress.getByName("192.0.2.1")
+    private val v4b = InetAddress.getByName("192.0.2.2")
+
+    private enum class Outcome { ACCEPT, REFUSE, HANG }
+
+    /** Connects, refuses or hangs until closed, depending on the address. */
+    private class FakeSocket(private val outcomes: Map<InetAddress, Outcome>) : Socket() {
+        private val closedLatch = CountDownLatch(1)
+        var attempted: InetAddress? = null
+
+        val closed: Boolean
+            get() = closedLatch.count == 0L
+
+        override fun connect(endpoint: SocketAddress, timeout: Int) {
+            val address = (endpoint as InetSocketAddress).address
+            attempted = address
+            when (outcomes.getValue(address)) {
+                Outcome.ACCEPT -> return
+                Outcome.REFUSE -> throw ConnectException("refused by $address")
+                Outcome.HANG -> {
+                    closedLatch.await()
+                    throw SocketException("closed")
+                }
+            }
+        }
+
+        override fun close() {
+            closedLatch.countDown()
+        }
+    }
+
+    private val sockets: MutableList<FakeSocket> = Collections.synchronizedList(mutableListOf())
+
+    private fun connector(
+        outcomes: Map<InetAddress, Outcome>,
+        attemptDelayMillis: Long = 50,
+    ) = HappyEyeballsConnector(
+        resolver = { outcomes.keys.toTypedArray() },
+        socketFactory = { FakeSocket(outcomes).also { sockets += it } },
+        attemptDelayMillis = attemptDelayMillis,
+    )
+
+    @Test
+    fun interleave_alternatesFamiliesStartingWithFirst() {
+        assertThat(HappyEyeballsConnector.interleave(listOf(v6a, v6b, v4a, v4b)))
+            .containsExactly(v6a, v4a, v6b, v4b)
+        assertThat(HappyEyeballsConnector.interleave(listOf(v4a, v6a, v6b)))
+            .containsExactly(v4a, v6a, v6b)
+    }
+
+    @Test
+    fun filter_ipVersionOnlyApplies_toNames() {
+        val all = listOf(v6a, v4a)
+
+        assertThat(HappyEyeballsConnector.filter("example.com", all, HostConstants.IPVERSION_IPV4_ONLY))
+            .containsExactly(v4a)
+        assertThat(HappyEyeballsConnector.filter("example.com", all, HostConstants.IPVERSION_IPV6_ONLY))
+            .containsExactly(v6a)
+        assertThat(HappyEyeballsConnector.filter("192.0.2.1", all, HostConstants.IPVERSION_IPV6_ONLY))
+            .containsExactly(v6a, v4a)
+    }
+
+    @Test(timeout = 5000)
+    fun connect_firstAddressHangs_nextWinsAndLoserIsClosed() {
+        val result = connector(linkedMapOf(v6a to Outcome.HANG, v4a to Outcome.ACCEPT))
+            .connect("example.com", 22, HostConstants.IPVERSION_IPV4_AND_IPV6)
+
+        assertThat(result.address).isEqualTo(InetSocketAddress(v4a, 22))
+        assertThat(result.elapsedMillis).isGreaterThanOrEqualTo(50)
+        assertThat(sockets.single { it.attempted == v6a }.closed).isTrue()
+        assertThat((result.socket as FakeSocket).closed).isFalse()
+    }
+
+    @Test(timeout = 5000)
+    fun connect_firstAddressRefused_startsNextWithoutWaiting() {
+        val result = connector(linkedMapOf(v6a to Outcome.REFUSE, v4a to Outcome.ACCEPT), attemptDelayMillis = 60_000)
+            .connect("example.com", 22, HostConstants.IPVERSION_IPV4_AND_IPV6)
+
+        assertThat(result.address.address).isEqualTo(v4a)
+    }
+
+    @Test(timeout = 5000)
+    fun connect_everyAddressRefused_throwsLastError() {
+        val connector = connector(linkedMapOf(v6a to Outcome.REFUSE, v4a to Outcome.REFUSE))
+
+        assertThatThrownBy { connector.connect("example.com", 22, HostConstants.IPVERSION_IPV4_AND_IPV6) }
+            .isInstanceOf(ConnectException::class.java)
+        assertThat(sockets).allMatch { it.closed }
+    }
+
+    @Test(timeout = 5000)
+    fun connect_ipv6Only_neverTriesIpv4() {
+        val connector = connector(linkedMapOf(v4a to Outcome.ACCEPT, v6a to Outcome.REFUSE))
+
+        assertThatThrownBy { connector.connect("example.com", 22, HostConstants.IPVERSION_IPV6_ONLY) }
+            .isInstanceOf(ConnectException::class.java)
+        assertThat(sockets.map { it.attempted }).containsExactly(v6a)
+    }
+}
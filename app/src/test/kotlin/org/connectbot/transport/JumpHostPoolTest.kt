@@ -0,0 +1,179 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import com.trilead.ssh2.Connection
+import com.trilead.ssh2.ConnectionMonitor
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.advanceTimeBy
+import kotlinx.coroutines.test.runCurrent
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import org.mockito.kotlin.argumentCaptor
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.doThrow
+import org.mockito.kotlin.inOrder
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.verify
+import java.io.IOException
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class JumpHostPoolTest {
+    private val scope = TestScope()
+    private val pool = JumpHostPool(
+        scope,
+        idleTimeoutMillis = IDLE_TIMEOUT,
+        healthCheckAfterMillis = HEALTH_CHECK_AFTER,
+        clock = { scope.testScheduler.currentTime },
+    )
+
+    private fun authenticatedConnection(): Connection = mock {
+        on { isAuthenticationComplete } doReturn true
+    }
+
+    @Test
+    fun acquire_twice_opensOnceAndShares() {
+        val connection = authenticatedConnection()
+        var opens = 0
+
+        val first = pool.acquire(JUMP_HOST) { opens++; JumpHostPool.Opened(connection) }!!
+        val second = pool.acquire(JUMP_HOST) { opens++; JumpHostPool.Opened(authenticatedConnection()) }!!
+
+        assertThat(opens).isEqualTo(1)
+        assertThat(first.reused).isFalse()
+        assertThat(second.reused).isTrue()
+        assertThat(second.connection).isSameAs(connection)
+        assertThat(pool.references(JUMP_HOST)).isEqualTo(2)
+    }
+
+    @Test
+    fun acquire_openFails_returnsNull() {
+        assertThat(pool.acquire(JUMP_HOST) { null }).isNull()
+        assertThat(pool.references(JUMP_HOST)).isEqualTo(0)
+    }
+
+    @Test
+    fun release_lastLease_closesAfterIdleTimeout() {
+        val connection = authenticatedConnection()
+        val first = pool.acquire(JUMP_HOST) { JumpHostPool.Opened(connection) }!!
+        val second = pool.acquire(JUMP_HOST) { null }!!
+
+        first.close()
+        second.close()
+        scope.advanceTimeBy(IDLE_TIMEOUT - 1)
+        scope.runCurrent()
+        verify(connection, never()).close()
+
+        scope.advanceTimeBy(2)
+        scope.runCurrent()
+        verify(connection).close()
+    }
+
+    @Test
+    fun acquire_whileIdle_cancelsExpiry() {
+        val connection = authenticatedConnection()
+        pool.acquire(JUMP_HOST) { JumpHostPool.Opened(connection) }!!.close()
+
+        scope.advanceTimeBy(IDLE_TIMEOUT / 2)
+        val lease = pool.acquire(JUMP_HOST) { null }
+        scope.advanceTimeBy(IDLE_TIMEOUT * 2)
+        scope.runCurrent()
+
+        assertThat(lease?.reused).isTrue()
+        verify(connection, never()).close()
+    }
+
+    @Test
+    fun close_twice_onlyReleasesOnce() {
+        val lease = pool.acquire(JUMP_HOST) { JumpHostPool.Opened(authenticatedConnection()) }!!
+        pool.acquire(JUMP_HOST) { null }
+
+        lease.close()
+        lease.close()
+
+        assertThat(pool.references(JUMP_HOST)).isEqualTo(1)
+    }
+
+    @Test
+    fun acquire_staleConnectionFailsPing_opensReplacement() {
+        val dead: Connection = mock {
+            on { isAuthenticationComplete } doReturn true
+            on { ping() } doThrow IOException("timed out")
+        }
+        val replacement = authenticatedConnection()
+        pool.acquire(JUMP_HOST) { JumpHostPool.Opened(dead) }!!.close()
+
+        scope.advanceTimeBy(HEALTH_CHECK_AFTER)
+        val lease = pool.acquire(JUMP_HOST) { JumpHostPool.Opened(replacement) }!!
+
+        assertThat(lease.reused).isFalse()
+        assertThat(lease.connection).isSameAs(replacement)
+        verify(dead).close()
+    }
+
+    @Test
+    fun acquire_recentlyChecked_skipsPing() {
+        val connection = authenticatedConnection()
+        pool.acquire(JUMP_HOST) { JumpHostPool.Opened(connection) }!!.close()
+
+        pool.acquire(JUMP_HOST) { null }
+
+        verify(connection, never()).ping()
+    }
+
+    @Test
+    fun connectionLost_replacedForNewSessionsAndClosedWhenReleased() {
+        val lost = authenticatedConnection()
+        val held = pool.acquire(JUMP_HOST) { JumpHostPool.Opened(lost) }!!
+        val monitor = argumentCaptor<ConnectionMonitor>()
+        verify(lost).addConnectionMonitor(monitor.capture())
+
+        monitor.firstValue.connectionLost(IOException("reset"))
+        val replacement = authenticatedConnection()
+        val lease = pool.acquire(JUMP_HOST) { JumpHostPool.Opened(replacement) }!!
+
+        assertThat(lease.connection).isSameAs(replacement)
+        verify(lost, never()).close()
+
+        held.close()
+        verify(lost).close()
+        assertThat(pool.references(JUMP_HOST)).isEqualTo(1)
+    }
+
+    @Test
+    fun expiry_closesConnectionThenDependencies() {
+        val connection = authenticatedConnection()
+        val nested = mock<AutoCloseable>()
+        pool.acquire(JUMP_HOST) { JumpHostPool.Opened(connection, listOf(nested)) }!!.close()
+
+        pool.closeIdle()
+
+        inOrder(connection, nested) {
+            verify(connection).close()
+            verify(nested).close()
+        }
+    }
+
+    companion object {
+        private const val JUMP_HOST = 3L
+        private const val IDLE_TIMEOUT = 60_000L
+        private const val HEALTH_CHECK_AFTER = 10_000L
+    }
+}
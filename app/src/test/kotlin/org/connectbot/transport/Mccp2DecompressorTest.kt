@@ -0,0 +1,64 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.connectbot.transport
+
+import de.mud.telnet.TelnetProtocolHandler
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import org.mockito.kotlin.mock
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.util.zip.Deflater
+
+class Mccp2DecompressorTest {
+    @Test
+    fun read_afterClose_reportsEndOfStream() {
+        val decompressor = Mccp2Decompressor()
+        decompressor.start(mock<TelnetProtocolHandler>())
+        val source = ByteArrayInputStream(deflate("hello, world".toByteArray()))
+        val buffer = ByteArray(4)
+
+        // The inflater still holds input when it is closed.
+        assertThat(decompressor.read(source, buffer, 0, buffer.size)).isEqualTo(4)
+        decompressor.close()
+
+        assertThat(decompressor.read(source, buffer, 0, buffer.size)).isEqualTo(-1)
+    }
+
+    @Test
+    fun close_twice_isHarmless() {
+        val decompressor = Mccp2Decompressor()
+
+        decompressor.close()
+        decompressor.close()
+
+        assertThat(decompressor.read(ByteArrayInputStream(ByteArray(0)), ByteArray(1), 0, 1)).isEqualTo(-1)
+    }
+
+    private fun deflate(data: ByteArray): ByteArray {
+        val deflater = Deflater()
+        deflater.setInput(data)
+        deflater.finish()
+        val out = ByteArrayOutputStream()
+        val buffer = ByteArray(1024)
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer))
+        }
+        deflater.end()
+        return out.toByteArray()
+    }
+}
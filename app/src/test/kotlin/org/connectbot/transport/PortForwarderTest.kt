@@ -0,0 +1,205 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Test
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.IOException
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.util.Collections
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+class PortForwarderTest {
+    private val loopback = InetAddress.getLoopbackAddress()
+    private val closeables = mutableListOf<Closeable>()
+    private val opened: MutableList<Pair<String, Int>> = Collections.synchronizedList(mutableListOf())
+
+    @After
+    fun tearDown() {
+        closeables.forEach { runCatching { it.close() } }
+    }
+
+    /** Stands in for the SSH server: echoes back whatever each connection sends. */
+    private fun echoServer(): ServerSocket {
+        val server = ServerSocket(0, 50, loopback).also { closeables += it }
+        thread(isDaemon = true) {
+            while (true) {
+                val socket = try {
+                    server.accept()
+                } catch (e: IOException) {
+                    return@thread
+                }
+                thread(isDaemon = true) {
+                    socket.use { it.getInputStream().copyTo(it.getOutputStream()) }
+                }
+            }
+        }
+        return server
+    }
+
+    /** Every "channel" goes to the echo server, whatever host was asked for. */
+    private fun channelsTo(server: ServerSocket): (String, Int) -> Socket = { host, port ->
+        opened += host to port
+        Socket(loopback, server.localPort)
+    }
+
+    private fun bindAddress() = InetSocketAddress(loopback, 0)
+
+    private fun connect(forwarder: PortForwarder) = Socket(loopback, forwarder.localPort).also {
+        closeables += it
+        it.soTimeout = TIMEOUT_MILLIS
+    }
+
+    private fun awaitIdle(forwarder: PortForwarder): ForwardStatistics.Snapshot {
+        val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS.toLong())
+        while (System.nanoTime() < deadline) {
+            val snapshot = forwarder.statistics.snapshot()
+            if (snapshot.activeConnections == 0) {
+                return snapshot
+            }
+            Thread.sleep(10)
+        }
+        throw AssertionError("Forwarded connections never closed")
+    }
+
+    @Test
+    fun local_carriesDataBothWaysAndCountsIt() {
+        val server = echoServer()
+        val forwarder = PortForwarder.local(bindAddress(), "db.internal", 5432, channelsTo(server))
+            .also { closeables += it }
+        val payload = ByteArray(64 * 1024) { it.toByte() }
+
+        val client = connect(forwarder)
+        thread(isDaemon = true) {
+            client.getOutputStream().write(payload)
+            client.shutdownOutput()
+        }
+        val echoed = client.getInputStream().readBytes()
+
+        assertThat(echoed).isEqualTo(payload)
+        assertThat(opened).containsExactly("db.internal" to 5432)
+        val stats = awaitIdle(forwarder)
+        assertThat(stats.totalConnections).isEqualTo(1)
+        assertThat(stats.bytesSent).isEqualTo(payload.size.toLong())
+        assertThat(stats.bytesReceived).isEqualTo(payload.size.toLong())
+    }
+
+    @Test
+    fun dynamic_socks5_connectsToRequestedHost() {
+        val server = echoServer()
+        val forwarder = PortForwarder.dynamic(bindAddress(), channelsTo(server)).also { closeables += it }
+        val client = connect(forwarder)
+        val output = client.getOutputStream()
+        val input = DataInputStream(client.getInputStream())
+
+        output.write(byteArrayOf(5, 1, 0))
+        assertThat(ByteArray(2).also { input.readFully(it) }).isEqualTo(byteArrayOf(5, 0))
+        val host = "example.test".toByteArray()
+        output.write(byteArrayOf(5, 1, 0, 3, host.size.toByte()) + host + byteArrayOf(0x1f, 0x90.toByte()))
+        val reply = ByteArray(10).also { input.readFully(it) }
+        assertThat(reply[1]).isEqualTo(0.toByte())
+
+        output.write("ping".toByteArray())
+        assertThat(ByteArray(4).also { input.readFully(it) }).isEqualTo("ping".toByteArray())
+        assertThat(opened).containsExactly("example.test" to 8080)
+    }
+
+    @Test
+    fun dynamic_socks4a_connectsToRequestedHost() {
+        val server = echoServer()
+        val forwarder = PortForwarder.dynamic(bindAddress(), channelsTo(server)).also { closeables += it }
+        val client = connect(forwarder)
+        val input = DataInputStream(client.getInputStream())
+
+        client.getOutputStream().write(
+            byteArrayOf(4, 1, 0, 80, 0, 0, 0, 1) + "me".toByteArray() + 0.toByte() + "example.test".toByteArray() + 0.toByte(),
+        )
+        val reply = ByteArray(8).also { input.readFully(it) }
+
+        assertThat(reply[1]).isEqualTo(0x5a.toByte())
+        assertThat(opened).containsExactly("example.test" to 80)
+    }
+
+    @Test
+    fun dynamic_channelRefused_repliesFailure() {
+        val forwarder = PortForwarder.dynamic(bindAddress(), { _, _ -> throw IOException("administratively prohibited") })
+            .also { closeables += it }
+        val client = connect(forwarder)
+        val input = DataInputStream(client.getInputStream())
+
+        client.getOutputStream().write(byteArrayOf(5, 1, 0))
+        input.readFully(ByteArray(2))
+        client.getOutputStream().write(byteArrayOf(5, 1, 0, 1, 10, 0, 0, 1, 0, 22))
+        val reply = ByteArray(10).also { input.readFully(it) }
+
+        assertThat(reply[1]).isEqualTo(1.toByte())
+        assertThat(input.read()).isEqualTo(-1)
+        assertThat(awaitIdle(forwarder).totalConnections).isEqualTo(1)
+    }
+
+    @Test
+    fun close_dropsConnectionsInFlight() {
+        val server = echoServer()
+        val forwarder = PortForwarder.local(bindAddress(), "db.internal", 5432, channelsTo(server))
+        val client = connect(forwarder)
+        client.getOutputStream().write(1)
+        assertThat(client.getInputStream().read()).isEqualTo(1)
+
+        forwarder.close()
+
+        assertThat(runCatching { client.getInputStream().read() }.getOrDefault(-1)).isEqualTo(-1)
+        assertThat(awaitIdle(forwarder).activeConnections).isZero()
+    }
+
+    @Test
+    fun bufferPool_reusesReleasedBuffersUpToLimit() {
+        val pool = ForwardBufferPool(bufferSize = 16, maxPooled = 1)
+        val first = pool.acquire()
+        val second = pool.acquire()
+
+        pool.release(first)
+        pool.release(second)
+
+        assertThat(pool.acquire()).isSameAs(first)
+        assertThat(pool.acquire()).isNotSameAs(second)
+    }
+
+    @Test
+    fun statistics_ratesCoverTimeSincePreviousSnapshot() {
+        var now = 0L
+        val stats = ForwardStatistics(clock = { now })
+        stats.recordSent(1000)
+        now = TimeUnit.MILLISECONDS.toNanos(500)
+
+        assertThat(stats.snapshot().sendBytesPerSecond).isEqualTo(2000)
+
+        now += TimeUnit.SECONDS.toNanos(1)
+        assertThat(stats.snapshot().sendBytesPerSecond).isZero()
+    }
+
+    companion object {
+        private const val TIMEOUT_MILLIS = 5_000
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.advanceTimeBy
+import kotlinx.coroutines.test.runCurrent
+import org.assertj.core.api.Assertions.assertThat
+import org.connectbot.data.entity.Host
+import org.junit.Test
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class PreconnectorTest {
+    private val scope = TestScope()
+    private val opened = mutableListOf<Long>()
+    private var closes = 0
+    private var canConnect = true
+
+    private val preconnector = Preconnector(scope, idleTimeoutMillis = IDLE_TIMEOUT) { host ->
+        opened += host.id
+        if (canConnect) AutoCloseable { closes++ } else null
+    }
+
+    private val host = Host(id = 1L, nickname = "likely", username = "alice", hostname = "example.com")
+
+    @Test
+    fun warmUp_sameHostTwice_opensOnce() {
+        preconnector.warmUp(listOf(host))
+        preconnector.warmUp(listOf(host))
+        scope.runCurrent()
+
+        assertThat(opened).containsExactly(host.id)
+        assertThat(preconnector.isWarm(host.id)).isTrue()
+    }
+
+    @Test
+    fun warmUp_unclaimed_closesAfterIdleTimeout() {
+        preconnector.warmUp(listOf(host))
+        scope.runCurrent()
+
+        scope.advanceTimeBy(IDLE_TIMEOUT - 1)
+        scope.runCurrent()
+        assertThat(closes).isEqualTo(0)
+
+        scope.advanceTimeBy(1)
+        scope.runCurrent()
+        assertThat(closes).isEqualTo(1)
+        assertThat(preconnector.isWarm(host.id)).isFalse()
+    }
+
+    @Test
+    fun release_closesAtOnce() {
+        preconnector.warmUp(listOf(host))
+        scope.runCurrent()
+
+        preconnector.awaitOpened(host.id)
+        preconnector.release(host.id)
+        scope.runCurrent()
+
+        assertThat(closes).isEqualTo(1)
+        assertThat(preconnector.isWarm(host.id)).isFalse()
+    }
+
+    @Test
+    fun warmUp_cannotConnect_canBeTriedAgain() {
+        canConnect = false
+        preconnector.warmUp(listOf(host))
+        scope.runCurrent()
+        assertThat(preconnector.isWarm(host.id)).isFalse()
+
+        preconnector.warmUp(listOf(host))
+        scope.runCurrent()
+        assertThat(opened).containsExactly(host.id, host.id)
+    }
+
+    @Test
+    fun releaseAll_beforeOpening_nothingIsOpened() {
+        preconnector.warmUp(listOf(host, host.copy(id = 2L)))
+        preconnector.releaseAll()
+        scope.runCurrent()
+
+        assertThat(opened).isEmpty()
+        // Nothing is being opened, so there is nothing to wait for.
+        preconnector.awaitOpened(host.id)
+    }
+
+    companion object {
+        private const val IDLE_TIMEOUT = 60_000L
+    }
+}
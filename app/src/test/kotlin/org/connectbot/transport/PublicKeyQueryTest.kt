@@ -0,0 +1,137 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import com.trilead.ssh2.Connection
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import org.mockito.kotlin.mock
+import java.io.DataInputStream
+import java.security.KeyPairGenerator
+import java.security.PublicKey
+import java.security.spec.ECGenParameterSpec
+
+class PublicKeyQueryTest {
+    private fun rsaKey(): PublicKey = KeyPairGenerator.getInstance("RSA").apply { initialize(2048) }.generateKeyPair().public
+
+    private fun ecKey(): PublicKey = KeyPairGenerator.getInstance("EC").apply { initialize(ECGenParameterSpec("secp256r1")) }.generateKeyPair().public
+
+    /** Records what is sent and answers with [reply]. */
+    private class FakeChannel(
+        private val reply: ByteArray,
+        private val serverSignatureAlgorithms: Set<String>? = null,
+    ) : PublicKeyQuery.Channel {
+        val sent = mutableListOf<ByteArray>()
+
+        override fun send(message: ByteArray) {
+            sent += message
+        }
+
+        override fun receive(): ByteArray = reply
+
+        override fun serverSignatureAlgorithms(): Set<String>? = serverSignatureAlgorithms
+    }
+
+    /** The fields of a "publickey" query without a signature, in order. */
+    private fun parseQuery(message: ByteArray): List<Any> {
+        val input = DataInputStream(message.inputStream())
+        fun string() = ByteArray(input.readInt()).also { input.readFully(it) }
+        return listOf(
+            input.readByte().toInt(),
+            String(string()),
+            String(string()),
+            String(string()),
+            input.readBoolean(),
+            String(string()),
+            string().toList(),
+        )
+    }
+
+    @Test
+    fun keyFormat_ecKey_namesCurve() {
+        val blob = PublicKeyQuery.encode(ecKey())!!
+
+        assertThat(PublicKeyQuery.keyFormat(blob)).isEqualTo("ecdsa-sha2-nistp256")
+    }
+
+    @Test
+    fun rsaAlgorithm_followsServerSignatureAlgorithms() {
+        assertThat(PublicKeyQuery.rsaAlgorithm(setOf("ssh-ed25519", "rsa-sha2-256", "rsa-sha2-512"))).isEqualTo("rsa-sha2-512")
+        assertThat(PublicKeyQuery.rsaAlgorithm(setOf("rsa-sha2-256"))).isEqualTo("rsa-sha2-256")
+        assertThat(PublicKeyQuery.rsaAlgorithm(setOf("ssh-ed25519"))).isEqualTo("ssh-rsa")
+        assertThat(PublicKeyQuery.rsaAlgorithm(null)).isEqualTo("ssh-rsa")
+    }
+
+    @Test
+    fun isAccepted_pkOk_sendsQueryAndAccepts() {
+        val channel = FakeChannel(byteArrayOf(60))
+        val blob = PublicKeyQuery.encode(ecKey())!!
+
+        val accepted = PublicKeyQuery(mock<Connection>()) { channel }.isAccepted("alice", blob)
+
+        assertThat(accepted).isTrue()
+        assertThat(channel.sent).hasSize(1)
+        assertThat(parseQuery(channel.sent.single())).containsExactly(
+            50,
+            "alice",
+            "ssh-connection",
+            "publickey",
+            false,
+            "ecdsa-sha2-nistp256",
+            blob.toList(),
+        )
+    }
+
+    @Test
+    fun isAccepted_failureReply_rejects() {
+        val query = PublicKeyQuery(mock<Connection>()) { FakeChannel(byteArrayOf(51, 0, 0, 0, 0, 0)) }
+
+        assertThat(query.isAccepted("alice", ecKey())).isFalse()
+    }
+
+    @Test
+    fun isAccepted_unexpectedReply_isUnknown() {
+        val query = PublicKeyQuery(mock<Connection>()) { FakeChannel(byteArrayOf(52)) }
+
+        assertThat(query.isAccepted("alice", ecKey())).isNull()
+    }
+
+    @Test
+    fun isAccepted_rsaKey_asksOnceWithServerAlgorithm() {
+        val channel = FakeChannel(byteArrayOf(51), setOf("rsa-sha2-256"))
+
+        PublicKeyQuery(mock<Connection>()) { channel }.isAccepted("alice", rsaKey())
+
+        assertThat(channel.sent).hasSize(1)
+        assertThat(parseQuery(channel.sent.single())[5]).isEqualTo("rsa-sha2-256")
+    }
+
+    @Test
+    fun isAccepted_unsupportedKeyType_isUnknown() {
+        val query = PublicKeyQuery(mock<Connection>())
+
+        assertThat(query.isAccepted("alice", mock<PublicKey>())).isNull()
+    }
+
+    @Test
+    fun isAccepted_connectionNotEstablished_isUnknown() {
+        val query = PublicKeyQuery(Connection("example.com", 22))
+
+        assertThat(query.isAccepted("alice", ecKey())).isNull()
+    }
+}
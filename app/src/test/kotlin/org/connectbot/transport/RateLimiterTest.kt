@@ -0,0 +1,75 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class RateLimiterTest {
+    private var now = 0L
+    private val sleeps = mutableListOf<Long>()
+
+    private fun limiter(bytesPerSecond: Long) = RateLimiter(
+        bytesPerSecond = bytesPerSecond,
+        clock = { now },
+        sleep = { millis ->
+            sleeps += millis
+            now += TimeUnit.MILLISECONDS.toNanos(millis)
+        },
+    )
+
+    @Test
+    fun acquire_pacesBytesToRate() {
+        val limiter = limiter(1000)
+
+        limiter.acquire(500)
+        limiter.acquire(500)
+        limiter.acquire(1000)
+
+        assertThat(sleeps).containsExactly(500L, 500L)
+    }
+
+    @Test
+    fun acquire_idleTimeIsNotBankedBeyondNow() {
+        val limiter = limiter(1000)
+        limiter.acquire(1000)
+        now += TimeUnit.SECONDS.toNanos(10)
+
+        limiter.acquire(1000)
+        limiter.acquire(1000)
+
+        assertThat(sleeps).containsExactly(1000L)
+    }
+
+    @Test
+    fun acquire_unlimited_neverSleeps() {
+        val limiter = limiter(0)
+
+        limiter.acquire(1_000_000)
+
+        assertThat(sleeps).isEmpty()
+    }
+
+    @Test
+    fun chunkSize_followsRate() {
+        assertThat(limiter(0).chunkSize(32 * 1024)).isEqualTo(32 * 1024)
+        assertThat(limiter(100 * 1024).chunkSize(32 * 1024)).isEqualTo(10 * 1024)
+        assertThat(limiter(1).chunkSize(32 * 1024)).isEqualTo(512)
+    }
+}
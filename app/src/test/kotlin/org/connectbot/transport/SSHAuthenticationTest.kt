@@ -0,0 +1,101 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import com.trilead.ssh2.Connection
+import com.trilead.ssh2.InteractiveCallback
+import org.assertj.core.api.Assertions.assertThat
+import org.connectbot.data.entity.Host
+import org.connectbot.service.TerminalBridge
+import org.connectbot.util.HostConstants
+import org.junit.Test
+import org.mockito.kotlin.any
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.inOrder
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verify
+
+/**
+ * Authentication against a stand-in for a server that rejects "none", then fails one
+ * keyboard-interactive round before accepting the next.
+ */
+class SSHAuthenticationTest {
+    private val bridge = mock<TerminalBridge>()
+
+    private var interactiveRounds = 0
+
+    private val server: Connection = mock {
+        on { authenticateWithNone("alice") } doReturn false
+        on { getRemainingAuthMethods("alice") } doReturn arrayOf("keyboard-interactive")
+        on { authenticateWithKeyboardInteractive(eq("alice"), any()) } doAnswer { invocation ->
+            // An empty challenge still counts as the server asking, so the client may retry.
+            val callback = invocation.getArgument<InteractiveCallback>(1)
+            callback.replyToChallenge("", "", 0, emptyArray(), BooleanArray(0))
+            ++interactiveRounds > 1
+        }
+    }
+
+    private val ssh = SSH().apply {
+        setHost(
+            Host(
+                nickname = "target",
+                username = "alice",
+                hostname = "example.com",
+                pubkeyId = HostConstants.PUBKEYID_NEVER,
+                wantSession = false,
+            ),
+        )
+        setBridge(bridge)
+        setConnectionForTesting(server)
+    }
+
+    @Test
+    fun authenticate_keyboardInteractiveMiss_retriesWithoutSleeping() {
+        val started = System.nanoTime()
+        ssh.authenticate()
+        val elapsedMillis = (System.nanoTime() - started) / 1_000_000
+
+        inOrder(server) {
+            verify(server).authenticateWithNone("alice")
+            verify(server, times(2)).authenticateWithKeyboardInteractive(eq("alice"), any())
+        }
+        verify(bridge).onConnected()
+        // The old loop slept for a second after each of these two rounds.
+        assertThat(elapsedMillis).isLessThan(1000)
+    }
+
+    @Test
+    fun authenticate_noMethodLeft_stopsWithoutRetrying() {
+        val rejecting: Connection = mock {
+            on { authenticateWithNone("alice") } doReturn false
+            on { getRemainingAuthMethods("alice") } doReturn arrayOf("keyboard-interactive")
+            on { authenticateWithKeyboardInteractive(eq("alice"), any()) } doReturn false
+        }
+        ssh.setConnectionForTesting(rejecting)
+
+        ssh.authenticate()
+
+        // No challenge was sent, so there is no point asking again.
+        verify(rejecting, times(1)).authenticateWithKeyboardInteractive(eq("alice"), any())
+        verify(bridge, never()).onConnected()
+    }
+}
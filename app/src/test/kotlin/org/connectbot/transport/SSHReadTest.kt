@@ -0,0 +1,106 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import com.trilead.ssh2.ChannelCondition
+import com.trilead.ssh2.Session
+import org.assertj.core.api.Assertions.assertThat
+import org.connectbot.service.DisconnectReason
+import org.connectbot.service.TerminalBridge
+import org.junit.Assert.assertThrows
+import org.junit.Test
+import org.mockito.ArgumentMatchers.anyInt
+import org.mockito.ArgumentMatchers.anyLong
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.never
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.`when`
+import java.io.ByteArrayInputStream
+import java.io.IOException
+import java.io.PipedInputStream
+import java.io.PipedOutputStream
+
+class SSHReadTest {
+    @Test
+    fun read_bufferedData_drainsWithoutWaiting() {
+        val session = mock(Session::class.java)
+        val ssh = SSH().apply {
+            setSessionForTesting(
+                session,
+                ByteArrayInputStream("hello ".toByteArray()),
+                ByteArrayInputStream("world".toByteArray()),
+            )
+        }
+
+        val buffer = ByteArray(64)
+        val bytesRead = ssh.read(buffer, 0, buffer.size)
+
+        assertThat(String(buffer, 0, bytesRead)).isEqualTo("hello world")
+        verify(session, never()).waitForCondition(anyInt(), anyLong())
+    }
+
+    @Test
+    fun read_bufferedData_stopsAtRequestedLength() {
+        val session = mock(Session::class.java)
+        val ssh = SSH().apply {
+            setSessionForTesting(session, ByteArrayInputStream("abcdef".toByteArray()), ByteArrayInputStream(ByteArray(0)))
+        }
+
+        val buffer = ByteArray(8)
+        assertThat(ssh.read(buffer, 2, 4)).isEqualTo(4)
+        assertThat(String(buffer, 2, 4)).isEqualTo("abcd")
+        assertThat(ssh.read(buffer, 0, 8)).isEqualTo(2)
+        assertThat(String(buffer, 0, 2)).isEqualTo("ef")
+    }
+
+    @Test
+    fun read_emptyChannel_waitsThenDrains() {
+        val session = mock(Session::class.java)
+        val stdout = PipedInputStream()
+        val stdoutWriter = PipedOutputStream(stdout)
+        `when`(session.waitForCondition(anyInt(), anyLong())).thenAnswer {
+            stdoutWriter.write("late".toByteArray())
+            ChannelCondition.STDOUT_DATA
+        }
+        val ssh = SSH().apply {
+            setSessionForTesting(session, stdout, ByteArrayInputStream(ByteArray(0)))
+        }
+
+        val buffer = ByteArray(16)
+        val bytesRead = ssh.read(buffer, 0, buffer.size)
+
+        assertThat(String(buffer, 0, bytesRead)).isEqualTo("late")
+        verify(session).waitForCondition(anyInt(), anyLong())
+    }
+
+    @Test
+    fun read_remoteEof_dispatchesDisconnect() {
+        val bridge = mock(TerminalBridge::class.java)
+        val session = mock(Session::class.java)
+        `when`(session.waitForCondition(anyInt(), anyLong())).thenReturn(ChannelCondition.EOF)
+        val ssh = SSH().apply {
+            setBridge(bridge)
+            setSessionForTesting(session, ByteArrayInputStream(ByteArray(0)), ByteArrayInputStream(ByteArray(0)))
+        }
+
+        assertThrows(IOException::class.java) {
+            ssh.read(ByteArray(16), 0, 16)
+        }
+        verify(bridge).dispatchDisconnect(DisconnectReason.REMOTE_EOF)
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import com.trilead.ssh2.Connection
+import com.trilead.ssh2.ConnectionMonitor
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import org.mockito.kotlin.any
+import org.mockito.kotlin.argumentCaptor
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.inOrder
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verify
+
+class SshConnectionPoolTest {
+    private val pool = SshConnectionPool()
+    private val key = SshConnectionPool.Key(
+        hostId = 1L,
+        hostname = "example.com",
+        port = 22,
+        username = "user",
+        jumpHostId = null,
+        hostKeyAlgo = null,
+        useKeys = true,
+        pubkeyId = -1L,
+        useAuthAgent = "no",
+        compression = false,
+    )
+
+    private fun authenticatedConnection(): Connection = mock {
+        on { isAuthenticationComplete } doReturn true
+    }
+
+    private fun monitor(): SshConnectionPool.LossMonitor = SshConnectionPool.LossMonitor(mock())
+
+    @Test
+    fun acquire_emptyPool_returnsNull() {
+        assertThat(pool.acquire(key, monitor(), shareInUse = true)).isNull()
+    }
+
+    @Test
+    fun acquire_registeredConnection_sharesIt() {
+        val connection = authenticatedConnection()
+        pool.register(key, connection, emptyList(), monitor())
+
+        val lease = pool.acquire(key, monitor(), shareInUse = true)
+
+        assertThat(lease?.connection).isSameAs(connection)
+        assertThat(pool.references(key)).isEqualTo(2)
+    }
+
+    @Test
+    fun acquire_otherHostEntryForSameServer_doesNotShare() {
+        pool.register(key, authenticatedConnection(), emptyList(), monitor())
+
+        assertThat(pool.acquire(key.copy(hostId = 2L), monitor(), shareInUse = true)).isNull()
+    }
+
+    @Test
+    fun acquire_differentAuthentication_doesNotShare() {
+        pool.register(key, authenticatedConnection(), emptyList(), monitor())
+
+        assertThat(pool.acquire(key.copy(pubkeyId = 3L), monitor(), shareInUse = true)).isNull()
+        assertThat(pool.acquire(key.copy(useAuthAgent = "yes"), monitor(), shareInUse = true)).isNull()
+    }
+
+    @Test
+    fun acquire_sharingOff_doesNotShareConnectionInUse() {
+        pool.register(key, authenticatedConnection(), emptyList(), monitor())
+
+        assertThat(pool.acquire(key, monitor(), shareInUse = false)).isNull()
+    }
+
+    @Test
+    fun acquire_sharingOff_takesStandbyConnectionOnce() {
+        val connection = authenticatedConnection()
+        pool.register(key, connection, emptyList(), monitor(), standby = true)
+
+        val lease = pool.acquire(key, monitor(), shareInUse = false)
+
+        assertThat(lease?.connection).isSameAs(connection)
+        assertThat(pool.acquire(key, monitor(), shareInUse = true)).isNull()
+    }
+
+    @Test
+    fun release_lastLease_closesConnectionThenJumpHosts() {
+        val connection = authenticatedConnection()
+        val outerJump = mock<AutoCloseable>()
+        val innerJump = mock<AutoCloseable>()
+        val first = pool.register(key, connection, listOf(outerJump, innerJump), monitor())
+        val second = pool.acquire(key, monitor(), shareInUse = true)!!
+
+        assertThat(pool.release(first)).isFalse()
+        verify(connection, never()).close()
+
+        assertThat(pool.release(second)).isTrue()
+        inOrder(connection, innerJump, outerJump) {
+            verify(connection).close()
+            verify(innerJump).close()
+            verify(outerJump).close()
+        }
+        assertThat(pool.acquire(key, monitor(), shareInUse = true)).isNull()
+    }
+
+    @Test
+    fun release_twice_onlyCountsOnce() {
+        val connection = authenticatedConnection()
+        val first = pool.register(key, connection, emptyList(), monitor())
+        pool.acquire(key, monitor(), shareInUse = true)
+
+        pool.release(first)
+        pool.release(first)
+
+        verify(connection, never()).close()
+        assertThat(pool.references(key)).isEqualTo(1)
+    }
+
+    @Test
+    fun connectionLost_removesFromPoolAndNotifiesHolders() {
+        val connection = authenticatedConnection()
+        val target = mock<ConnectionMonitor>()
+        val lossMonitor = SshConnectionPool.LossMonitor(target)
+        pool.register(key, connection, emptyList(), lossMonitor)
+        val lease = pool.acquire(key, monitor(), shareInUse = true)!!
+
+        val monitors = argumentCaptor<ConnectionMonitor>()
+        verify(connection, times(2)).addConnectionMonitor(monitors.capture())
+        val failure = Exception("reset")
+        lossMonitor.connectionLost(failure)
+        monitors.allValues.forEach { it.connectionLost(failure) }
+
+        verify(target).connectionLost(failure)
+        assertThat(pool.acquire(key, monitor(), shareInUse = true)).isNull()
+        assertThat(lease.connection).isSameAs(connection)
+    }
+
+    @Test
+    fun release_notLast_stopsLossNotifications() {
+        val connection = authenticatedConnection()
+        pool.register(key, connection, emptyList(), monitor())
+        val target = mock<ConnectionMonitor>()
+        val lossMonitor = SshConnectionPool.LossMonitor(target)
+        val lease = pool.acquire(key, lossMonitor, shareInUse = true)!!
+
+        pool.release(lease)
+        lossMonitor.connectionLost(Exception("reset"))
+
+        verify(target, never()).connectionLost(any())
+    }
+}
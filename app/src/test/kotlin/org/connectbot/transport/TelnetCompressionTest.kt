@@ -0,0 +1,136 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import org.assertj.core.api.Assertions.assertThat
+import org.connectbot.data.entity.Host
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.net.InetAddress
+import java.net.ServerSocket
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.zip.Deflater
+
+/**
+ * Runs [Telnet] against a loopback server that negotiates MCCP2 and sends compressed output.
+ */
+class TelnetCompressionTest {
+    private lateinit var server: ServerSocket
+    private val executor = Executors.newSingleThreadExecutor()
+
+    @Before
+    fun setUp() {
+        server = ServerSocket(0, 1, InetAddress.getLoopbackAddress())
+    }
+
+    @After
+    fun tearDown() {
+        server.close()
+        executor.shutdownNow()
+    }
+
+    @Test
+    fun read_compressedStream_inflatesAndCountsBytes() {
+        val text = "The quick brown fox jumps over the lazy dog.\r\n".repeat(500)
+        val negotiated = serve { output ->
+            output.write(COMPRESS_START)
+            output.write(deflate(text.toByteArray()))
+        }
+
+        val telnet = connect()
+        val received = telnet.readFully(text.length)
+
+        assertThat(negotiated.get(5, TimeUnit.SECONDS)).isEqualTo(IAC_DO_COMPRESS2)
+        assertThat(String(received)).isEqualTo(text)
+        assertThat(telnet.decompressedBytes).isEqualTo(text.length.toLong())
+        assertThat(telnet.compressedBytesRead).isPositive().isLessThan(telnet.decompressedBytes)
+        telnet.close()
+    }
+
+    @Test
+    fun read_compressionEnded_continuesWithPlainData() {
+        val negotiated = serve { output ->
+            // Start, end and plain data all arrive in one segment.
+            output.write(COMPRESS_START + deflate("packed ".toByteArray()) + "plain".toByteArray())
+        }
+
+        val telnet = connect()
+        val received = telnet.readFully("packed plain".length)
+
+        assertThat(negotiated.get(5, TimeUnit.SECONDS)).isEqualTo(IAC_DO_COMPRESS2)
+        assertThat(String(received)).isEqualTo("packed plain")
+        assertThat(telnet.decompressedBytes).isEqualTo("packed ".length.toLong())
+        telnet.close()
+    }
+
+    /**
+     * Accept one client, offer MCCP2 and wait for the reply, then let [body] send the rest.
+     *
+     * @return the client's reply to IAC WILL COMPRESS2
+     */
+    private fun serve(body: (java.io.OutputStream) -> Unit): Future<ByteArray> = executor.submit<ByteArray> {
+        server.accept().use { client ->
+            val output = client.getOutputStream()
+            output.write(IAC_WILL_COMPRESS2)
+            val reply = ByteArray(3)
+            DataInputStream(client.getInputStream()).readFully(reply)
+            body(output)
+            output.flush()
+            reply
+        }
+    }
+
+    private fun connect(): Telnet = Telnet().apply {
+        setHost(Host.createTelnetHost("loopback", "127.0.0.1", server.localPort))
+        connect()
+    }
+
+    private fun Telnet.readFully(length: Int): ByteArray {
+        val out = ByteArrayOutputStream()
+        val buffer = ByteArray(1024)
+        while (out.size() < length) {
+            val n = read(buffer, 0, buffer.size)
+            out.write(buffer, 0, n)
+        }
+        return out.toByteArray()
+    }
+
+    private fun deflate(data: ByteArray): ByteArray {
+        val deflater = Deflater()
+        deflater.setInput(data)
+        deflater.finish()
+        val out = ByteArrayOutputStream()
+        val buffer = ByteArray(1024)
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer))
+        }
+        deflater.end()
+        return out.toByteArray()
+    }
+
+    private companion object {
+        val IAC_WILL_COMPRESS2 = byteArrayOf(0xff.toByte(), 0xfb.toByte(), 86)
+        val IAC_DO_COMPRESS2 = byteArrayOf(0xff.toByte(), 0xfd.toByte(), 86)
+        val COMPRESS_START = byteArrayOf(0xff.toByte(), 0xfa.toByte(), 86, 0xff.toByte(), 0xf0.toByte())
+    }
+}
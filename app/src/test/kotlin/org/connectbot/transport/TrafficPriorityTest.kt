@@ -0,0 +1,217 @@
+/*
+ * ConnectBot: simple, powerful, open-source SSH client for Android
+ * Copyright 2026 Kenny Root
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.connectbot.transport
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Test
+import java.io.Closeable
+import java.io.InputStream
+import java.io.OutputStream
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.Socket
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+class TrafficPriorityTest {
+    private val closeables = mutableListOf<Closeable>()
+
+    @After
+    fun tearDown() {
+        closeables.forEach { runCatching { it.close() } }
+    }
+
+    /**
+     * A narrow uplink behind a send buffer of [capacity] bytes, as the kernel buffer and
+     * channel window are, that delivers it at [bytesPerSecond].
+     */
+    private class BufferedLink(private val bytesPerSecond: Long, private val capacity: Long) : OutputStream() {
+        private val lock = Object()
+        private var written = 0L
+        private var delivered = 0L
+
+        @Volatile
+        private var open = true
+
+        init {
+            thread(isDaemon = true) {
+                while (open) {
+                    Thread.sleep(TICK_MILLIS)
+                    synchronized(lock) {
+                        delivered = minOf(written, delivered + bytesPerSecond * TICK_MILLIS / 1000)
+                        lock.notifyAll()
+                    }
+                }
+            }
+        }
+
+        override fun write(b: Int) {
+            write(byteArrayOf(b.toByte()), 0, 1)
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            synchronized(lock) {
+                while (open && written - delivered + len > capacity) {
+                    lock.wait()
+                }
+                written += len
+            }
+        }
+
+        /** Wait until everything written so far has reached the server. */
+        fun awaitDelivered() {
+            synchronized(lock) {
+                val target = written
+                while (delivered < target) {
+                    lock.wait()
+                }
+            }
+        }
+
+        override fun close() {
+            open = false
+            synchronized(lock) { lock.notifyAll() }
+        }
+
+        companion object {
+            const val TICK_MILLIS = 5L
+        }
+    }
+
+    /** The SSH side of a forwarded connection: writes go over [link] and the server never answers. */
+    private class LinkChannel(private val link: OutputStream) : Socket() {
+        private val closed = CountDownLatch(1)
+
+        override fun getInputStream(): InputStream = object : InputStream() {
+            override fun read(): Int {
+                closed.await()
+                return -1
+            }
+        }
+
+        override fun getOutputStream(): OutputStream = link
+
+        override fun shutdownOutput() {}
+
+        override fun close() {
+            closed.countDown()
+        }
+    }
+
+    @Test
+    fun interactive_staysResponsiveWhileForwardSaturatesLink() {
+        val link = BufferedLink(bytesPerSecond = 512 * 1024, capacity = 512 * 1024).also { closeables += it }
+        val priority = TrafficPriority(acknowledge = link::awaitDelivered)
+        val loopback = InetAddress.getLoopbackAddress()
+        val forwarder = PortForwarder.local(
+            InetSocketAddress(loopback, 0),
+            "bulk.internal",
+            9,
+            { _, _ -> LinkChannel(link) },
+            priority,
+        ).also { closeables += it }
+
+        // A local client pushing as fast as the forward will take it.
+        val client = Socket(loopback, forwarder.localPort).also { closeables += it }
+        thread(isDaemon = true) {
+            val chunk = ByteArray(64 * 1024)
+            runCatching {
+                while (true) {
+                    client.getOutputStream().write(chunk)
+                }
+            }
+        }
+        Thread.sleep(200)
+
+        // The first key waits behind whatever the idle session let into the buffer.
+        priority.interactive { link.write('x'.code) }
+        link.awaitDelivered()
+
+        val latencies = (1..10).map {
+            val start = System.nanoTime()
+            priority.interactive { link.write('x'.code) }
+            link.awaitDelivered()
+            val latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+            Thread.sleep(50)
+            latency
+        }
+
+        // Without a limit each key waits behind a second of forwarded data; 64 KiB in
+        // flight is 125 ms on this link.
+        assertThat(latencies.max()).isLessThan(250)
+        assertThat(forwarder.statistics.snapshot().bytesSent).isGreaterThan(128 * 1024L)
+    }
+
+    @Test
+    fun writeBulk_writesEverythingInSlices() {
+        val writes = mutableListOf<Int>()
+        val output = object : OutputStream() {
+            override fun write(b: Int) {
+                writes += 1
+            }
+
+            override fun write(b: ByteArray, off: Int, len: Int) {
+                writes += len
+            }
+        }
+
+        TrafficPriority(sliceSize = 4).writeBulk(output, ByteArray(10), 0, 10)
+
+        assertThat(writes).containsExactly(4, 4, 2)
+    }
+
+    @Test
+    fun writeBulk_waitsForAcknowledgementOnceInFlightLimitIsReached() {
+        var written = 0
+        val acknowledgedAt = mutableListOf<Int>()
+        val output = object : OutputStream() {
+            override fun write(b: Int) {
+                written++
+            }
+
+            override fun write(b: ByteArray, off: Int, len: Int) {
+                written += len
+            }
+        }
+
+        val priority = TrafficPriority(sliceSize = 4, maxBulkInFlight = 8, acknowledge = { acknowledgedAt += written })
+        priority.interactive { written++ }
+        priority.writeBulk(output, ByteArray(20), 0, 20)
+
+        assertThat(acknowledgedAt).containsExactly(9, 17)
+        assertThat(written).isEqualTo(21)
+    }
+
+    @Test
+    fun writeBulk_leavesFlowControlToTheChannelWhileSessionIsIdle() {
+        var acknowledgements = 0
+        val priority = TrafficPriority(
+            sliceSize = 4,
+            maxBulkInFlight = 8,
+            typingHoldMillis = 0,
+            acknowledge = { acknowledgements++ },
+        )
+
+        priority.interactive {}
+        priority.writeBulk(OutputStream.nullOutputStream(), ByteArray(20), 0, 20)
+
+        assertThat(acknowledgements).isZero()
+    }
+}
@@ -35,6 +35,7 @@ import org.connectbot.service.ServiceError
 import org.connectbot.service.TerminalManager
 import org.connectbot.util.PreferenceConstants
 import org.junit.After
+import org.junit.Assert.assertEquals
 import org.junit.Assert.assertFalse
 import org.junit.Assert.assertTrue
 import org.junit.Before
@@ -230,4 +231,46 @@ class HostListViewModelTest {
         inOrder.verify(terminalManager).disconnectHost(host.id)
         inOrder.verify(repository).deleteHost(host)
     }
+
+    @Test
+    fun hostsLoaded_prefetchesAddressesMostRecentFirst() = runTest {
+        val viewModel = createViewModel()
+        val terminalManager = createTerminalManager()
+        viewModel.setTerminalManager(terminalManager)
+
+        hostsFlow.value = listOf(
+            Host(id = 1L, nickname = "old", hostname = "old.example.com", lastConnect = 100),
+            Host(id = 2L, nickname = "new", hostname = "new.example.com", lastConnect = 200),
+        )
+        advanceUntilIdle()
+
+        verify(terminalManager).prefetchAddresses(listOf("new.example.com", "old.example.com"))
+    }
+
+    @Test
+    fun prefetchHostnames_skipsLocalAndJumpedHosts() {
+        val hosts = listOf(
+            Host(id = 1L, nickname = "direct", hostname = "direct.example.com", lastConnect = 1),
+            Host(id = 2L, nickname = "behind", hostname = "internal.example", jumpHostId = 1L, lastConnect = 3),
+            Host(id = 3L, nickname = "local", protocol = "local", hostname = "", lastConnect = 2),
+            Host(id = 4L, nickname = "same", protocol = "telnet", hostname = "direct.example.com"),
+        )
+
+        assertEquals(listOf("direct.example.com"), HostListViewModel.prefetchHostnames(hosts))
+    }
+
+    @Test
+    fun preconnectHosts_mostRecentSshHostsWithUsernames() {
+        val hosts = listOf(
+            Host(id = 1L, nickname = "old", username = "u", hostname = "old.example.com", lastConnect = 1),
+            Host(id = 2L, nickname = "never", username = "u", hostname = "never.example.com"),
+            Host(id = 3L, nickname = "nouser", hostname = "nouser.example.com", lastConnect = 9),
+            Host(id = 4L, nickname = "telnet", protocol = "telnet", username = "u", hostname = "t.example.com", lastConnect = 8),
+            Host(id = 5L, nickname = "a", username = "u", hostname = "a.example.com", lastConnect = 5),
+            Host(id = 6L, nickname = "b", username = "u", hostname = "b.example.com", lastConnect = 7),
+            Host(id = 7L, nickname = "c", username = "u", hostname = "c.example.com", lastConnect = 6),
+        )
+
+        assertEquals(listOf(6L, 7L, 5L), HostListViewModel.preconnectHosts(hosts).map { it.id })
+    }
 }
@@ -17,6 +17,7 @@
 
 package org.connectbot.ui.screens.portforwardlist
 
+import android.content.SharedPreferences
 import androidx.lifecycle.SavedStateHandle
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.ExperimentalCoroutinesApi
@@ -61,6 +62,8 @@ class PortForwardListViewModelTest {
     )
     private lateinit var repository: HostRepository
     private lateinit var savedStateHandle: SavedStateHandle
+    private lateinit var prefs: SharedPreferences
+    private lateinit var prefsEditor: SharedPreferences.Editor
     private lateinit var terminalManager: TerminalManager
     private lateinit var portForwardsFlow: MutableStateFlow<List<PortForward>>
     private lateinit var bridgesFlow: MutableStateFlow<List<TerminalBridge>>
@@ -80,6 +83,8 @@ class PortForwardListViewModelTest {
 
         repository = mock()
         savedStateHandle = mock()
+        prefs = mock()
+        prefsEditor = mock()
         terminalManager = mock()
         portForwardsFlow = MutableStateFlow(emptyList())
         bridgesFlow = MutableStateFlow(emptyList())
@@ -87,6 +92,7 @@ class PortForwardListViewModelTest {
         whenever(savedStateHandle.get<Long>("hostId")).thenReturn(testHostId)
         whenever(repository.observePortForwardsForHost(testHostId)).thenReturn(portForwardsFlow)
         whenever(terminalManager.bridgesFlow).thenReturn(bridgesFlow)
+        whenever(prefs.edit()).thenReturn(prefsEditor)
     }
 
     @After
@@ -96,7 +102,7 @@ class PortForwardListViewModelTest {
     }
 
     private fun createViewModel(): PortForwardListViewModel {
-        val vm = PortForwardListViewModel(savedStateHandle, repository, dispatchers)
+        val vm = PortForwardListViewModel(savedStateHandle, repository, dispatchers, prefs)
         vm.setTerminalManager(terminalManager)
         return vm
     }
@@ -401,6 +407,53 @@ class PortForwardListViewModelTest {
         verify(bridge).disablePortForward(eq(bridgePortForward))
     }
 
+    @Test
+    fun setRateLimit_WithActiveConnection_SavesAndAppliesToLiveForward() = runTest {
+        val testPortForward = createTestPortForward()
+        val bridgePortForward = createTestPortForward()
+
+        portForwardsFlow.value = listOf(testPortForward)
+
+        val bridge = createMockBridge(testHostId, connected = true)
+        whenever(bridge.portForwards).thenReturn(listOf(bridgePortForward))
+        bridgesFlow.value = listOf(bridge)
+
+        viewModel = createViewModel()
+        advanceUntilIdle()
+
+        viewModel.setRateLimit(testPortForward, "512")
+        advanceUntilIdle()
+
+        verify(prefsEditor).putLong("portForward.1.rateLimit", 512 * 1024L)
+        assertEquals(512 * 1024L, bridgePortForward.getRateLimit())
+    }
+
+    @Test
+    fun setRateLimit_Empty_RemovesLimit() = runTest {
+        val testPortForward = createTestPortForward()
+
+        viewModel = createViewModel()
+        advanceUntilIdle()
+
+        viewModel.setRateLimit(testPortForward, "")
+        advanceUntilIdle()
+
+        verify(prefsEditor).remove("portForward.1.rateLimit")
+    }
+
+    @Test
+    fun setRateLimit_NotANumber_SetsError() = runTest {
+        val testPortForward = createTestPortForward()
+
+        viewModel = createViewModel()
+        advanceUntilIdle()
+
+        viewModel.setRateLimit(testPortForward, "fast")
+        advanceUntilIdle()
+
+        assertTrue(viewModel.uiState.value.error!!.contains("Invalid rate limit"))
+    }
+
     @Test
     fun enablePortForward_WithoutConnection_SetsError() = runTest {
         val testPortForward = createTestPortForward()